@@ -0,0 +1,114 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * индекс дочерних документов папки по имени, строится одним запросом к провайдеру
+ * (или из уже прочитанного содержимого папки) и заменяет линейный поиск DocumentFile.findFile.
+ * индекс не знает об изменениях, сделанных в папке вне диалога, поэтому ответ индекса
+ * только подсказка: FileUtils.findDocument проверяет найденный документ, а промаху верит,
+ * только если дата изменения папки не изменилась с момента построения индекса
+ */
+public class ChildNameIndex {
+
+    private static final int MAX_INDEXES = 8;
+    private static final LruCache<String, ChildNameIndex> INDEXES = new LruCache<>(MAX_INDEXES);
+
+    private final HashMap<String, DocumentEntry> entries;
+    // folder date when the index was built, 0 - unknown
+    private final long folderLastModified;
+
+    private ChildNameIndex(List<DocumentEntry> entries, long folderLastModified) {
+        this.folderLastModified = folderLastModified;
+        this.entries = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (DocumentEntry entry : entries) {
+            if (entry.getName() != null) {
+                this.entries.put(entry.getName(), entry);
+            }
+        }
+    }
+
+    /**
+     * индекс папки из кэша или построенный одним запросом дочерних документов
+     */
+    public static ChildNameIndex get(Context context, Uri folderUri) throws Exception {
+        ChildNameIndex index = peek(context, folderUri);
+        if (index == null) {
+            index = reload(context, folderUri);
+        }
+        return index;
+    }
+
+    /**
+     * заново строит индекс папки одним запросом дочерних документов
+     */
+    public static ChildNameIndex reload(Context context, Uri folderUri) throws Exception {
+        // the date is read first, a child added during the listing makes the index look stale, not fresh
+        DocumentEntry folder = DocumentUtils.queryEntry(context, folderUri);
+        List<DocumentEntry> entries = new ArrayList<>();
+        new DocumentsContractLister().listFiles(context, folderUri, entries::add);
+        ChildNameIndex index = new ChildNameIndex(entries, folder != null ? folder.getLastModified() : 0);
+        INDEXES.put(getKey(context, folderUri), index);
+        return index;
+    }
+
+    /**
+     * @return индекс папки если он уже построен, иначе null
+     */
+    public static ChildNameIndex peek(Context context, Uri folderUri) {
+        return INDEXES.get(getKey(context, folderUri));
+    }
+
+    /**
+     * сохраняет индекс по уже прочитанному содержимому папки
+     * @param folderLastModified дата изменения папки, прочитанная до содержимого, 0 - неизвестна
+     */
+    public static void put(Context context, Uri folderUri, List<DocumentEntry> entries, long folderLastModified) {
+        INDEXES.put(getKey(context, folderUri), new ChildNameIndex(entries, folderLastModified));
+    }
+
+    public static void invalidate(Context context, Uri folderUri) {
+        INDEXES.remove(getKey(context, folderUri));
+    }
+
+    private static String getKey(Context context, Uri folderUri) {
+        return DocumentUtils.getDocumentUri(context, folderUri).toString();
+    }
+
+    public synchronized DocumentEntry find(String name) {
+        return entries.get(name);
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * содержимое папки не менялось с момента построения индекса: дата папки известна и та же
+     */
+    public synchronized boolean isCurrent(long folderLastModified) {
+        return this.folderLastModified != 0 && this.folderLastModified == folderLastModified;
+    }
+
+    public synchronized void add(DocumentEntry entry) {
+        if (entry.getName() != null) {
+            entries.put(entry.getName(), entry);
+        }
+    }
+
+    public synchronized void remove(String name) {
+        entries.remove(name);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
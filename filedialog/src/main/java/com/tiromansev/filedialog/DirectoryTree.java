@@ -0,0 +1,87 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * содержимое просмотренных папок в памяти: возврат в родительскую папку без запроса к провайдеру,
+ * содержимое видимых подпапок читается заранее в фоне
+ */
+public class DirectoryTree {
+
+    public static final int MAX_FOLDERS = 32;
+    public static final int PREFETCH_LIMIT = 8;
+    private static final int PREFETCH_CONCURRENCY = 2;
+
+    private final FileManager fileManager;
+    private final LruCache<String, List<RowItem>> listings = new LruCache<>(MAX_FOLDERS);
+    private final Set<String> prefetching = Collections.synchronizedSet(new HashSet<>());
+    private final CompositeDisposable prefetches = new CompositeDisposable();
+
+    public DirectoryTree(FileManager fileManager) {
+        this.fileManager = fileManager;
+    }
+
+    public List<RowItem> get(Uri folderUri) {
+        return listings.get(folderUri.toString());
+    }
+
+    public void put(Uri folderUri, List<RowItem> items) {
+        listings.put(folderUri.toString(), items);
+    }
+
+    public void invalidate(Uri folderUri) {
+        listings.remove(folderUri.toString());
+    }
+
+    /**
+     * читает в фоне содержимое еще не загруженных папок (не больше PREFETCH_LIMIT за раз)
+     */
+    public void prefetch(Context context, List<RowItem> folders) {
+        List<RowItem> toFetch = new ArrayList<>();
+        for (RowItem folder : folders) {
+            if (toFetch.size() == PREFETCH_LIMIT) {
+                break;
+            }
+            String key = folder.getUri().toString();
+            // every archive folder is a full central directory scan, they are read on demand only
+            if (folder.isDirectory() && !ZipArchive.isEntryUri(folder.getUri())
+                    && listings.get(key) == null && prefetching.add(key)) {
+                toFetch.add(folder);
+            }
+        }
+        if (toFetch.isEmpty()) {
+            return;
+        }
+
+        prefetches.add(Flowable.fromIterable(toFetch)
+                .flatMapSingle(folder -> fileManager.getRowsAsync(new SafFile(context, folder.getUri()))
+                        .subscribeOn(Schedulers.io())
+                        .doOnSuccess(items -> put(folder.getUri(), items))
+                        .doFinally(() -> prefetching.remove(folder.getUri().toString()))
+                        .onErrorReturnItem(Collections.emptyList()), false, PREFETCH_CONCURRENCY)
+                .subscribe(items -> {
+                }, Throwable::printStackTrace));
+    }
+
+    public void cancelPrefetch() {
+        prefetches.clear();
+        prefetching.clear();
+    }
+
+    public void clear() {
+        cancelPrefetch();
+        listings.evictAll();
+    }
+}
@@ -0,0 +1,75 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.text.TextUtils;
+
+/**
+ * одна строка результата запроса к DocumentsProvider (имя, mime тип, размер, дата модификации, флаги)
+ */
+public class DocumentEntry {
+    private final String documentId;
+    private final String name;
+    private final String mimeType;
+    private final long size;
+    private final long lastModified;
+    private final int flags;
+    private final Uri uri;
+
+    public DocumentEntry(String documentId,
+                         String name,
+                         String mimeType,
+                         long size,
+                         long lastModified,
+                         int flags,
+                         Uri uri) {
+        this.documentId = documentId;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.flags = flags;
+        this.uri = uri;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public boolean isDirectory() {
+        return DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+    }
+
+    public boolean isFile() {
+        return !isDirectory() && !TextUtils.isEmpty(mimeType);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
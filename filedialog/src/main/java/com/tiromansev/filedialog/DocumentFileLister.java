@@ -0,0 +1,31 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+
+/**
+ * получение содержимого папки через DocumentFile (по запросу к провайдеру на каждое свойство),
+ * для провайдеров которые некорректно отвечают на запрос дочерних документов
+ */
+public class DocumentFileLister implements FileLister {
+
+    @Override
+    public void listFiles(Context context, Uri folderUri, EntryConsumer consumer) {
+        DocumentFile folder = DocumentFile.fromTreeUri(context, folderUri);
+        if (folder == null) {
+            return;
+        }
+        for (DocumentFile file : folder.listFiles()) {
+            String mimeType = file.isDirectory() ? DocumentsContract.Document.MIME_TYPE_DIR : file.getType();
+            DocumentEntry entry = new DocumentEntry(DocumentsContract.getDocumentId(file.getUri()),
+                    file.getName(), mimeType, file.length(), file.lastModified(), 0, file.getUri());
+            if (!consumer.onEntry(entry)) {
+                break;
+            }
+        }
+    }
+
+}
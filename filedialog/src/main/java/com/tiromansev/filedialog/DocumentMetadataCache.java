@@ -0,0 +1,97 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * общий для процесса кэш свойств документов (имя, наличие, папка/файл, mime тип, размер, дата модификации)
+ * с ограничением по количеству записей и временем жизни записи
+ */
+public class DocumentMetadataCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+
+    private static final DocumentMetadataCache INSTANCE = new DocumentMetadataCache(DEFAULT_MAX_ENTRIES);
+
+    private final LruCache<String, Item> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+
+    DocumentMetadataCache(int maxEntries) {
+        cache = new LruCache<>(maxEntries);
+    }
+
+    public static DocumentMetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    public void setTtl(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * свойства документа, при отсутствии в кэше или истечении времени жизни - один запрос к провайдеру
+     * @param uri tree uri, uri документа внутри дерева или uri отдельного документа
+     * @return null если документ не существует
+     */
+    public DocumentEntry get(Context context, Uri uri) {
+        Uri documentUri = DocumentUtils.getDocumentUri(context, uri);
+        String key = documentUri.toString();
+        Item item = cache.get(key);
+        if (item != null && SystemClock.elapsedRealtime() - item.time < ttlMillis) {
+            hitCount.incrementAndGet();
+            return item.entry;
+        }
+        missCount.incrementAndGet();
+        DocumentEntry entry = DocumentUtils.queryEntry(context, documentUri);
+        if (entry != null) {
+            cache.put(key, new Item(entry));
+        } else {
+            // a miss is not cached: a document created right after the lookup must be found
+            cache.remove(key);
+        }
+        return entry;
+    }
+
+    public void put(DocumentEntry entry) {
+        cache.put(entry.getUri().toString(), new Item(entry));
+    }
+
+    public void invalidate(Context context, Uri uri) {
+        cache.remove(DocumentUtils.getDocumentUri(context, uri).toString());
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static class Item {
+        private final DocumentEntry entry;
+        private final long time;
+
+        private Item(DocumentEntry entry) {
+            this.entry = entry;
+            this.time = SystemClock.elapsedRealtime();
+        }
+    }
+}
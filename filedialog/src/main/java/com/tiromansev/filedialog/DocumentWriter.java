@@ -0,0 +1,314 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+import com.tiromansev.filedialog.utils.FileUtils;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * запись файла в папку дерева: данные пишутся во временный документ через FileChannel дескриптора,
+ * открытого на запись, большими порциями, и только после успешной записи временный документ
+ * переименовывается в целевое имя. при ошибке или отписке временный документ удаляется,
+ * так что недописанный файл в папке не остается.
+ * если провайдер не умеет переименовывать документы, запись идет сразу в целевой файл.
+ * при ошибке удаляется только файл, созданный этой записью: существующий документ пользователя
+ * не удаляется никогда (без переименования его содержимое после ошибки может быть недописанным)
+ */
+public class DocumentWriter {
+
+    public static final int CHUNK_SIZE = 1024 * 1024;
+    public static final long PROGRESS_INTERVAL_MS = 200;
+    private static final String MIME_TYPE = "application/octet-stream";
+    private static final String TEMP_PREFIX = ".";
+    private static final String TEMP_SUFFIX = ".part";
+    private static final String OLD_SUFFIX = ".old";
+
+    /**
+     * источник данных файла, пишет содержимое в channel. для записи через OutputStream
+     * можно использовать Channels.newOutputStream(channel)
+     */
+    public interface WriteSource {
+        void writeTo(WritableByteChannel channel) throws Exception;
+    }
+
+    /**
+     * источник из потока, поток закрывается после записи. источник одноразовый: для повторной
+     * записи (например после ошибки) нужен WriteSource, который открывает поток заново
+     */
+    public static WriteSource from(InputStream inputStream) {
+        return from(Channels.newChannel(inputStream));
+    }
+
+    /**
+     * источник из канала, канал закрывается после записи. источник одноразовый,
+     * повторная запись завершается IllegalStateException, а не чтением закрытого канала
+     */
+    public static WriteSource from(ReadableByteChannel source) {
+        AtomicBoolean used = new AtomicBoolean();
+        return channel -> {
+            if (used.getAndSet(true)) {
+                throw new IllegalStateException("The source stream was already consumed by a previous write");
+            }
+            try (ReadableByteChannel input = source) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                while (input.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        };
+    }
+
+    /**
+     * записывает файл fileName в папку folderUri (существующий файл заменяется).
+     * ход записи не чаще PROGRESS_INTERVAL_MS, последней приходит порция с uri файла.
+     * запись идет в io потоке
+     */
+    public static Flowable<WriteProgress> write(Context context, Uri folderUri, String fileName, WriteSource source) {
+        Context appContext = context.getApplicationContext();
+        return Flowable.<WriteProgress>create(emitter -> {
+            long startTime = SystemClock.elapsedRealtime();
+            ContentResolver resolver = appContext.getContentResolver();
+            Uri tempUri = null;
+            try {
+                tempUri = DocumentsContract.createDocument(resolver, DocumentUtils.getDocumentUri(appContext, folderUri),
+                        MIME_TYPE, TEMP_PREFIX + fileName + TEMP_SUFFIX);
+                if (tempUri == null) {
+                    throw new FileNotFoundException(fileName);
+                }
+                DocumentEntry temp = DocumentUtils.queryEntry(appContext, tempUri);
+                if (temp == null || (temp.getFlags() & DocumentsContract.Document.FLAG_SUPPORTS_RENAME) == 0) {
+                    delete(resolver, tempUri);
+                    tempUri = null;
+                    Uri documentUri = FileUtils.findDocument(appContext, folderUri, fileName);
+                    boolean created = documentUri == null;
+                    if (created) {
+                        documentUri = FileUtils.createDocument(appContext, folderUri, fileName);
+                        if (documentUri == null) {
+                            throw new FileNotFoundException(fileName);
+                        }
+                    }
+                    writeAndComplete(resolver, documentUri, created, source, emitter, startTime);
+                    return;
+                }
+                long bytesWritten = writeDocument(resolver, tempUri, "w", source, emitter, startTime);
+                Uri resultUri = replace(appContext, folderUri, tempUri, fileName);
+                tempUri = null;
+                emitter.onNext(new WriteProgress(bytesWritten, SystemClock.elapsedRealtime() - startTime, resultUri));
+                emitter.onComplete();
+            } catch (Exception e) {
+                if (tempUri != null) {
+                    delete(resolver, tempUri);
+                }
+                emitter.tryOnError(e);
+            }
+        }, BackpressureStrategy.LATEST)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * перезаписывает существующий документ (например, созданный системным диалогом SafDialog,
+     * когда доступа к папке нет и временный документ создать нельзя). при ошибке документ
+     * не удаляется, но его содержимое может остаться недописанным
+     */
+    public static Flowable<WriteProgress> overwrite(Context context, Uri documentUri, WriteSource source) {
+        Context appContext = context.getApplicationContext();
+        return Flowable.<WriteProgress>create(emitter -> writeAndComplete(appContext.getContentResolver(), documentUri,
+                false, source, emitter, SystemClock.elapsedRealtime()), BackpressureStrategy.LATEST)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @param created документ создан этой записью и удаляется при ошибке
+     */
+    private static void writeAndComplete(ContentResolver resolver,
+                                         Uri documentUri,
+                                         boolean created,
+                                         WriteSource source,
+                                         FlowableEmitter<WriteProgress> emitter,
+                                         long startTime) {
+        try {
+            long bytesWritten = writeDocument(resolver, documentUri, "wt", source, emitter, startTime);
+            emitter.onNext(new WriteProgress(bytesWritten, SystemClock.elapsedRealtime() - startTime, documentUri));
+            emitter.onComplete();
+        } catch (Exception e) {
+            if (created) {
+                delete(resolver, documentUri);
+            }
+            emitter.tryOnError(e);
+        }
+    }
+
+    private static long writeDocument(ContentResolver resolver,
+                                      Uri documentUri,
+                                      String mode,
+                                      WriteSource source,
+                                      FlowableEmitter<WriteProgress> emitter,
+                                      long startTime) throws Exception {
+        ProgressChannel output = new ProgressChannel(resolver, documentUri, mode, emitter, startTime);
+        try {
+            source.writeTo(output);
+            // an empty source still has to truncate the document
+            FileChannel channel = output.open();
+            if (output.descriptor.getStatSize() >= 0) {
+                // without a sync a power loss right after the rename can leave an empty file under the final name
+                channel.force(true);
+            }
+            return output.bytesWritten;
+        } finally {
+            output.release();
+        }
+    }
+
+    /**
+     * переименовывает записанный временный документ в fileName. существующий файл сначала
+     * переименовывается в .old и удаляется только после успешного переименования временного,
+     * при неудаче возвращается на место
+     */
+    private static Uri replace(Context context, Uri folderUri, Uri tempUri, String fileName) throws Exception {
+        ContentResolver resolver = context.getContentResolver();
+        Uri existingUri = FileUtils.findDocument(context, folderUri, fileName);
+        Uri oldUri = null;
+        if (existingUri != null) {
+            oldUri = DocumentsContract.renameDocument(resolver, existingUri, TEMP_PREFIX + fileName + OLD_SUFFIX);
+            if (oldUri == null) {
+                throw new IOException("Can't rename " + existingUri);
+            }
+            DocumentMetadataCache.getInstance().invalidate(context, existingUri);
+        }
+        Uri resultUri;
+        try {
+            resultUri = DocumentsContract.renameDocument(resolver, tempUri, fileName);
+            if (resultUri == null) {
+                throw new IOException("Can't rename " + tempUri);
+            }
+        } catch (Exception e) {
+            if (oldUri != null) {
+                DocumentsContract.renameDocument(resolver, oldUri, fileName);
+            }
+            throw e;
+        }
+        if (oldUri != null) {
+            delete(resolver, oldUri);
+        }
+
+        ChildNameIndex index = ChildNameIndex.peek(context, folderUri);
+        if (index != null) {
+            index.remove(fileName);
+            DocumentEntry entry = DocumentUtils.queryEntry(context, resultUri);
+            if (entry != null) {
+                index.add(entry);
+            }
+        }
+        return resultUri;
+    }
+
+    private static void delete(ContentResolver resolver, Uri documentUri) {
+        try {
+            DocumentsContract.deleteDocument(resolver, documentUri);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * канал записи, считающий записанные байты и прерывающий запись после отписки.
+     * дескриптор документа открывается при первой записи, так что источник, упавший до первого
+     * байта (например уже использованный одноразовый), не обрезает существующий документ
+     */
+    private static class ProgressChannel implements WritableByteChannel {
+        private final ContentResolver resolver;
+        private final Uri documentUri;
+        private final String mode;
+        private final FlowableEmitter<WriteProgress> emitter;
+        private final long startTime;
+        private ParcelFileDescriptor descriptor;
+        private FileOutputStream stream;
+        private FileChannel channel;
+        private long bytesWritten = 0;
+        private long lastProgress;
+
+        private ProgressChannel(ContentResolver resolver,
+                                Uri documentUri,
+                                String mode,
+                                FlowableEmitter<WriteProgress> emitter,
+                                long startTime) {
+            this.resolver = resolver;
+            this.documentUri = documentUri;
+            this.mode = mode;
+            this.emitter = emitter;
+            this.startTime = startTime;
+            this.lastProgress = startTime;
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                descriptor = resolver.openFileDescriptor(documentUri, mode);
+                if (descriptor == null) {
+                    throw new FileNotFoundException(documentUri.toString());
+                }
+                stream = new FileOutputStream(descriptor.getFileDescriptor());
+                channel = stream.getChannel();
+            }
+            return channel;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (emitter.isCancelled()) {
+                throw new CancellationException();
+            }
+            int written = open().write(source);
+            bytesWritten += written;
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                lastProgress = now;
+                emitter.onNext(new WriteProgress(bytesWritten, now - startTime));
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel == null || channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // the document channel is closed by DocumentWriter once the source is done
+        }
+
+        private void release() throws IOException {
+            try (ParcelFileDescriptor closeable = descriptor;
+                 FileOutputStream closeableStream = stream;
+                 FileChannel closeableChannel = channel) {
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import java.io.FileNotFoundException;
+
+/**
+ * получает содержимое папки одним запросом buildChildDocumentsUriUsingTree
+ * вместо отдельного запроса к провайдеру на каждое свойство каждого файла
+ */
+public class DocumentsContractLister implements FileLister {
+
+    @Override
+    public void listFiles(Context context, Uri folderUri, EntryConsumer consumer) throws Exception {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(folderUri,
+                DocumentUtils.getDocumentId(context, folderUri));
+
+        try (Cursor cursor = context.getContentResolver().query(childrenUri,
+                DocumentUtils.PROJECTION, null, null, null)) {
+            if (cursor == null) {
+                throw new FileNotFoundException(childrenUri.toString());
+            }
+            DocumentUtils.Columns columns = new DocumentUtils.Columns(cursor);
+            while (cursor.moveToNext()) {
+                DocumentEntry entry = columns.read(cursor, folderUri);
+                if (entry.getUri() == null) {
+                    // a row without a document id can't be opened
+                    continue;
+                }
+                if (!consumer.onEntry(entry)) {
+                    break;
+                }
+            }
+        }
+    }
+
+}
@@ -3,11 +3,18 @@ package com.tiromansev.filedialog;
 import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.inputmethod.EditorInfo;
 import android.view.ViewGroup.LayoutParams;
+import android.widget.Button;
 import android.widget.EditText;
+import android.widget.HorizontalScrollView;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
@@ -15,52 +22,96 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import androidx.activity.result.ActivityResultLauncher;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
-import androidx.documentfile.provider.DocumentFile;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.tiromansev.filedialog.utils.ColorUtils;
 import com.tiromansev.filedialog.utils.DialogUtils;
+import com.tiromansev.filedialog.utils.DocumentUtils;
 import com.tiromansev.filedialog.utils.FileUtils;
 import com.tiromansev.filedialog.utils.GuiUtils;
+import com.tiromansev.filedialog.utils.NameMatcher;
+import com.tiromansev.filedialog.utils.RowDataFormatter;
+import com.tiromansev.filedialog.utils.RxUtils;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 
 public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener {
 
+    private static final String STATE_SHOWING = "file_dialog_showing";
+    private static final String STATE_PATH_URIS = "file_dialog_path_uris";
+    private static final String STATE_PATH_TITLES = "file_dialog_path_titles";
+    private static final String STATE_SELECTED_URIS = "file_dialog_selected_uris";
+    private static final String STATE_SELECTED_NAMES = "file_dialog_selected_names";
+    private static final double MEGABYTE = 1024d * 1024d;
+
     private int selectType = FILE_OPEN;
     private String[] filterFileExt;
     private final WeakReference<Activity> context;
     private RowItem selectedFile;
     private FileDialogListener fileDialogListener = null;
     private FileNameDialogListener fileNameDialogListener = null;
+    private MultiFileDialogListener multiFileDialogListener = null;
+    private FileHashListener fileHashListener = null;
+    private ZipEntryListener zipEntryListener = null;
+    private Disposable hashDisposable;
+    private DocumentWriter.WriteSource writeSource;
+    private boolean multiSelect = false;
+    private List<RowItem> restoredPath;
+    private List<RowItem> restoredSelection;
     private Comparator<RowItem> fileComparator;
+    private int sortMode = SORT_BY_NAME;
     private HashMap<String, Integer> fileIcons = new HashMap<>();
     private boolean addModifiedDate = false;
+    private boolean ignoreExtCase = false;
     private AlertDialog openFileDialog;
     private AlertDialog saveFileDialog;
     private int fileImageId = R.mipmap.ic_file;
     private String fileName;
-    private RecyclerView rlFiles;
+    private FileListView rlFiles;
     private ProgressBar pkProgress;
-    private Disposable disposable;
+    private final CompositeDisposable disposables = new CompositeDisposable();
     private FileManager fileManager;
+    private FilesAdapter filesAdapter;
+    private Disposable listingDisposable;
+    private Disposable refreshDisposable;
+    private Disposable viewDisposable;
+    private RowView rowView;
+    private FolderObserver folderObserver;
+    private final DirectoryTree directoryTree;
+    private final List<RowItem> folderPath = new ArrayList<>();
+    private BreadCrumbs breadCrumbs;
+    private EditText edtSearch;
+    private TextView tvSearchStatus;
+    private HorizontalScrollView hsPreview;
+    private TextView tvPreview;
+    private Disposable searchDisposable;
+    private boolean searchActive = false;
+    private boolean showFolders = true;
+    private boolean showThumbnails = false;
+    private boolean showPreview = false;
+    private Disposable previewDisposable;
+    private int folderImageId = R.mipmap.ic_browser_folder;
     private String fileExt;
     private ActivityResultLauncher<Intent> safLauncher;
 
     public FileDialog(Activity context) {
         this.context = new WeakReference<>(context);
         fileManager = new FileManager(this);
-        fileComparator = (leftItem, rightItem) -> leftItem.getTitle().compareToIgnoreCase(rightItem.getTitle());
+        directoryTree = new DirectoryTree(fileManager);
     }
 
     public void setSafLauncher(ActivityResultLauncher<Intent> safLauncher) {
@@ -88,14 +139,121 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         return fileImageId;
     }
 
+    public void setFolderImageId(int folderImageId) {
+        this.folderImageId = folderImageId;
+    }
+
+    public int getFolderImageId() {
+        return folderImageId;
+    }
+
+    public void setShowFolders(boolean showFolders) {
+        this.showFolders = showFolders;
+    }
+
+    protected boolean isShowFolders() {
+        return showFolders;
+    }
+
+    public void setShowThumbnails(boolean showThumbnails) {
+        this.showThumbnails = showThumbnails;
+    }
+
+    protected boolean isShowThumbnails() {
+        return showThumbnails;
+    }
+
+    public void setShowPreview(boolean showPreview) {
+        this.showPreview = showPreview;
+    }
+
+    public boolean isShowPreview() {
+        return showPreview;
+    }
+
+    /**
+     * в открытом диалоге список пересортировывается в памяти, без повторного чтения папки
+     */
     public void setFileComparator(Comparator<RowItem> fileComparator) {
         this.fileComparator = fileComparator;
+        onSortChanged();
+    }
+
+    /**
+     * встроенный режим сортировки, заменяет установленный ранее сортировщик
+     */
+    public void setSortMode(int sortMode) {
+        this.sortMode = sortMode;
+        this.fileComparator = null;
+        onSortChanged();
+    }
+
+    /**
+     * фильтр по имени для содержимого открытой папки (подстрока или маска с * и ?)
+     * @param text null или пустая строка - без фильтра
+     */
+    public void setTextFilter(String text) {
+        if (rowView == null) {
+            return;
+        }
+        rowView = rowView.withTextFilter(TextUtils.isEmpty(text) || TextUtils.isEmpty(text.trim())
+                ? null : NameMatcher.compile(text));
+        if (searchActive) {
+            // typing after a tree search goes back to the folder
+            disposeSearch();
+            searchActive = false;
+            setSearchStatus(null);
+            showFolder(folderPath.get(folderPath.size() - 1).getUri());
+            return;
+        }
+        showView(false);
+    }
+
+    private void onSortChanged() {
+        if (rowView != null) {
+            rowView = rowView.withComparator(fileManager.getRowComparator());
+            showView(false);
+        }
     }
 
     public void setFileName(String fileName) {
         this.fileName = fileName;
     }
 
+    public void setFileLister(FileLister fileLister) {
+        fileManager.setFileLister(fileLister);
+    }
+
+    public void setListingCacheSize(long maxBytes) {
+        fileManager.setListingCacheSize(maxBytes);
+    }
+
+    public void setSearchParallelism(int parallelism) {
+        fileManager.setSearchParallelism(parallelism);
+    }
+
+    public void setUseFileIndex(boolean useFileIndex) {
+        fileManager.setUseFileIndex(useFileIndex);
+    }
+
+    /**
+     * размер и время построения индекса текущей базовой папки, обращается к базе - не вызывать в главном потоке
+     * @return null если базовая папка не выбрана
+     */
+    public FileIndex.Stats getFileIndexStats() {
+        Uri baseUri = getBaseUri();
+        if (baseUri == null) {
+            return null;
+        }
+        return FileIndex.get(getContext()).getStats(baseUri);
+    }
+
+    private void updateFileIndex(Uri treeUri) {
+        if (fileManager.isUseFileIndex()) {
+            FileIndex.get(getContext()).updateAsync(treeUri, fileManager.getFileLister());
+        }
+    }
+
     public Activity getContext() {
         return context.get();
     }
@@ -109,7 +267,7 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
     }
 
     protected Comparator<RowItem> getFileComparator() {
-        return fileComparator;
+        return fileComparator != null ? fileComparator : RowComparators.get(sortMode);
     }
 
     public String[] getFilterFileExt() {
@@ -118,11 +276,29 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
 
     public void setFileIcons(HashMap<String, Integer> fileIcons) {
         this.fileIcons = fileIcons;
+        fileManager.resetExtMatcher();
     }
 
+    /**
+     * в открытом диалоге фильтр применяется к уже прочитанному содержимому папки
+     */
     @Override
     public void setFilterFileExt(String[] filterFileExt) {
         this.filterFileExt = filterFileExt;
+        fileManager.resetExtMatcher();
+        if (rowView != null) {
+            rowView = rowView.withExtFilter(fileManager::accepts);
+            showView(false);
+        }
+    }
+
+    public void setIgnoreExtCase(boolean ignoreExtCase) {
+        this.ignoreExtCase = ignoreExtCase;
+        fileManager.resetExtMatcher();
+    }
+
+    protected boolean isIgnoreExtCase() {
+        return ignoreExtCase;
     }
 
     public static Uri getBaseUri() {
@@ -147,6 +323,91 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         this.fileDialogListener = fileDialogListener;
     }
 
+    public void setMultiSelect(boolean multiSelect) {
+        this.multiSelect = multiSelect;
+    }
+
+    public void setMultiFileDialogListener(MultiFileDialogListener multiFileDialogListener) {
+        this.multiFileDialogListener = multiFileDialogListener;
+    }
+
+    public void setFileHashListener(FileHashListener fileHashListener) {
+        this.fileHashListener = fileHashListener;
+    }
+
+    public void setZipEntryListener(ZipEntryListener zipEntryListener) {
+        this.zipEntryListener = zipEntryListener;
+    }
+
+    public void setWriteSource(DocumentWriter.WriteSource writeSource) {
+        this.writeSource = writeSource;
+    }
+
+    /**
+     * сохраняет открытую папку и выбранные файлы открытого диалога, вызывается из onSaveInstanceState активити
+     */
+    public void onSaveInstanceState(Bundle outState) {
+        if (openFileDialog == null || !openFileDialog.isShowing()) {
+            return;
+        }
+        outState.putBoolean(STATE_SHOWING, true);
+        ArrayList<Uri> pathUris = new ArrayList<>();
+        ArrayList<String> pathTitles = new ArrayList<>();
+        for (int i = 1; i < folderPath.size(); i++) {
+            pathUris.add(folderPath.get(i).getUri());
+            pathTitles.add(folderPath.get(i).getTitle());
+        }
+        outState.putParcelableArrayList(STATE_PATH_URIS, pathUris);
+        outState.putStringArrayList(STATE_PATH_TITLES, pathTitles);
+
+        ArrayList<Uri> selectedUris = new ArrayList<>();
+        ArrayList<String> selectedNames = new ArrayList<>();
+        for (RowItem rowItem : getSelectedItems()) {
+            selectedUris.add(rowItem.getUri());
+            selectedNames.add(rowItem.getTitle());
+        }
+        outState.putParcelableArrayList(STATE_SELECTED_URIS, selectedUris);
+        outState.putStringArrayList(STATE_SELECTED_NAMES, selectedNames);
+    }
+
+    /**
+     * заново открывает диалог, который был открыт до пересоздания активити (поворот экрана),
+     * с той же папкой и выбранными файлами. выбор восстанавливается без запросов к провайдеру
+     */
+    public void onRestoreInstanceState(Bundle savedState) {
+        if (savedState == null || !savedState.getBoolean(STATE_SHOWING)) {
+            return;
+        }
+        restoredPath = readRows(savedState, STATE_PATH_URIS, STATE_PATH_TITLES, true);
+        restoredSelection = readRows(savedState, STATE_SELECTED_URIS, STATE_SELECTED_NAMES, false);
+        show();
+    }
+
+    private List<RowItem> readRows(Bundle state, String urisKey, String titlesKey, boolean directory) {
+        List<RowItem> rows = new ArrayList<>();
+        ArrayList<Uri> uris = state.getParcelableArrayList(urisKey);
+        ArrayList<String> titles = state.getStringArrayList(titlesKey);
+        if (uris == null || titles == null || uris.size() != titles.size()) {
+            return rows;
+        }
+        for (int i = 0; i < uris.size(); i++) {
+            rows.add(new RowItem(directory ? folderImageId : fileImageId, titles.get(i), 0, 0, uris.get(i),
+                    false, directory));
+        }
+        return rows;
+    }
+
+    private List<RowItem> getSelectedItems() {
+        if (multiSelect && filesAdapter != null) {
+            return filesAdapter.getSelectedItems();
+        }
+        List<RowItem> selected = new ArrayList<>();
+        if (selectedFile != null) {
+            selected.add(selectedFile);
+        }
+        return selected;
+    }
+
     public void setFileNameDialogListener(FileNameDialogListener fileNameDialogListener) {
         this.fileNameDialogListener = fileNameDialogListener;
     }
@@ -196,7 +457,8 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
     }
 
     public void handleSafLauncherResult(Intent data) {
-        if (fileDialogListener == null && fileNameDialogListener == null) {
+        if (fileDialogListener == null && fileNameDialogListener == null && multiFileDialogListener == null
+                && fileHashListener == null && zipEntryListener == null) {
             return;
         }
         if (data != null) {
@@ -204,6 +466,7 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
             getContext().getContentResolver().takePersistableUriPermission(uri,
                     Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
             setBaseUri(uri);
+            updateFileIndex(uri);
             handleSafAction();
         }
     }
@@ -216,6 +479,7 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         rlFileName.setVisibility(selectType == FOLDER_CHOOSE ? View.GONE : View.VISIBLE);
         EditText edtFileName = dialogView.findViewById(R.id.edtFileName);
         TextView edtExtension = dialogView.findViewById(R.id.edtExtension);
+        TextView tvSaveStatus = dialogView.findViewById(R.id.tvSaveStatus);
         edtExtension.setVisibility(TextUtils.isEmpty(fileExt) ? View.GONE : View.VISIBLE);
         edtExtension.setText(fileExt);
         edtFileName.setText(fileName);
@@ -226,6 +490,7 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         saveFileDialog = dialogBuilder.create();
 
         saveFileDialog.show();
+        saveFileDialog.setOnDismissListener(dialog -> unsubscribe());
         saveFileDialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(
                 view -> {
                     if (selectType == FOLDER_CHOOSE) {
@@ -240,15 +505,26 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
                             GuiUtils.showMessage(getContext(), R.string.message_file_name_is_empty);
                             return;
                         }
-                        DocumentFile result = FileUtils.getDocumentFile(safFile.getFile(), fileName + resultFileExt);
-                        if (result == null) {
-                            GuiUtils.showMessage(getContext(), R.string.message_file_create_failed);
+                        view.setEnabled(false);
+                        if (writeSource != null) {
+                            writeFile(safFile, fileName + resultFileExt, view, tvSaveStatus);
                             return;
                         }
-                        if (fileDialogListener != null)
-                            fileDialogListener.onFileResult(result.getUri());
-                        if (fileNameDialogListener != null)
-                            fileNameDialogListener.onFileResult(result.getUri(), fileName + resultFileExt);
+                        addSubscription(RxUtils.io(() -> FileUtils.getDocumentFile(getContext(), safFile.getUri(), fileName + resultFileExt))
+                                .subscribe(result -> {
+                                    if (fileDialogListener != null)
+                                        fileDialogListener.onFileResult(result.getUri());
+                                    if (fileNameDialogListener != null)
+                                        fileNameDialogListener.onFileResult(result.getUri(), fileName + resultFileExt);
+                                    saveFileDialog.dismiss();
+                                }, throwable -> {
+                                    view.setEnabled(true);
+                                    GuiUtils.showMessage(getContext(), R.string.message_file_create_failed);
+                                }, () -> {
+                                    view.setEnabled(true);
+                                    GuiUtils.showMessage(getContext(), R.string.message_file_create_failed);
+                                }));
+                        return;
                     }
                     saveFileDialog.dismiss();
                 }
@@ -258,59 +534,499 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
     private void openFile(SafFile safFile) {
         AlertDialog.Builder dialogBuilder = createFileOpenDialog();
         dialogBuilder.setPositiveButton(R.string.caption_ok, null);
+        if (multiSelect) {
+            dialogBuilder.setNeutralButton(R.string.caption_select_all, null);
+        }
 
         openFileDialog = dialogBuilder.create();
         openFileDialog.show();
-        openFileDialog.setOnCancelListener(dialog -> unsubscribe());
+        openFileDialog.setOnDismissListener(dialog -> unsubscribe());
+        openFileDialog.setOnKeyListener((dialog, keyCode, event) -> {
+            // back key goes to the parent folder before closing the dialog
+            if (keyCode != KeyEvent.KEYCODE_BACK || folderPath.size() <= 1) {
+                return false;
+            }
+            if (event.getAction() == KeyEvent.ACTION_UP) {
+                navigateTo(folderPath.size() - 2);
+            }
+            return true;
+        });
+        if (multiSelect) {
+            openFileDialog.getButton(AlertDialog.BUTTON_NEUTRAL).setOnClickListener(
+                    view -> filesAdapter.selectAll());
+        }
         openFileDialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(
                 view -> {
+                    if (multiSelect) {
+                        onFilesSelected(filesAdapter.getSelectedItems());
+                        return;
+                    }
                     if (selectedFile == null) {
                         GuiUtils.showMessage(getContext(), R.string.message_file_must_be_selected);
                         return;
                     }
-                    if (fileDialogListener != null) {
-                        fileDialogListener.onFileResult(selectedFile.getUri());
+                    if (!searchActive || !fileManager.isUseFileIndex()) {
+                        onFileSelected(selectedFile);
+                        return;
                     }
-                    if (fileNameDialogListener != null) {
-                        fileNameDialogListener.onFileResult(selectedFile.getUri(), selectedFile.getTitle());
+                    // index hits may be stale, check the file only when it is picked
+                    RowItem file = selectedFile;
+                    view.setEnabled(false);
+                    addSubscription(RxUtils.io(() -> DocumentUtils.queryEntry(getContext(), file.getUri()))
+                            .subscribe(entry -> onFileSelected(file), throwable -> {
+                                view.setEnabled(true);
+                                GuiUtils.showMessage(getContext(), R.string.message_file_not_found);
+                            }, () -> {
+                                view.setEnabled(true);
+                                GuiUtils.showMessage(getContext(), R.string.message_file_not_found);
+                            }));
+                }
+        );
+
+        // size/date are formatted lazily at bind time on the main thread
+        RowDataFormatter.get().refresh();
+        // filters and icons are compiled once per shown dialog
+        fileManager.resetExtMatcher();
+        directoryTree.clear();
+        rowView = new RowView(fileManager.getRowComparator(), fileManager::accepts);
+        folderPath.clear();
+        folderPath.add(new RowItem(folderImageId, null, 0, 0, safFile.getUri(), false, true));
+        if (restoredPath != null) {
+            folderPath.addAll(restoredPath);
+            restoredPath = null;
+        }
+        if (restoredSelection != null) {
+            if (multiSelect) {
+                filesAdapter.setSelectedItems(restoredSelection);
+            }
+            restoredSelection = null;
+        }
+        updateBreadCrumbs();
+        showFolder(folderPath.get(folderPath.size() - 1).getUri());
+        updateFileIndex(safFile.getUri());
+    }
+
+    /**
+     * пишет данные writeSource в файл папки через DocumentWriter, показывая объем и скорость записи.
+     * слушатели получают uri только полностью записанного файла, "Отмена" прерывает запись
+     */
+    private void writeFile(SafFile safFile, String fileName, View btnOk, TextView tvSaveStatus) {
+        addSubscription(DocumentWriter.write(getContext(), safFile.getUri(), fileName, writeSource)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    if (!progress.isComplete()) {
+                        tvSaveStatus.setText(getContext().getString(R.string.message_write_progress,
+                                progress.getBytesWritten() / MEGABYTE, progress.getBytesPerSecond() / MEGABYTE));
+                        tvSaveStatus.setVisibility(View.VISIBLE);
+                        return;
+                    }
+                    if (fileDialogListener != null)
+                        fileDialogListener.onFileResult(progress.getUri());
+                    if (fileNameDialogListener != null)
+                        fileNameDialogListener.onFileResult(progress.getUri(), fileName);
+                    saveFileDialog.dismiss();
+                }, throwable -> {
+                    throwable.printStackTrace();
+                    btnOk.setEnabled(true);
+                    tvSaveStatus.setVisibility(View.GONE);
+                    GuiUtils.showMessage(getContext(), R.string.message_file_create_failed);
+                }));
+    }
+
+    private void onFilesSelected(List<RowItem> files) {
+        if (files.isEmpty()) {
+            GuiUtils.showMessage(getContext(), R.string.message_file_must_be_selected);
+            return;
+        }
+        List<Uri> uris = new ArrayList<>(files.size());
+        List<String> names = new ArrayList<>(files.size());
+        for (RowItem file : files) {
+            uris.add(file.getUri());
+            names.add(file.getTitle());
+        }
+        if (multiFileDialogListener != null) {
+            multiFileDialogListener.onFilesResult(uris, names);
+        }
+        openFileDialog.dismiss();
+        unsubscribe();
+    }
+
+    private void onFileSelected(RowItem file) {
+        if (ZipArchive.isEntryUri(file.getUri())) {
+            openArchiveEntry(file);
+            return;
+        }
+        if (fileHashListener != null) {
+            hashFile(file);
+            return;
+        }
+        deliverFile(file);
+    }
+
+    private void deliverFile(RowItem file) {
+        if (fileDialogListener != null) {
+            fileDialogListener.onFileResult(file.getUri());
+        }
+        if (fileNameDialogListener != null) {
+            fileNameDialogListener.onFileResult(file.getUri(), file.getTitle());
+        }
+        openFileDialog.dismiss();
+        unsubscribe();
+    }
+
+    /**
+     * отдает выбранную запись архива в ZipEntryListener, запись ищется в центральном каталоге архива
+     */
+    private void openArchiveEntry(RowItem file) {
+        Button btnOk = openFileDialog.getButton(AlertDialog.BUTTON_POSITIVE);
+        btnOk.setEnabled(false);
+        Uri archiveUri = ZipArchive.getArchiveUri(file.getUri());
+        String entryPath = ZipArchive.getEntryPath(file.getUri());
+        addSubscription(RxUtils.io(() -> ZipArchive.find(getContext(), archiveUri, entryPath))
+                .subscribe(entry -> {
+                    if (zipEntryListener != null) {
+                        zipEntryListener.onZipEntryResult(entry);
                     }
                     openFileDialog.dismiss();
                     unsubscribe();
-                }
-        );
+                }, throwable -> {
+                    throwable.printStackTrace();
+                    btnOk.setEnabled(true);
+                    GuiUtils.showMessage(getContext(), R.string.message_file_not_found);
+                }, () -> {
+                    btnOk.setEnabled(true);
+                    GuiUtils.showMessage(getContext(), R.string.message_file_not_found);
+                }));
+    }
+
+    /**
+     * читает выбранный файл один раз, показывая ход и скорость чтения, и отдает результат вместе
+     * с контрольными суммами. диалог остается открытым до конца подсчета, "Отмена" прерывает чтение
+     */
+    private void hashFile(RowItem file) {
+        if (hashDisposable != null) {
+            return;
+        }
+        Button btnOk = openFileDialog.getButton(AlertDialog.BUTTON_POSITIVE);
+        btnOk.setEnabled(false);
+        hashDisposable = FileHasher.hash(getContext(), file.getUri())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    if (!progress.isComplete()) {
+                        setSearchStatus(getContext().getString(R.string.message_hash_progress,
+                                progress.getBytesRead() / MEGABYTE, progress.getBytesPerSecond() / MEGABYTE));
+                        return;
+                    }
+                    hashDisposable = null;
+                    fileHashListener.onFileHashResult(file.getUri(), file.getTitle(), progress);
+                    deliverFile(file);
+                }, throwable -> {
+                    throwable.printStackTrace();
+                    disposables.remove(hashDisposable);
+                    hashDisposable = null;
+                    btnOk.setEnabled(true);
+                    setSearchStatus(null);
+                    GuiUtils.showMessage(getContext(), R.string.message_hash_failed);
+                });
+        addSubscription(hashDisposable);
+    }
+
+    private void openFolder(RowItem folder) {
+        clearSearch();
+        folderPath.add(folder);
+        updateBreadCrumbs();
+        showFolder(folder.getUri());
+    }
+
+    /**
+     * переход на уровень вложенности depth (0 - корневая папка)
+     */
+    private void navigateTo(int depth) {
+        clearSearch();
+        while (folderPath.size() > depth + 1) {
+            folderPath.remove(folderPath.size() - 1);
+        }
+        updateBreadCrumbs();
+        showFolder(folderPath.get(folderPath.size() - 1).getUri());
+    }
+
+    private void showFolder(Uri folderUri) {
+        disposeListing();
+        directoryTree.cancelPrefetch();
+        selectedFile = null;
+        hidePreview();
+        if (filesAdapter == null) {
+            return;
+        }
+        filesAdapter.clearSelection();
+        if (ZipArchive.isEntryUri(folderUri)) {
+            getFolderObserver().stop();
+        } else {
+            getFolderObserver().observe(folderUri);
+        }
+
+        List<RowItem> cachedItems = directoryTree.get(folderUri);
+        if (cachedItems != null) {
+            rowView = rowView.withRows(cachedItems);
+            showView(true);
+            closeProgress();
+            return;
+        }
 
         showProgress();
-        addSubscription(fileManager.getFilesAsync(safFile)
+        rowView = rowView.withRows(new ArrayList<>());
+        filesAdapter.resetItems(new ArrayList<>());
+        listingDisposable = fileManager.getFilesStream(new SafFile(getContext(), folderUri))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .doOnDispose(this::closeProgress)
-                .subscribe(rowItems -> {
-                    setFileList(rowItems);
+                .subscribe(chunk -> {
+                    if (filesAdapter == null) {
+                        return;
+                    }
+                    if (chunk.isComplete()) {
+                        directoryTree.put(folderUri, chunk.getItems());
+                        rowView = rowView.withRows(chunk.getItems());
+                        showView(false);
+                    } else {
+                        filesAdapter.appendItems(rowView.filter(chunk.getItems()), rowView.getComparator());
+                    }
                     closeProgress();
                 }, throwable -> {
                     closeProgress();
                     String message = getContext().getString(R.string.message_get_dir_content_error);
                     GuiUtils.showMessage(getContext(), message + ": " + throwable.getLocalizedMessage());
-                }));
+                });
+        addSubscription(listingDisposable);
     }
 
-    private void setFileList(List<RowItem> fileList) {
-        FilesAdapter filesAdapter = new FilesAdapter(getContext(), fileList, this);
-        if (rlFiles != null) {
-            rlFiles.setAdapter(filesAdapter);
+    /**
+     * запускает поиск по всему дереву базовой папки, пустой запрос возвращает к текущей папке
+     */
+    private void onSearchQuery(String query) {
+        disposeSearch();
+        if (TextUtils.isEmpty(query.trim()) || filesAdapter == null || folderPath.isEmpty()) {
+            return;
+        }
+
+        searchActive = true;
+        disposeView();
+        disposeListing();
+        directoryTree.cancelPrefetch();
+        selectedFile = null;
+        hidePreview();
+        filesAdapter.clearSelection();
+        filesAdapter.resetItems(new ArrayList<>());
+        showProgress();
+        searchDisposable = fileManager.searchFiles(new SafFile(getContext(), folderPath.get(0).getUri()), query)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnDispose(this::closeProgress)
+                .subscribe(progress -> {
+                    if (filesAdapter == null) {
+                        return;
+                    }
+                    if (!progress.getMatches().isEmpty()) {
+                        filesAdapter.appendItems(progress.getMatches(), null);
+                        closeProgress();
+                    }
+                    if (progress.isComplete()) {
+                        closeProgress();
+                    }
+                    if (progress.isFromIndex()) {
+                        setSearchStatus(getContext().getString(R.string.message_search_index_status,
+                                progress.getMatches().size(), progress.getElapsedMillis()));
+                        return;
+                    }
+                    setSearchStatus(getContext().getString(R.string.message_search_status,
+                            progress.getScannedFolders(), progress.getFoldersPerSecond(),
+                            progress.getFailedFolders()));
+                }, throwable -> {
+                    closeProgress();
+                    String message = getContext().getString(R.string.message_get_dir_content_error);
+                    GuiUtils.showMessage(getContext(), message + ": " + throwable.getLocalizedMessage());
+                });
+        addSubscription(searchDisposable);
+    }
+
+    private void clearSearch() {
+        disposeSearch();
+        searchActive = false;
+        setSearchStatus(null);
+        if (edtSearch != null && edtSearch.length() > 0) {
+            edtSearch.setText(null);
+        }
+    }
+
+    /**
+     * пересчитывает представление папки (сортировка, фильтры) не в главном потоке
+     * @param reset заменить список целиком с прокруткой в начало (другая папка)
+     */
+    private void showView(boolean reset) {
+        disposeView();
+        if (filesAdapter == null || rowView == null || searchActive) {
+            return;
+        }
+        RowView view = rowView;
+        filesAdapter.finishAppending();
+        List<RowItem> base = reset ? null : filesAdapter.getCurrentList();
+        viewDisposable = Single.fromCallable(() -> FilesAdapter.calculateUpdate(base, view.getItems()))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(update -> {
+                    if (filesAdapter == null || view != rowView) {
+                        return;
+                    }
+                    List<RowItem> items = update.getItems();
+                    if (selectedFile != null && !containsUri(items, selectedFile.getUri())) {
+                        selectedFile = null;
+                        filesAdapter.clearSelection();
+                        hidePreview();
+                    }
+                    if (reset) {
+                        filesAdapter.resetItems(items);
+                    } else {
+                        filesAdapter.showItems(update);
+                    }
+                    prefetchVisibleFolders();
+                }, Throwable::printStackTrace);
+        addSubscription(viewDisposable);
+    }
+
+    private void disposeView() {
+        if (viewDisposable != null) {
+            disposables.remove(viewDisposable);
+            viewDisposable = null;
+        }
+    }
+
+    private void disposeSearch() {
+        if (searchDisposable != null) {
+            disposables.remove(searchDisposable);
+            searchDisposable = null;
+        }
+    }
+
+    private void setSearchStatus(String status) {
+        if (tvSearchStatus == null) {
+            return;
         }
+        tvSearchStatus.setText(status);
+        tvSearchStatus.setVisibility(TextUtils.isEmpty(status) ? View.GONE : View.VISIBLE);
+    }
+
+    private void disposeListing() {
+        if (listingDisposable != null) {
+            disposables.remove(listingDisposable);
+            listingDisposable = null;
+        }
+        if (refreshDisposable != null) {
+            disposables.remove(refreshDisposable);
+            refreshDisposable = null;
+        }
+    }
+
+    private FolderObserver getFolderObserver() {
+        if (folderObserver == null) {
+            folderObserver = new FolderObserver(getContext(), this::onFolderChanged);
+        }
+        return folderObserver;
+    }
+
+    /**
+     * содержимое открытой папки изменилось: перечитываем папку и отдаем адаптеру только разницу
+     */
+    private void onFolderChanged(Uri folderUri) {
+        if (filesAdapter == null || searchActive || folderPath.isEmpty()
+                || !folderUri.equals(folderPath.get(folderPath.size() - 1).getUri())) {
+            return;
+        }
+        // a running initial listing already returns the fresh content
+        if (listingDisposable != null && !listingDisposable.isDisposed()) {
+            return;
+        }
+        if (refreshDisposable != null) {
+            disposables.remove(refreshDisposable);
+        }
+        refreshDisposable = fileManager.relistFilesAsync(new SafFile(getContext(), folderUri))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(items -> {
+                    if (filesAdapter == null) {
+                        return;
+                    }
+                    directoryTree.put(folderUri, items);
+                    rowView = rowView.withRows(items);
+                    showView(false);
+                }, Throwable::printStackTrace);
+        addSubscription(refreshDisposable);
+    }
+
+    private static boolean containsUri(List<RowItem> items, Uri uri) {
+        return FilesAdapter.indexOf(items, uri) != -1;
+    }
+
+    /**
+     * заранее читает содержимое видимых на экране подпапок
+     */
+    private void prefetchVisibleFolders() {
+        if (rlFiles == null) {
+            return;
+        }
+        rlFiles.post(() -> {
+            if (filesAdapter == null || !(rlFiles.getLayoutManager() instanceof LinearLayoutManager)) {
+                return;
+            }
+            LinearLayoutManager layoutManager = (LinearLayoutManager) rlFiles.getLayoutManager();
+            List<RowItem> items = filesAdapter.getCurrentList();
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) {
+                first = 0;
+                last = items.size() - 1;
+            }
+            List<RowItem> folders = new ArrayList<>();
+            for (int i = first; i <= last && i < items.size(); i++) {
+                if (items.get(i).isDirectory()) {
+                    folders.add(items.get(i));
+                }
+            }
+            directoryTree.prefetch(getContext(), folders);
+        });
+    }
+
+    private void updateBreadCrumbs() {
+        if (breadCrumbs == null) {
+            return;
+        }
+        breadCrumbs.clearItems();
+        breadCrumbs.addHomeItem(String.valueOf(BreadCrumbs.UNDEFINED_VALUE));
+        for (int i = 1; i < folderPath.size(); i++) {
+            breadCrumbs.addItem(folderPath.get(i).getTitle(), String.valueOf(i));
+        }
+        breadCrumbs.setToolbarVisible(folderPath.size() > 1);
     }
 
     private void addSubscription(Disposable disposable) {
-        this.disposable = disposable;
+        disposables.add(disposable);
     }
 
+    /**
+     * отменяет все незавершенные запросы к провайдеру, вызывается при закрытии диалога
+     */
     private void unsubscribe() {
-        if (disposable != null) {
-            if (!disposable.isDisposed()) {
-                disposable.dispose();
-            }
+        disposables.clear();
+        listingDisposable = null;
+        refreshDisposable = null;
+        viewDisposable = null;
+        if (folderObserver != null) {
+            folderObserver.stop();
         }
+        searchDisposable = null;
+        hashDisposable = null;
+        previewDisposable = null;
+        searchActive = false;
+        directoryTree.cancelPrefetch();
     }
 
     private AlertDialog.Builder createFileSaveDialog() {
@@ -357,16 +1073,77 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         titleLayout.addView(createTitleLayout());
         titleLayout.setBackgroundColor(ColorUtils.getAttrColor(R.attr.file_dialog_title_background, getContext()));
 
+        HorizontalScrollView svPath = new HorizontalScrollView(getContext());
+        svPath.setHorizontalScrollBarEnabled(false);
+        titleLayout.addView(svPath, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+        breadCrumbs = new BreadCrumbs(getContext());
+        breadCrumbs.attachTo(svPath);
+        breadCrumbs.setItemClickListener(new BreadCrumbs.SelectItemListener() {
+            @Override
+            public void onItemSelect(String itemTag) {
+                int depth = Integer.parseInt(itemTag);
+                navigateTo(depth == BreadCrumbs.UNDEFINED_VALUE ? 0 : depth);
+            }
+
+            @Override
+            public boolean removeItem(String itemTag) {
+                // path items are rebuilt from folderPath on navigation
+                return false;
+            }
+        });
+
         LayoutInflater inflater = LayoutInflater.from(getContext());
         View mainView = inflater.inflate(R.layout.view_main, null);
         rlFiles = mainView.findViewById(R.id.rlFies);
         pkProgress = mainView.findViewById(R.id.pkProgress);
+        tvSearchStatus = mainView.findViewById(R.id.tvSearchStatus);
+        hsPreview = mainView.findViewById(R.id.hsPreview);
+        tvPreview = mainView.findViewById(R.id.tvPreview);
+        edtSearch = mainView.findViewById(R.id.edtSearch);
+        edtSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+            }
 
-        LinearLayoutManager mLayoutManager = new LinearLayoutManager(getContext());
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                setTextFilter(s.toString());
+            }
+        });
+        // typing filters the open folder, the search key searches the whole tree
+        edtSearch.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId != EditorInfo.IME_ACTION_SEARCH) {
+                return false;
+            }
+            onSearchQuery(v.getText().toString());
+            return true;
+        });
+
+        LinearLayoutManager mLayoutManager = new FileListView.PrefetchLayoutManager(getContext());
         rlFiles.setLayoutManager(mLayoutManager);
         DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(getContext(),
                 mLayoutManager.getOrientation());
         rlFiles.addItemDecoration(dividerItemDecoration);
+        filesAdapter = new FilesAdapter(getContext(), this);
+        filesAdapter.setMultiSelect(multiSelect);
+        if (showThumbnails) {
+            filesAdapter.setThumbnailLoader(ThumbnailLoader.get(getContext()));
+        }
+        rlFiles.setAdapter(filesAdapter);
+        rlFiles.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleFolders();
+                }
+            }
+        });
 
         dialogBuilder.setCustomTitle(titleLayout);
         dialogBuilder.setView(mainView);
@@ -389,8 +1166,9 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
         btnChangeFolder.setOnClickListener(v -> changeDir());
 
         TextView tvTitle = titleView.findViewById(R.id.tvFileTitle);
-        String selectFileCaption = new SafFile(getContext(), getBaseUri()).getName();
-        tvTitle.setText(selectFileCaption);
+        SafFile safFile = new SafFile(getContext(), getBaseUri());
+        addSubscription(RxUtils.io(safFile::getName)
+                .subscribe(tvTitle::setText, Throwable::printStackTrace));
 
         return titleView;
     }
@@ -411,7 +1189,80 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
 
     @Override
     public void onItemSelected(RowItem rowItem) {
+        if (rowItem.isDirectory()) {
+            openFolder(rowItem);
+            return;
+        }
+        if (zipEntryListener != null && ZipArchive.isArchive(rowItem.getTitle())
+                && !ZipArchive.isEntryUri(rowItem.getUri())) {
+            // the archive opens like a folder, its root is the archive uri with an empty entry path
+            openFolder(new RowItem(folderImageId, rowItem.getTitle(), 0, rowItem.getLastModified(),
+                    ZipArchive.buildEntryUri(rowItem.getUri(), ""), false, true));
+            return;
+        }
         selectedFile = rowItem;
+        showPreview(rowItem);
+    }
+
+    /**
+     * превью начала выделенного файла, запрос предыдущего выделения отменяется
+     */
+    private void showPreview(RowItem rowItem) {
+        disposePreview();
+        if (!showPreview || hsPreview == null) {
+            return;
+        }
+        previewDisposable = FilePreviewLoader.get(getContext()).load(rowItem)
+                .subscribe(this::setPreview, throwable -> {
+                    throwable.printStackTrace();
+                    hidePreview();
+                });
+        addSubscription(previewDisposable);
+    }
+
+    private void setPreview(FilePreview preview) {
+        String caption = null;
+        switch (preview.getType()) {
+            case FilePreview.TYPE_CSV:
+                caption = getContext().getString(R.string.message_preview_csv, preview.getColumns());
+                break;
+            case FilePreview.TYPE_SQLITE:
+                caption = getContext().getString(R.string.message_preview_sqlite,
+                        preview.getPageSize(), preview.getPageCount());
+                break;
+            case FilePreview.TYPE_ZIP:
+                caption = getContext().getString(R.string.message_preview_zip);
+                break;
+            case FilePreview.TYPE_BINARY:
+                caption = getContext().getString(R.string.message_preview_binary);
+                break;
+        }
+        tvPreview.setText(caption != null ? caption + "\n" + preview.getText() : preview.getText());
+        hsPreview.scrollTo(0, 0);
+        hsPreview.setVisibility(View.VISIBLE);
+    }
+
+    private void hidePreview() {
+        disposePreview();
+        if (hsPreview != null) {
+            hsPreview.setVisibility(View.GONE);
+        }
+    }
+
+    private void disposePreview() {
+        if (previewDisposable != null) {
+            disposables.remove(previewDisposable);
+            previewDisposable = null;
+        }
+    }
+
+    @Override
+    public void onSelectionChanged(int count) {
+        if (openFileDialog == null || openFileDialog.getButton(AlertDialog.BUTTON_POSITIVE) == null) {
+            return;
+        }
+        String caption = getContext().getString(R.string.caption_ok);
+        openFileDialog.getButton(AlertDialog.BUTTON_POSITIVE).setText(count > 0 ? caption + " (" + count + ")" : caption);
     }
 
     public class Builder {
@@ -458,6 +1309,59 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
             return this;
         }
 
+        /**
+         * включает выбор нескольких файлов: нажатие добавляет файл в выбор или убирает из него,
+         * долгое нажатие выбирает диапазон, кнопка "Выбрать все" - все файлы, прошедшие фильтры.
+         * результат приходит в MultiFileDialogListener одним вызовом
+         * @param multiSelect
+         */
+        public Builder setMultiSelect(boolean multiSelect) {
+            FileDialog.this.setMultiSelect(multiSelect);
+            return this;
+        }
+
+        /**
+         * устанавливает слушатель выбора нескольких файлов, который возвращает список uri и имен выбранных файлов
+         * @param listener
+         */
+        public Builder setMultiFileDialogListener(MultiFileDialogListener listener) {
+            FileDialog.this.setMultiFileDialogListener(listener);
+            return this;
+        }
+
+        /**
+         * включает проверку выбранного файла: перед закрытием диалога файл читается один раз и
+         * в слушатель приходят его SHA-256 и CRC32, затем срабатывают обычные слушатели выбора
+         * @param listener
+         */
+        public Builder setFileHashListener(FileHashListener listener) {
+            FileDialog.this.setFileHashListener(listener);
+            return this;
+        }
+
+        /**
+         * включает просмотр zip архивов: нажатие на архив открывает его как папку (без распаковки),
+         * выбранная запись архива приходит в слушатель, ее содержимое распаковывается потоком при чтении.
+         * работает в режиме выбора одного файла
+         * @param listener
+         */
+        public Builder setZipEntryListener(ZipEntryListener listener) {
+            FileDialog.this.setZipEntryListener(listener);
+            return this;
+        }
+
+        /**
+         * задает данные сохраняемого файла: диалог сам записывает их во временный файл и
+         * переименовывает его в выбранное имя, слушатели получают uri уже записанного файла.
+         * источник можно создать через DocumentWriter.from(InputStream), такой источник одноразовый:
+         * чтобы после ошибки записи можно было повторить сохранение, источник должен открывать поток сам
+         * @param source
+         */
+        public Builder setWriteSource(DocumentWriter.WriteSource source) {
+            FileDialog.this.setWriteSource(source);
+            return this;
+        }
+
         /**
          * устанавливает фильтр по mime типу для файлов в окне диалога
          * @param filterFileExt массив mime типов
@@ -467,6 +1371,46 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
             return this;
         }
 
+        /**
+         * определяет показывать ли в окне диалога вложенные папки с переходом в них
+         * (по умолчанию показываются)
+         * @param showFolders
+         */
+        public Builder setShowFolders(boolean showFolders) {
+            FileDialog.this.setShowFolders(showFolders);
+            return this;
+        }
+
+        /**
+         * определяет показывать ли миниатюры изображений и документов вместо иконок,
+         * если провайдер их поддерживает (по умолчанию не показываются)
+         * @param showThumbnails
+         */
+        public Builder setShowThumbnails(boolean showThumbnails) {
+            FileDialog.this.setShowThumbnails(showThumbnails);
+            return this;
+        }
+
+        /**
+         * определяет показывать ли под списком превью выделенного файла: первые строки текста,
+         * выборку строк csv или hex дамп заголовка двоичного файла (по умолчанию не показывается).
+         * читается только начало файла
+         * @param showPreview
+         */
+        public Builder setShowPreview(boolean showPreview) {
+            FileDialog.this.setShowPreview(showPreview);
+            return this;
+        }
+
+        /**
+         * определяет учитывать ли регистр при сравнении расширений файлов с фильтром и иконками
+         * @param ignoreExtCase
+         */
+        public Builder setIgnoreExtCase(boolean ignoreExtCase) {
+            FileDialog.this.setIgnoreExtCase(ignoreExtCase);
+            return this;
+        }
+
         /**
          * устанавливает обработчик возврата в активити при вызове SAF диалога выбора папки для записи
          * (требования гугла)
@@ -505,6 +1449,58 @@ public class FileDialog implements IFileDialog, FilesAdapter.ItemSelectListener
             return this;
         }
 
+        /**
+         * устанавливает встроенный режим сортировки (папки всегда первыми)
+         * @param sortMode SORT_BY_NAME - по имени без учета регистра (по умолчанию)
+         *                 SORT_NATURAL - по имени с учетом чисел (file2 раньше file10)
+         *                 SORT_BY_DATE - по дате модификации, новые первыми
+         *                 SORT_BY_SIZE - по размеру, большие первыми
+         */
+        public Builder setSortMode(int sortMode) {
+            FileDialog.this.setSortMode(sortMode);
+            return this;
+        }
+
+        /**
+         * устанавливает источник содержимого папки, по умолчанию DocumentsContractLister
+         * (один запрос к провайдеру на всю папку)
+         * @param fileLister
+         */
+        public Builder setFileLister(FileLister fileLister) {
+            FileDialog.this.setFileLister(fileLister);
+            return this;
+        }
+
+        /**
+         * устанавливает лимит дискового кэша содержимого папок (в байтах),
+         * при превышении удаляются давно не открывавшиеся папки
+         * @param maxBytes 0 - не использовать кэш
+         */
+        public Builder setListingCacheSize(long maxBytes) {
+            FileDialog.this.setListingCacheSize(maxBytes);
+            return this;
+        }
+
+        /**
+         * устанавливает количество папок, читаемых одновременно при рекурсивном поиске файлов
+         * @param parallelism
+         */
+        public Builder setSearchParallelism(int parallelism) {
+            FileDialog.this.setSearchParallelism(parallelism);
+            return this;
+        }
+
+        /**
+         * включает локальный индекс имен файлов выбранной папки: индекс строится в фоне после выбора папки
+         * и обновляется при каждом открытии диалога, поиск сначала идет по индексу
+         * (по умолчанию выключен)
+         * @param useFileIndex
+         */
+        public Builder setUseFileIndex(boolean useFileIndex) {
+            FileDialog.this.setUseFileIndex(useFileIndex);
+            return this;
+        }
+
         public IFileDialog build() {
             return FileDialog.this;
         }
@@ -0,0 +1,13 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+
+public interface FileHashListener {
+
+    /**
+     * вызывается после подсчета контрольных сумм выбранного файла, до закрытия диалога
+     * @param hash итоговая порция с SHA-256, CRC32 и скоростью чтения
+     */
+    void onFileHashResult(Uri uri, String fileName, HashProgress hash);
+
+}
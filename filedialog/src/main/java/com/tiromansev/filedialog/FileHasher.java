@@ -0,0 +1,129 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * потоковый подсчет SHA-256 и CRC32 документа: ParcelFileDescriptor открывается один раз,
+ * данные читаются через FileChannel в переиспользуемый direct буфер, так что память не зависит
+ * от размера файла. отписка прерывает чтение
+ */
+public class FileHasher {
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+    public static final long PROGRESS_INTERVAL_MS = 200;
+    private static final int MAX_POOLED_BUFFERS = 2;
+
+    private static final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+
+    /**
+     * ход подсчета не чаще PROGRESS_INTERVAL_MS, последней приходит порция с контрольными суммами.
+     * чтение идет в io потоке
+     */
+    public static Flowable<HashProgress> hash(Context context, Uri uri) {
+        Context appContext = context.getApplicationContext();
+        return Flowable.<HashProgress>create(emitter -> {
+            long startTime = SystemClock.elapsedRealtime();
+            ByteBuffer buffer = obtainBuffer();
+            try (ParcelFileDescriptor descriptor = openDescriptor(appContext, uri);
+                 FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor());
+                 FileChannel channel = stream.getChannel()) {
+                // closing the channel unblocks a read that waits on a slow provider
+                emitter.setCancellable(channel::close);
+                long totalBytes = descriptor.getStatSize();
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                CRC32 crc32 = new CRC32();
+                byte[] chunk = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? null : new byte[8 * 1024];
+                long bytesRead = 0;
+                long lastProgress = startTime;
+                int read;
+                while ((read = channel.read(buffer)) != -1) {
+                    if (emitter.isCancelled()) {
+                        return;
+                    }
+                    if (read == 0) {
+                        continue;
+                    }
+                    buffer.flip();
+                    update(crc32, buffer, chunk);
+                    buffer.rewind();
+                    sha256.update(buffer);
+                    buffer.clear();
+                    bytesRead += read;
+
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        emitter.onNext(new HashProgress(bytesRead, totalBytes, now - startTime));
+                    }
+                }
+                emitter.onNext(new HashProgress(bytesRead, totalBytes, SystemClock.elapsedRealtime() - startTime,
+                        sha256.digest(), crc32.getValue()));
+                emitter.onComplete();
+            } catch (Exception e) {
+                // a disposed request fails with ClosedByInterruptException or AsynchronousCloseException
+                emitter.tryOnError(e);
+            } finally {
+                recycleBuffer(buffer);
+            }
+        }, BackpressureStrategy.LATEST)
+                .subscribeOn(Schedulers.io());
+    }
+
+    private static ParcelFileDescriptor openDescriptor(Context context, Uri uri) throws FileNotFoundException {
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return descriptor;
+    }
+
+    /**
+     * CRC32.update(ByteBuffer) есть только с API 26, на старых версиях данные копируются порциями
+     */
+    static void update(CRC32 crc32, ByteBuffer buffer, byte[] chunk) {
+        if (chunk == null) {
+            crc32.update(buffer);
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc32.update(chunk, 0, length);
+        }
+    }
+
+    private static ByteBuffer obtainBuffer() {
+        synchronized (bufferPool) {
+            ByteBuffer buffer = bufferPool.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void recycleBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.push(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+import com.tiromansev.filedialog.utils.NameMatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * локальный индекс имен файлов выбранных через SAF деревьев (sqlite): id документа, имя, id родителя,
+ * размер, дата модификации. обновляется инкрементно - папка перечитывается только если изменилась
+ * ее дата модификации. результаты поиска по индексу могут быть устаревшими, их нужно проверять перед использованием
+ */
+public class FileIndex {
+
+    private static final String DATABASE_NAME = "file_dialog_index.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE_DOCUMENTS = "documents";
+    private static final String TABLE_FOLDERS = "folders";
+    private static final String TABLE_TREES = "trees";
+    private static final String COLUMN_TREE = "tree";
+    private static final String COLUMN_DOCUMENT_ID = "document_id";
+    private static final String COLUMN_PARENT_ID = "parent_id";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_NAME_KEY = "name_key";
+    private static final String COLUMN_MIME_TYPE = "mime_type";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String COLUMN_FLAGS = "flags";
+    private static final String COLUMN_LISTED_MODIFIED = "listed_modified";
+    private static final String COLUMN_BUILD_MILLIS = "build_millis";
+    private static final String COLUMN_UPDATED_AT = "updated_at";
+
+    private static volatile FileIndex instance;
+
+    private final Context context;
+    private final Helper helper;
+    private final Set<String> updating = Collections.synchronizedSet(new HashSet<>());
+
+    private FileIndex(Context context) {
+        this.context = context.getApplicationContext();
+        this.helper = new Helper(this.context);
+    }
+
+    public static FileIndex get(Context context) {
+        if (instance == null) {
+            synchronized (FileIndex.class) {
+                if (instance == null) {
+                    instance = new FileIndex(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * обновляет индекс дерева в фоне, повторный запуск для того же дерева во время обновления игнорируется
+     */
+    public void updateAsync(Uri treeUri, FileLister fileLister) {
+        String tree = treeUri.toString();
+        if (!updating.add(tree)) {
+            return;
+        }
+        Completable.fromAction(() -> update(treeUri, fileLister))
+                .subscribeOn(Schedulers.io())
+                .doFinally(() -> updating.remove(tree))
+                .subscribe(() -> {
+                }, Throwable::printStackTrace);
+    }
+
+    public boolean isUpdating(Uri treeUri) {
+        return updating.contains(treeUri.toString());
+    }
+
+    /**
+     * обход дерева в ширину: папка с неизменившейся датой модификации не перечитывается,
+     * вместо этого проверяются ее подпапки из индекса. записи удаленных папок убираются в конце обхода
+     */
+    public void update(Uri treeUri, FileLister fileLister) throws Exception {
+        long startTime = SystemClock.elapsedRealtime();
+        String tree = treeUri.toString();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Map<String, Long> listedFolders = getListedFolders(db, tree);
+        Set<String> visited = new HashSet<>();
+
+        Uri rootUri = DocumentUtils.getDocumentUri(context, treeUri);
+        Deque<PendingFolder> queue = new ArrayDeque<>();
+        queue.add(new PendingFolder(DocumentsContract.getDocumentId(rootUri), rootUri, -1));
+        while (!queue.isEmpty()) {
+            PendingFolder folder = queue.poll();
+            if (!visited.add(folder.documentId)) {
+                continue;
+            }
+            long lastModified = folder.lastModified;
+            if (lastModified < 0) {
+                DocumentEntry entry = DocumentUtils.queryEntry(context, folder.uri);
+                if (entry == null) {
+                    continue;
+                }
+                lastModified = entry.getLastModified();
+            }
+
+            Long listedModified = listedFolders.get(folder.documentId);
+            if (listedModified != null && lastModified > 0 && listedModified == lastModified) {
+                // subfolders may have changed even if this folder did not
+                queueIndexedChildren(db, treeUri, folder.documentId, queue);
+                continue;
+            }
+
+            List<DocumentEntry> children = new ArrayList<>();
+            try {
+                fileLister.listFiles(context, folder.uri, entry -> {
+                    children.add(entry);
+                    return true;
+                });
+            } catch (Exception e) {
+                // keep the old records of an unreadable folder
+                e.printStackTrace();
+                queueIndexedChildren(db, treeUri, folder.documentId, queue);
+                continue;
+            }
+            replaceChildren(db, tree, folder.documentId, lastModified, children);
+            for (DocumentEntry child : children) {
+                if (child.isDirectory()) {
+                    queue.add(new PendingFolder(child.getDocumentId(), child.getUri(), child.getLastModified()));
+                }
+            }
+        }
+
+        removeUnvisited(db, tree, visited);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TREE, tree);
+        values.put(COLUMN_BUILD_MILLIS, SystemClock.elapsedRealtime() - startTime);
+        values.put(COLUMN_UPDATED_AT, System.currentTimeMillis());
+        db.insertWithOnConflict(TABLE_TREES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * индекс дерева построен хотя бы один раз
+     */
+    public boolean isIndexed(Uri treeUri) {
+        return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), TABLE_TREES,
+                COLUMN_TREE + " = ?", new String[]{treeUri.toString()}) > 0;
+    }
+
+    /**
+     * файлы дерева, имя которых подходит под строку поиска (подстрока или маска с * и ?)
+     */
+    public List<DocumentEntry> find(Uri treeUri, String query, int limit) {
+        List<DocumentEntry> result = new ArrayList<>();
+        NameMatcher matcher = NameMatcher.compile(query);
+        String selection = COLUMN_TREE + " = ? AND " + COLUMN_MIME_TYPE + " <> ? AND "
+                + COLUMN_NAME_KEY + " LIKE ? ESCAPE '\\'";
+        String[] args = new String[]{treeUri.toString(), DocumentsContract.Document.MIME_TYPE_DIR,
+                toLikePattern(query)};
+        try (Cursor cursor = helper.getReadableDatabase().query(TABLE_DOCUMENTS,
+                new String[]{COLUMN_DOCUMENT_ID, COLUMN_NAME, COLUMN_MIME_TYPE, COLUMN_SIZE,
+                        COLUMN_LAST_MODIFIED, COLUMN_FLAGS},
+                selection, args, null, null, null)) {
+            while (cursor.moveToNext() && result.size() < limit) {
+                String name = cursor.getString(1);
+                // LIKE only narrows the scan, the matcher decides
+                if (!matcher.matches(name)) {
+                    continue;
+                }
+                String documentId = cursor.getString(0);
+                result.add(new DocumentEntry(documentId, name, cursor.getString(2), cursor.getLong(3),
+                        cursor.getLong(4), cursor.getInt(5),
+                        DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId)));
+            }
+        }
+        return result;
+    }
+
+    public Stats getStats(Uri treeUri) {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String[] args = new String[]{treeUri.toString()};
+        long documents = DatabaseUtils.queryNumEntries(db, TABLE_DOCUMENTS, COLUMN_TREE + " = ?", args);
+        long folders = DatabaseUtils.queryNumEntries(db, TABLE_FOLDERS, COLUMN_TREE + " = ?", args);
+        long buildMillis = 0;
+        long updatedAt = 0;
+        try (Cursor cursor = db.query(TABLE_TREES, new String[]{COLUMN_BUILD_MILLIS, COLUMN_UPDATED_AT},
+                COLUMN_TREE + " = ?", args, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                buildMillis = cursor.getLong(0);
+                updatedAt = cursor.getLong(1);
+            }
+        }
+        return new Stats(documents, folders, buildMillis, updatedAt,
+                context.getDatabasePath(DATABASE_NAME).length());
+    }
+
+    public void remove(Uri treeUri) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String[] args = new String[]{treeUri.toString()};
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_DOCUMENTS, COLUMN_TREE + " = ?", args);
+            db.delete(TABLE_FOLDERS, COLUMN_TREE + " = ?", args);
+            db.delete(TABLE_TREES, COLUMN_TREE + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void clear() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_DOCUMENTS, null, null);
+            db.delete(TABLE_FOLDERS, null, null);
+            db.delete(TABLE_TREES, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private Map<String, Long> getListedFolders(SQLiteDatabase db, String tree) {
+        Map<String, Long> folders = new HashMap<>();
+        try (Cursor cursor = db.query(TABLE_FOLDERS, new String[]{COLUMN_DOCUMENT_ID, COLUMN_LISTED_MODIFIED},
+                COLUMN_TREE + " = ?", new String[]{tree}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                folders.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return folders;
+    }
+
+    private void queueIndexedChildren(SQLiteDatabase db, Uri treeUri, String parentId, Deque<PendingFolder> queue) {
+        try (Cursor cursor = db.query(TABLE_DOCUMENTS, new String[]{COLUMN_DOCUMENT_ID},
+                COLUMN_TREE + " = ? AND " + COLUMN_PARENT_ID + " = ? AND " + COLUMN_MIME_TYPE + " = ?",
+                new String[]{treeUri.toString(), parentId, DocumentsContract.Document.MIME_TYPE_DIR},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                String childId = cursor.getString(0);
+                queue.add(new PendingFolder(childId,
+                        DocumentsContract.buildDocumentUriUsingTree(treeUri, childId), -1));
+            }
+        }
+    }
+
+    private void replaceChildren(SQLiteDatabase db,
+                                 String tree,
+                                 String parentId,
+                                 long lastModified,
+                                 List<DocumentEntry> children) {
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_DOCUMENTS, COLUMN_TREE + " = ? AND " + COLUMN_PARENT_ID + " = ?",
+                    new String[]{tree, parentId});
+            ContentValues values = new ContentValues();
+            for (DocumentEntry child : children) {
+                if (child.getDocumentId() == null || child.getName() == null) {
+                    continue;
+                }
+                values.clear();
+                values.put(COLUMN_TREE, tree);
+                values.put(COLUMN_DOCUMENT_ID, child.getDocumentId());
+                values.put(COLUMN_PARENT_ID, parentId);
+                values.put(COLUMN_NAME, child.getName());
+                values.put(COLUMN_NAME_KEY, child.getName().toLowerCase(Locale.ROOT));
+                values.put(COLUMN_MIME_TYPE, child.getMimeType());
+                values.put(COLUMN_SIZE, child.getSize());
+                values.put(COLUMN_LAST_MODIFIED, child.getLastModified());
+                values.put(COLUMN_FLAGS, child.getFlags());
+                db.insertWithOnConflict(TABLE_DOCUMENTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            values.clear();
+            values.put(COLUMN_TREE, tree);
+            values.put(COLUMN_DOCUMENT_ID, parentId);
+            values.put(COLUMN_LISTED_MODIFIED, lastModified);
+            db.insertWithOnConflict(TABLE_FOLDERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * убирает содержимое папок, которые не встретились при обходе (удалены или перемещены)
+     */
+    private void removeUnvisited(SQLiteDatabase db, String tree, Set<String> visited) {
+        List<String> stale = new ArrayList<>();
+        try (Cursor cursor = db.query(TABLE_FOLDERS, new String[]{COLUMN_DOCUMENT_ID},
+                COLUMN_TREE + " = ?", new String[]{tree}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                String documentId = cursor.getString(0);
+                if (!visited.contains(documentId)) {
+                    stale.add(documentId);
+                }
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            for (String documentId : stale) {
+                String[] args = new String[]{tree, documentId};
+                db.delete(TABLE_DOCUMENTS, COLUMN_TREE + " = ? AND " + COLUMN_PARENT_ID + " = ?", args);
+                db.delete(TABLE_FOLDERS, COLUMN_TREE + " = ? AND " + COLUMN_DOCUMENT_ID + " = ?", args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * строка поиска в шаблон LIKE: маска переводится как есть, подстрока обрамляется %
+     */
+    private static String toLikePattern(String query) {
+        String text = query.trim().toLowerCase(Locale.ROOT);
+        boolean glob = text.indexOf('*') >= 0 || text.indexOf('?') >= 0;
+        StringBuilder pattern = new StringBuilder(text.length() + 2);
+        if (!glob) {
+            pattern.append('%');
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (glob && c == '*') {
+                pattern.append('%');
+            } else if (glob && c == '?') {
+                pattern.append('_');
+            } else {
+                if (c == '%' || c == '_' || c == '\\') {
+                    pattern.append('\\');
+                }
+                pattern.append(c);
+            }
+        }
+        if (!glob) {
+            pattern.append('%');
+        }
+        return pattern.toString();
+    }
+
+    private static class PendingFolder {
+        private final String documentId;
+        private final Uri uri;
+        // -1 when unknown, the folder is then queried before it is compared with the index
+        private final long lastModified;
+
+        private PendingFolder(String documentId, Uri uri, long lastModified) {
+            this.documentId = documentId;
+            this.uri = uri;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * размер индекса дерева и время его последнего обновления
+     */
+    public static class Stats {
+        private final long documentCount;
+        private final long folderCount;
+        private final long buildMillis;
+        private final long updatedAt;
+        private final long databaseBytes;
+
+        public Stats(long documentCount, long folderCount, long buildMillis, long updatedAt, long databaseBytes) {
+            this.documentCount = documentCount;
+            this.folderCount = folderCount;
+            this.buildMillis = buildMillis;
+            this.updatedAt = updatedAt;
+            this.databaseBytes = databaseBytes;
+        }
+
+        public long getDocumentCount() {
+            return documentCount;
+        }
+
+        public long getFolderCount() {
+            return folderCount;
+        }
+
+        /**
+         * длительность последнего обновления индекса
+         */
+        public long getBuildMillis() {
+            return buildMillis;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+
+        /**
+         * размер файла базы (общий для всех деревьев)
+         */
+        public long getDatabaseBytes() {
+            return databaseBytes;
+        }
+    }
+
+    private static class Helper extends SQLiteOpenHelper {
+
+        private Helper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_DOCUMENTS + " ("
+                    + COLUMN_TREE + " TEXT NOT NULL, "
+                    + COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                    + COLUMN_PARENT_ID + " TEXT NOT NULL, "
+                    + COLUMN_NAME + " TEXT NOT NULL, "
+                    + COLUMN_NAME_KEY + " TEXT NOT NULL, "
+                    + COLUMN_MIME_TYPE + " TEXT, "
+                    + COLUMN_SIZE + " INTEGER, "
+                    + COLUMN_LAST_MODIFIED + " INTEGER, "
+                    + COLUMN_FLAGS + " INTEGER, "
+                    + "PRIMARY KEY (" + COLUMN_TREE + ", " + COLUMN_DOCUMENT_ID + "))");
+            db.execSQL("CREATE INDEX documents_parent ON " + TABLE_DOCUMENTS
+                    + " (" + COLUMN_TREE + ", " + COLUMN_PARENT_ID + ")");
+            db.execSQL("CREATE TABLE " + TABLE_FOLDERS + " ("
+                    + COLUMN_TREE + " TEXT NOT NULL, "
+                    + COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                    + COLUMN_LISTED_MODIFIED + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_TREE + ", " + COLUMN_DOCUMENT_ID + "))");
+            db.execSQL("CREATE TABLE " + TABLE_TREES + " ("
+                    + COLUMN_TREE + " TEXT PRIMARY KEY, "
+                    + COLUMN_BUILD_MILLIS + " INTEGER, "
+                    + COLUMN_UPDATED_AT + " INTEGER)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DOCUMENTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_FOLDERS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TREES);
+            onCreate(db);
+        }
+    }
+}
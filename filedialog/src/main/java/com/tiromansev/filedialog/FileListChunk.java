@@ -0,0 +1,33 @@
+package com.tiromansev.filedialog;
+
+import java.util.List;
+
+/**
+ * порция содержимого папки при потоковом чтении:
+ * промежуточные порции в порядке чтения курсора, последняя - весь отсортированный список
+ */
+public class FileListChunk {
+    private final List<RowItem> items;
+    private final boolean complete;
+
+    private FileListChunk(List<RowItem> items, boolean complete) {
+        this.items = items;
+        this.complete = complete;
+    }
+
+    public static FileListChunk batch(List<RowItem> items) {
+        return new FileListChunk(items, false);
+    }
+
+    public static FileListChunk complete(List<RowItem> items) {
+        return new FileListChunk(items, true);
+    }
+
+    public List<RowItem> getItems() {
+        return items;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
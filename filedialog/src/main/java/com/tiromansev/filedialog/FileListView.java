@@ -0,0 +1,91 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * список файлов диалога с ограниченной высотой: при wrap_content внутри диалога список может быть
+ * измерен без ограничения (UNSPECIFIED), и тогда LinearLayoutManager создает и привязывает holder
+ * для каждой строки папки. здесь высота не больше доли экрана, так что holder создаются только
+ * для видимых строк и небольшого запаса при прокрутке, а короткий список по-прежнему занимает
+ * столько места, сколько ему нужно
+ */
+public class FileListView extends RecyclerView {
+
+    public static final float DEFAULT_MAX_HEIGHT_FRACTION = 0.6f;
+
+    private float maxHeightFraction = DEFAULT_MAX_HEIGHT_FRACTION;
+
+    public FileListView(@NonNull Context context) {
+        super(context);
+    }
+
+    public FileListView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public FileListView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    /**
+     * @param maxHeightFraction максимальная высота списка как доля высоты экрана
+     */
+    public void setMaxHeightFraction(float maxHeightFraction) {
+        this.maxHeightFraction = maxHeightFraction;
+        requestLayout();
+    }
+
+    public int getMaxHeight() {
+        return (int) (getResources().getDisplayMetrics().heightPixels * maxHeightFraction);
+    }
+
+    @Override
+    protected void onMeasure(int widthSpec, int heightSpec) {
+        int maxHeight = getMaxHeight();
+        int mode = MeasureSpec.getMode(heightSpec);
+        if (maxHeight > 0 && (mode == MeasureSpec.UNSPECIFIED || MeasureSpec.getSize(heightSpec) > maxHeight)) {
+            heightSpec = MeasureSpec.makeMeasureSpec(maxHeight,
+                    mode == MeasureSpec.EXACTLY ? MeasureSpec.EXACTLY : MeasureSpec.AT_MOST);
+        }
+        super.onMeasure(widthSpec, heightSpec);
+    }
+
+    /**
+     * LinearLayoutManager с prefetch строк: во время прокрутки дополнительно раскладывает
+     * PREFETCH_ROWS строк за краем списка, в покое - только видимые строки
+     */
+    public static class PrefetchLayoutManager extends LinearLayoutManager {
+
+        public static final int PREFETCH_ROWS = 4;
+
+        private int scrollState = SCROLL_STATE_IDLE;
+
+        public PrefetchLayoutManager(Context context) {
+            super(context);
+            setItemPrefetchEnabled(true);
+        }
+
+        @Override
+        protected void calculateExtraLayoutSpace(@NonNull RecyclerView.State state, @NonNull int[] extraLayoutSpace) {
+            if (getChildCount() == 0 || (scrollState == SCROLL_STATE_IDLE && !state.hasTargetScrollPosition())) {
+                super.calculateExtraLayoutSpace(state, extraLayoutSpace);
+                return;
+            }
+            int extra = getChildAt(0).getHeight() * PREFETCH_ROWS;
+            extraLayoutSpace[0] = extra;
+            extraLayoutSpace[1] = extra;
+        }
+
+        @Override
+        public void onScrollStateChanged(int state) {
+            super.onScrollStateChanged(state);
+            scrollState = state;
+        }
+    }
+}
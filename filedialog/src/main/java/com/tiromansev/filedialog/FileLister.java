@@ -0,0 +1,21 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * источник содержимого папки для FileManager
+ */
+public interface FileLister {
+
+    /**
+     * перебирает дочерние документы папки
+     * @param folderUri uri папки (tree uri или uri документа внутри дерева)
+     * @param consumer получает записи по одной, перебор прекращается если он вернул false
+     */
+    void listFiles(Context context, Uri folderUri, EntryConsumer consumer) throws Exception;
+
+    interface EntryConsumer {
+        boolean onEntry(DocumentEntry entry);
+    }
+}
@@ -1,28 +1,96 @@
 package com.tiromansev.filedialog;
 
-import androidx.documentfile.provider.DocumentFile;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
 
-import com.tiromansev.filedialog.utils.FileUtils;
+import com.tiromansev.filedialog.utils.DocumentUtils;
+import com.tiromansev.filedialog.utils.FileExtMatcher;
+import com.tiromansev.filedialog.utils.NameMatcher;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 public class FileManager {
 
+    public static final int BATCH_SIZE = 100;
+    public static final int MAX_INDEX_MATCHES = 5000;
+
     private FileDialog fileDialog;
+    private FileLister fileLister = new DocumentsContractLister();
+    private long listingCacheSize = ListingDiskCache.DEFAULT_MAX_BYTES;
+    private ListingDiskCache listingCache;
+    private volatile FileExtMatcher extMatcher;
+    private int searchParallelism = FileSearch.DEFAULT_PARALLELISM;
+    private boolean useFileIndex = false;
 
     public FileManager(FileDialog fileDialog) {
         this.fileDialog = fileDialog;
     }
 
+    public FileLister getFileLister() {
+        return fileLister;
+    }
+
+    public void setFileLister(FileLister fileLister) {
+        this.fileLister = fileLister != null ? fileLister : new DocumentsContractLister();
+    }
+
+    /**
+     * @param maxBytes лимит дискового кэша содержимого папок, 0 - кэш не используется
+     */
+    public void setListingCacheSize(long maxBytes) {
+        listingCacheSize = maxBytes;
+        listingCache = null;
+    }
+
+    /**
+     * @param parallelism количество папок, читаемых одновременно при поиске
+     */
+    public void setSearchParallelism(int parallelism) {
+        searchParallelism = parallelism;
+    }
+
+    /**
+     * @param useFileIndex искать по FileIndex, если индекс дерева уже построен
+     */
+    public void setUseFileIndex(boolean useFileIndex) {
+        this.useFileIndex = useFileIndex;
+    }
+
+    public boolean isUseFileIndex() {
+        return useFileIndex;
+    }
+
+    private ListingDiskCache getListingCache(Context context) {
+        if (listingCacheSize <= 0) {
+            return null;
+        }
+        if (listingCache == null) {
+            listingCache = new ListingDiskCache(context.getApplicationContext(), listingCacheSize);
+        }
+        return listingCache;
+    }
+
+    /**
+     * файлы папки, прошедшие фильтр расширений, в порядке сортировщика диалога (без папок)
+     */
     public Single<List<RowItem>> getFilesAsync(SafFile safFile) {
+        RowView view = new RowView(getRowComparator(), (name, directory) -> !directory && acceptsFile(name));
+        return getRowsAsync(safFile).map(rows -> new ArrayList<>(view.withRows(rows).getItems()));
+    }
+
+    /**
+     * все строки папки в порядке провайдера, вместе с папками и файлами, скрытыми фильтром
+     * (кэш DirectoryTree, сортирует и фильтрует RowView)
+     */
+    Single<List<RowItem>> getRowsAsync(SafFile safFile) {
         return Single.create(emitter -> {
             List<RowItem> rowItems = new ArrayList<>();
 
@@ -42,52 +110,288 @@ public class FileManager {
         });
     }
 
-    private List<RowItem> getFiles(SafFile safFile) {
-        List<RowItem> files = new ArrayList<>();
+    /**
+     * содержимое папки порциями по BATCH_SIZE по мере чтения курсора,
+     * последней приходит complete порция со всем содержимым (в порядке провайдера, сортирует RowView).
+     * если папка есть в дисковом кэше, сразу приходит complete порция из кэша, затем папка всегда
+     * читается заново без промежуточных порций: дата папки не меняется при изменении размера или даты
+     * вложенного файла, поэтому свежие строки сравниваются с кэшем, и вторая complete порция приходит,
+     * только если содержимое отличается
+     */
+    public Flowable<FileListChunk> getFilesStream(SafFile safFile) {
+        return Flowable.create(emitter -> {
+            Context context = safFile.getContext();
+            Uri folderUri = safFile.getUri();
+            if (context == null || folderUri == null) {
+                emitter.onNext(FileListChunk.complete(new ArrayList<>()));
+                emitter.onComplete();
+                return;
+            }
+            if (ZipArchive.isEntryUri(folderUri)) {
+                try {
+                    emitter.onNext(FileListChunk.complete(getArchiveFiles(context, folderUri)));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    if (!emitter.isCancelled()) {
+                        emitter.onError(e);
+                    }
+                    return;
+                }
+                emitter.onComplete();
+                return;
+            }
+
+            try {
+                ListingDiskCache cache = getListingCache(context);
+                ListingDiskCache.Listing cached = cache != null ? cache.read(folderUri) : null;
+                if (cached != null) {
+                    emitter.onNext(FileListChunk.complete(createRowItems(context, folderUri, cached.getEntries())));
+                }
+
+                // the folder date does not change with the size or date of a child, so the cached
+                // rows are always revalidated by a fresh listing
+                DocumentEntry folder = DocumentUtils.queryEntry(context, folderUri);
+                long folderLastModified = folder != null ? folder.getLastModified() : 0;
 
-        for (DocumentFile file : safFile.getFile().listFiles()) {
-            if (file.isFile()) {
-                boolean exclude = false;
-                if (fileDialog.getFilterFileExt() != null && fileDialog.getFilterFileExt().length > 0) {
-                    exclude = true;
-                    for (String filter : fileDialog.getFilterFileExt()) {
-                        String name = file.getName();
-                        if (name != null && name.endsWith(filter)) {
-                            exclude = false;
-                            break;
+                List<DocumentEntry> entries = new ArrayList<>();
+                List<RowItem> batch = new ArrayList<>(BATCH_SIZE);
+                boolean emitBatches = cached == null;
+                fileLister.listFiles(context, folderUri, entry -> {
+                    entries.add(entry);
+                    RowItem item = emitBatches ? createRowItem(entry) : null;
+                    if (item != null) {
+                        batch.add(item);
+                        if (batch.size() == BATCH_SIZE) {
+                            emitter.onNext(FileListChunk.batch(new ArrayList<>(batch)));
+                            batch.clear();
                         }
                     }
+                    return !emitter.isCancelled();
+                });
+                if (emitter.isCancelled()) {
+                    return;
                 }
-                if (exclude) {
-                    continue;
-                }
-                RowItem item = null;
-                String data = null;
-                if (fileDialog.isAddModifiedDate()) {
-                    data = FileUtils.size(file.length());
-                    Date lastModDate = new Date(file.lastModified());
-                    SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yy HH:mm", Locale.ENGLISH);
-                    data += dateFormat.format(lastModDate);
+                if (!batch.isEmpty()) {
+                    emitter.onNext(FileListChunk.batch(new ArrayList<>(batch)));
                 }
-                if (fileDialog.getFileIcons().size() > 0) {
-                    for (Map.Entry<String, Integer> entry : fileDialog.getFileIcons().entrySet()) {
-                        String name = file.getName();
-                        if (name != null && name.endsWith(entry.getKey())) {
-                            item = new RowItem(entry.getValue(), file.getName(), data, file.lastModified(), file.getUri());
-                            files.add(item);
-                            break;
-                        }
+                ChildNameIndex.put(context, folderUri, entries, folderLastModified);
+                if (cached != null && cached.matches(entries)) {
+                    if (folderLastModified != cached.getLastModified()) {
+                        cache.write(folderUri, new ListingDiskCache.Listing(folderLastModified, entries));
                     }
+                    emitter.onComplete();
+                    return;
+                }
+                emitter.onNext(FileListChunk.complete(createRowItems(context, folderUri, entries)));
+                if (cache != null) {
+                    cache.write(folderUri, new ListingDiskCache.Listing(folderLastModified, entries));
                 }
-                if (item == null) {
-                    item = new RowItem(fileDialog.getFileImageId(), file.getName(), data, file.lastModified(), file.getUri());
-                    files.add(item);
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (!emitter.isCancelled()) {
+                    emitter.onError(e);
                 }
+                return;
             }
+
+            emitter.onComplete();
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    /**
+     * заново читает содержимое папки в обход кэшей (после уведомления об изменении папки)
+     * и обновляет кэши свежим содержимым
+     */
+    public Single<List<RowItem>> relistFilesAsync(SafFile safFile) {
+        return Single.fromCallable(() -> {
+            Context context = safFile.getContext();
+            Uri folderUri = safFile.getUri();
+            if (context == null || folderUri == null) {
+                return new ArrayList<>();
+            }
+            DocumentEntry folder = DocumentUtils.queryEntry(context, folderUri);
+            long folderLastModified = folder != null ? folder.getLastModified() : 0;
+            List<DocumentEntry> entries = new ArrayList<>();
+            fileLister.listFiles(context, folderUri, entry -> {
+                entries.add(entry);
+                return true;
+            });
+            ChildNameIndex.put(context, folderUri, entries, folderLastModified);
+            ListingDiskCache cache = getListingCache(context);
+            if (cache != null) {
+                cache.write(folderUri, new ListingDiskCache.Listing(folderLastModified, entries));
+            }
+            return createRowItems(context, folderUri, entries);
+        });
+    }
+
+    /**
+     * рекурсивный поиск файлов по имени (подстрока или маска с * и ?) во всех вложенных папках,
+     * найденные файлы проходят тот же фильтр расширений, что и содержимое папки.
+     * если включен индекс и дерево уже проиндексировано, результат берется из индекса одной порцией,
+     * а индекс обновляется в фоне
+     */
+    public Flowable<SearchProgress> searchFiles(SafFile root, String query) {
+        Context context = root.getContext();
+        Uri rootUri = root.getUri();
+        if (context == null || rootUri == null) {
+            return Flowable.empty();
         }
+        NameMatcher matcher = NameMatcher.compile(query);
+        Flowable<SearchProgress> walk = new FileSearch(fileLister, searchParallelism).search(context, rootUri,
+                entry -> matcher.matches(entry.getName()) ? createFilteredRowItem(entry) : null);
+        if (!useFileIndex) {
+            return walk;
+        }
+        return Flowable.defer(() -> {
+            FileIndex fileIndex = FileIndex.get(context);
+            if (!fileIndex.isIndexed(rootUri)) {
+                return walk;
+            }
+            long startTime = SystemClock.elapsedRealtime();
+            List<RowItem> matches = new ArrayList<>();
+            for (DocumentEntry entry : fileIndex.find(rootUri, query, MAX_INDEX_MATCHES)) {
+                RowItem item = createFilteredRowItem(entry);
+                if (item != null) {
+                    matches.add(item);
+                }
+            }
+            fileIndex.updateAsync(rootUri, fileLister);
+            return Flowable.just(new SearchProgress(matches, 0, 0,
+                    SystemClock.elapsedRealtime() - startTime, true, true));
+        });
+    }
+
+    /**
+     * полное содержимое папки в колоночном RowStore в порядке провайдера,
+     * сортирует его RowView (один раз на строки и сортировщик)
+     */
+    private RowStore createRowItems(Context context, Uri folderUri, List<DocumentEntry> entries) {
+        RowStore.Builder builder = new RowStore.Builder(folderUri,
+                DocumentUtils.buildChildDocumentId(context, folderUri, ""));
+        for (DocumentEntry entry : entries) {
+            if (entry.isDirectory() && fileDialog.isShowFolders()) {
+                builder.add(fileDialog.getFolderImageId(), entry.getName(), 0, entry.getLastModified(),
+                        entry.getDocumentId(), false, true, false);
+            } else if (entry.isFile()) {
+                builder.add(getExtMatcher().getIcon(entry.getName(), fileDialog.getFileImageId()), entry.getName(),
+                        entry.getSize(), entry.getLastModified(), entry.getDocumentId(),
+                        fileDialog.isAddModifiedDate(), false, hasThumbnail(entry));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * содержимое папки внутри zip архива, читается только центральный каталог архива
+     */
+    private List<RowItem> getArchiveFiles(Context context, Uri folderUri) throws Exception {
+        List<RowItem> rowItems = new ArrayList<>();
+        for (ZipArchive.Entry entry : ZipArchive.list(context, ZipArchive.getArchiveUri(folderUri),
+                ZipArchive.getEntryPath(folderUri))) {
+            if (entry.isDirectory()) {
+                if (fileDialog.isShowFolders()) {
+                    rowItems.add(new RowItem(fileDialog.getFolderImageId(), entry.getFileName(), 0,
+                            entry.getLastModified(), entry.getUri(), false, true));
+                }
+                continue;
+            }
+            String name = entry.getFileName();
+            rowItems.add(new RowItem(getExtMatcher().getIcon(name, fileDialog.getFileImageId()), name, entry.getSize(),
+                    entry.getLastModified(), entry.getUri(), fileDialog.isAddModifiedDate(), false, false));
+        }
+        return rowItems;
+    }
+
+    private List<RowItem> getFiles(SafFile safFile) throws Exception {
+        Context context = safFile.getContext();
+        if (context == null || safFile.getUri() == null) {
+            return new ArrayList<>();
+        }
+        if (ZipArchive.isEntryUri(safFile.getUri())) {
+            return getArchiveFiles(context, safFile.getUri());
+        }
+
+        List<DocumentEntry> entries = new ArrayList<>();
+        fileLister.listFiles(context, safFile.getUri(), entry -> {
+            entries.add(entry);
+            return true;
+        });
+
+        return createRowItems(context, safFile.getUri(), entries);
+    }
 
-        Collections.sort(files, fileDialog.getFileComparator());
-        return new ArrayList<>(files);
+    private RowItem createRowItem(DocumentEntry file) {
+        // files hidden by the extension filter are kept, the filter is applied by RowView
+        int imageId = file.isFile() ? getExtMatcher().getIcon(file.getName(), fileDialog.getFileImageId()) : 0;
+        return createRowItem(file, imageId);
+    }
+
+    /**
+     * строка найденного файла: фильтр и иконку решает один проход по имени, null - файл не проходит фильтр
+     */
+    private RowItem createFilteredRowItem(DocumentEntry file) {
+        int imageId = getExtMatcher().match(file.getName(), fileDialog.getFileImageId());
+        return imageId != FileExtMatcher.EXCLUDED ? createRowItem(file, imageId) : null;
+    }
+
+    private RowItem createRowItem(DocumentEntry file, int imageId) {
+        if (file.isDirectory() && fileDialog.isShowFolders()) {
+            return new RowItem(fileDialog.getFolderImageId(), file.getName(), 0, file.getLastModified(),
+                    file.getUri(), file.getDocumentId(), false, true, false);
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+        return new RowItem(imageId, file.getName(), file.getSize(), file.getLastModified(), file.getUri(),
+                file.getDocumentId(), fileDialog.isAddModifiedDate(), false, hasThumbnail(file));
+    }
+
+    private boolean hasThumbnail(DocumentEntry entry) {
+        return fileDialog.isShowThumbnails()
+                && (entry.getFlags() & DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL) != 0;
+    }
+
+    /**
+     * проходит ли строка фильтр расширений диалога (папки проходят всегда)
+     */
+    public boolean accepts(RowItem item) {
+        return accepts(item.getTitle(), item.isDirectory());
+    }
+
+    public boolean accepts(CharSequence name, boolean directory) {
+        return directory || acceptsFile(name);
+    }
+
+    private boolean acceptsFile(CharSequence name) {
+        return getExtMatcher().accepts(name);
+    }
+
+    /**
+     * папки всегда первыми, внутри групп - сортировщик диалога
+     */
+    public Comparator<RowItem> getRowComparator() {
+        return RowComparators.foldersFirst(fileDialog.getFileComparator());
+    }
+
+    /**
+     * сбрасывает скомпилированный фильтр расширений и иконок после изменения настроек диалога
+     */
+    public void resetExtMatcher() {
+        extMatcher = null;
+    }
+
+    /**
+     * одно дерево суффиксов на фильтр и иконки: в узле суффикса лежат и отметка фильтра, и иконка
+     */
+    private FileExtMatcher getExtMatcher() {
+        FileExtMatcher matcher = extMatcher;
+        if (matcher == null) {
+            matcher = new FileExtMatcher(fileDialog.getFilterFileExt(), fileDialog.getFileIcons(),
+                    fileDialog.isIgnoreExtCase());
+            extMatcher = matcher;
+        }
+        return matcher;
     }
 
 }
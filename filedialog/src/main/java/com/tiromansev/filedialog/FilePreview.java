@@ -0,0 +1,242 @@
+package com.tiromansev.filedialog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * превью начала файла: несколько строк текста, выборка строк csv с разбивкой на колонки
+ * или hex дамп заголовка двоичного файла (для SQLite базы - размер страницы и число страниц)
+ */
+public class FilePreview {
+
+    public static final int TYPE_TEXT = 0;
+    public static final int TYPE_CSV = 1;
+    public static final int TYPE_BINARY = 2;
+    public static final int TYPE_SQLITE = 3;
+    public static final int TYPE_ZIP = 4;
+
+    public static final int MAX_CSV_ROWS = 10;
+    public static final int MAX_CELL_CHARS = 14;
+    public static final int HEX_BYTES = 128;
+    private static final int HEX_BYTES_PER_LINE = 16;
+    private static final String CELL_SEPARATOR = " | ";
+    private static final char[] CSV_DELIMITERS = {',', ';', '\t'};
+    private static final byte[] SQLITE_MAGIC = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    private final int type;
+    private final String text;
+    private final int columns;
+    private final int pageSize;
+    private final long pageCount;
+
+    private FilePreview(int type, String text, int columns, int pageSize, long pageCount) {
+        this.type = type;
+        this.text = text;
+        this.columns = columns;
+        this.pageSize = pageSize;
+        this.pageCount = pageCount;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * текст превью для моноширинного шрифта
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * количество колонок в первой строке csv
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * распознает двоичный файл по сигнатуре или управляющим символам в начале данных
+     * @return null если данные похожи на текст
+     */
+    public static FilePreview binary(byte[] data, int length) {
+        int type;
+        int pageSize = 0;
+        long pageCount = 0;
+        if (startsWith(data, length, SQLITE_MAGIC) && length >= 32) {
+            type = TYPE_SQLITE;
+            pageSize = ((data[16] & 0xFF) << 8) | (data[17] & 0xFF);
+            // the value 1 stands for 65536, it does not fit into the two header bytes
+            if (pageSize == 1) {
+                pageSize = 65536;
+            }
+            pageCount = ((data[28] & 0xFFL) << 24) | ((data[29] & 0xFF) << 16) | ((data[30] & 0xFF) << 8) | (data[31] & 0xFF);
+        } else if (startsWith(data, length, ZIP_MAGIC)) {
+            type = TYPE_ZIP;
+        } else if (isBinary(data, length)) {
+            type = TYPE_BINARY;
+        } else {
+            return null;
+        }
+        return new FilePreview(type, hexDump(data, Math.min(length, HEX_BYTES)), 0, pageSize, pageCount);
+    }
+
+    /**
+     * @param csv оформить строки как таблицу csv
+     */
+    public static FilePreview text(List<String> lines, boolean csv) {
+        if (!csv || lines.isEmpty()) {
+            return new FilePreview(TYPE_TEXT, join(lines), 0, 0, 0);
+        }
+        char delimiter = detectDelimiter(lines.get(0));
+        List<String> rows = new ArrayList<>();
+        int columns = 0;
+        for (String line : lines) {
+            if (rows.size() == MAX_CSV_ROWS) {
+                break;
+            }
+            List<String> cells = splitCsv(line, delimiter);
+            if (rows.isEmpty()) {
+                columns = cells.size();
+            }
+            StringBuilder row = new StringBuilder();
+            for (String cell : cells) {
+                if (row.length() > 0) {
+                    row.append(CELL_SEPARATOR);
+                }
+                row.append(fit(cell.trim()));
+            }
+            rows.add(row.toString());
+        }
+        return new FilePreview(TYPE_CSV, join(rows), columns, 0, 0);
+    }
+
+    private static boolean startsWith(byte[] data, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (data[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * текст (в том числе UTF-8) не содержит нулевых байт и почти не содержит управляющих символов
+     */
+    private static boolean isBinary(byte[] data, int length) {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data[i] & 0xFF;
+            if (b == 0) {
+                return true;
+            }
+            if (b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f') {
+                control++;
+            }
+        }
+        return control * 10 > length;
+    }
+
+    private static String hexDump(byte[] data, int length) {
+        StringBuilder dump = new StringBuilder();
+        for (int offset = 0; offset < length; offset += HEX_BYTES_PER_LINE) {
+            if (offset > 0) {
+                dump.append('\n');
+            }
+            appendHex(dump, offset, 4);
+            dump.append("  ");
+            int end = Math.min(offset + HEX_BYTES_PER_LINE, length);
+            for (int i = offset; i < offset + HEX_BYTES_PER_LINE; i++) {
+                if (i < end) {
+                    appendHex(dump, data[i] & 0xFF, 2);
+                    dump.append(' ');
+                } else {
+                    dump.append("   ");
+                }
+            }
+            dump.append(' ');
+            for (int i = offset; i < end; i++) {
+                int b = data[i] & 0xFF;
+                dump.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+            }
+        }
+        return dump.toString();
+    }
+
+    private static void appendHex(StringBuilder builder, int value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(Character.toUpperCase(Character.forDigit((value >> shift) & 0xF, 16)));
+        }
+    }
+
+    /**
+     * разделитель, который чаще всего встречается в строке заголовка вне кавычек
+     */
+    static char detectDelimiter(String header) {
+        char delimiter = CSV_DELIMITERS[0];
+        int best = 0;
+        for (char candidate : CSV_DELIMITERS) {
+            int count = splitCsv(header, candidate).size() - 1;
+            if (count > best) {
+                best = count;
+                delimiter = candidate;
+            }
+        }
+        return delimiter;
+    }
+
+    /**
+     * ячейки одной строки csv, кавычки ("" внутри кавычек - сама кавычка) снимаются
+     */
+    static List<String> splitCsv(String line, char delimiter) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == delimiter && !quoted) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    private static String fit(String cell) {
+        return cell.length() <= MAX_CELL_CHARS ? cell : cell.substring(0, MAX_CELL_CHARS - 1) + "…";
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(line);
+        }
+        return text.toString();
+    }
+}
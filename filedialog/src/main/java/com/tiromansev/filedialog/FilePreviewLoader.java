@@ -0,0 +1,211 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.LruCache;
+
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Maybe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * превью выделенного файла: читается только начало файла (не больше maxBytes) через канал
+ * дескриптора документа в фоновом потоке. текст декодируется порциями по мере чтения, и чтение
+ * останавливается, как только набралось достаточно строк. последние превью хранятся в памяти
+ */
+public class FilePreviewLoader {
+
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024;
+    public static final int MAX_LINES = 20;
+    public static final long SELECTION_DELAY_MS = 150;
+    private static final int CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_CACHED_PREVIEWS = 32;
+    private static final String CSV_FILE_EXT = ".csv";
+
+    private static volatile FilePreviewLoader instance;
+
+    private final Context context;
+    private final LruCache<String, FilePreview> cache = new LruCache<>(MAX_CACHED_PREVIEWS);
+    private volatile int maxBytes = DEFAULT_MAX_BYTES;
+
+    private FilePreviewLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static FilePreviewLoader get(Context context) {
+        if (instance == null) {
+            synchronized (FilePreviewLoader.class) {
+                if (instance == null) {
+                    instance = new FilePreviewLoader(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxBytes сколько байт от начала файла читать для превью
+     */
+    public void setMaxBytes(int maxBytes) {
+        this.maxBytes = Math.max(CHUNK_SIZE, maxBytes);
+        cache.evictAll();
+    }
+
+    /**
+     * превью строки, результат в главном потоке. чтение начинается через SELECTION_DELAY_MS,
+     * так что при быстрой смене выделения отписка от предыдущего запроса отменяет его до обращения
+     * к провайдеру, а начатое чтение прерывается между порциями
+     */
+    public Maybe<FilePreview> load(RowItem rowItem) {
+        String key = getKey(rowItem);
+        FilePreview cached = cache.get(key);
+        if (cached != null) {
+            return Maybe.just(cached);
+        }
+        Uri uri = rowItem.getUri();
+        String name = rowItem.getTitle();
+        int limit = maxBytes;
+        return Maybe.<FilePreview>create(emitter -> {
+            try (ReadableByteChannel channel = openChannel(uri)) {
+                // a read blocked on a slow provider is released by closing its channel
+                emitter.setCancellable(channel::close);
+                FilePreview preview = read(channel, name, limit, emitter::isDisposed);
+                if (preview == null) {
+                    return;
+                }
+                cache.put(key, preview);
+                emitter.onSuccess(preview);
+            } catch (Exception e) {
+                emitter.tryOnError(e);
+            }
+        })
+                .delaySubscription(SELECTION_DELAY_MS, TimeUnit.MILLISECONDS, Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private ReadableByteChannel openChannel(Uri uri) throws Exception {
+        if (ZipArchive.isEntryUri(uri)) {
+            ZipArchive.Entry entry = ZipArchive.find(context, ZipArchive.getArchiveUri(uri), ZipArchive.getEntryPath(uri));
+            if (entry == null) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            return Channels.newChannel(entry.openStream(context));
+        }
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        // closing the channel closes the stream and with it the descriptor
+        return new ParcelFileDescriptor.AutoCloseInputStream(descriptor).getChannel();
+    }
+
+    private interface Cancelled {
+        boolean get();
+    }
+
+    /**
+     * @return null если чтение отменено
+     */
+    private static FilePreview read(ReadableByteChannel channel, String name, int limit, Cancelled cancelled)
+            throws Exception {
+        byte[] sample = new byte[limit];
+        ByteBuffer buffer = ByteBuffer.wrap(sample);
+        buffer.limit(Math.min(CHUNK_SIZE, limit));
+        boolean eof = fill(channel, buffer);
+        if (cancelled.get()) {
+            return null;
+        }
+        FilePreview binary = FilePreview.binary(sample, buffer.position());
+        if (binary != null) {
+            return binary;
+        }
+
+        // the decoder keeps a multibyte sequence split between chunks until the next chunk arrives
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(limit);
+        ByteBuffer decoded = ByteBuffer.wrap(sample);
+        decoded.limit(buffer.position());
+        decoder.decode(decoded, chars, eof);
+        while (!eof && buffer.position() < limit && countLines(chars) < MAX_LINES) {
+            buffer.limit(Math.min(buffer.position() + CHUNK_SIZE, limit));
+            eof = fill(channel, buffer);
+            if (cancelled.get()) {
+                return null;
+            }
+            decoded.limit(buffer.position());
+            decoder.decode(decoded, chars, eof);
+        }
+        if (eof) {
+            decoder.flush(chars);
+        }
+        chars.flip();
+
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < chars.length() && lines.size() < MAX_LINES; i++) {
+            if (chars.charAt(i) == '\n') {
+                lines.add(trimLine(chars, start, i));
+                start = i + 1;
+            }
+        }
+        // an unterminated last line is complete only at the end of the file
+        if (lines.size() < MAX_LINES && start < chars.length() && (eof || lines.isEmpty())) {
+            lines.add(trimLine(chars, start, chars.length()));
+        }
+        return FilePreview.text(lines, name != null && name.toLowerCase(Locale.ROOT).endsWith(CSV_FILE_EXT));
+    }
+
+    /**
+     * дочитывает буфер до limit
+     * @return true если достигнут конец файла
+     */
+    private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws Exception {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countLines(CharBuffer chars) {
+        int lines = 0;
+        for (int i = 0; i < chars.position(); i++) {
+            if (chars.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static String trimLine(CharBuffer chars, int start, int end) {
+        if (end > start && chars.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return chars.subSequence(start, end).toString();
+    }
+
+    private static String getKey(RowItem rowItem) {
+        return rowItem.getUri() + "|" + rowItem.getLastModified() + "|" + rowItem.getSize();
+    }
+}
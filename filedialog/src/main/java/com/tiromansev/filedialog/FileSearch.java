@@ -0,0 +1,125 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+
+/**
+ * рекурсивный обход дерева SAF: один запрос дочерних документов на папку,
+ * папки обрабатываются параллельно на пуле из parallelism потоков
+ */
+public class FileSearch {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    private static final int PROGRESS_INTERVAL = 16;
+
+    private final FileLister fileLister;
+    private final int parallelism;
+
+    public FileSearch(FileLister fileLister, int parallelism) {
+        this.fileLister = fileLister;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param matchFactory строка результата для найденного файла или null если файл не подходит
+     * @return найденные файлы порциями по мере обхода, последняя порция - complete.
+     * отписка останавливает обход
+     */
+    public Flowable<SearchProgress> search(Context context, Uri rootUri, MatchFactory matchFactory) {
+        return Flowable.create(source -> {
+            FlowableEmitter<SearchProgress> emitter = source.serialize();
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            emitter.setCancellable(executor::shutdownNow);
+            new Walk(context, matchFactory, emitter, executor).submit(rootUri);
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    public interface MatchFactory {
+        RowItem createMatch(DocumentEntry entry);
+    }
+
+    private class Walk {
+        private final Context context;
+        private final MatchFactory matchFactory;
+        private final FlowableEmitter<SearchProgress> emitter;
+        private final ExecutorService executor;
+        private final AtomicInteger pendingFolders = new AtomicInteger();
+        private final AtomicInteger scannedFolders = new AtomicInteger();
+        private final AtomicInteger failedFolders = new AtomicInteger();
+        private final long startTime = SystemClock.elapsedRealtime();
+
+        private Walk(Context context,
+                     MatchFactory matchFactory,
+                     FlowableEmitter<SearchProgress> emitter,
+                     ExecutorService executor) {
+            this.context = context;
+            this.matchFactory = matchFactory;
+            this.emitter = emitter;
+            this.executor = executor;
+        }
+
+        private void submit(Uri folderUri) {
+            pendingFolders.incrementAndGet();
+            try {
+                executor.execute(() -> scan(folderUri));
+            } catch (RejectedExecutionException e) {
+                // executor is shut down after cancellation
+                pendingFolders.decrementAndGet();
+            }
+        }
+
+        private void scan(Uri folderUri) {
+            List<RowItem> matches = new ArrayList<>();
+            try {
+                if (!emitter.isCancelled()) {
+                    fileLister.listFiles(context, folderUri, entry -> {
+                        if (entry.isDirectory()) {
+                            submit(entry.getUri());
+                        } else {
+                            RowItem match = matchFactory.createMatch(entry);
+                            if (match != null) {
+                                matches.add(match);
+                            }
+                        }
+                        return !emitter.isCancelled();
+                    });
+                }
+            } catch (Exception e) {
+                // one unreadable folder must not abort the whole walk
+                e.printStackTrace();
+                failedFolders.incrementAndGet();
+            } finally {
+                int scanned = scannedFolders.incrementAndGet();
+                if (!matches.isEmpty() || scanned % PROGRESS_INTERVAL == 0) {
+                    emit(matches, false);
+                }
+                // matches are emitted before the counter drops, so nothing follows onComplete
+                if (pendingFolders.decrementAndGet() == 0) {
+                    emit(Collections.emptyList(), true);
+                    executor.shutdown();
+                    emitter.onComplete();
+                }
+            }
+        }
+
+        private void emit(List<RowItem> matches, boolean complete) {
+            if (!emitter.isCancelled()) {
+                emitter.onNext(new SearchProgress(matches, scannedFolders.get(), failedFolders.get(),
+                        SystemClock.elapsedRealtime() - startTime, complete));
+            }
+        }
+    }
+}
@@ -1,86 +1,710 @@
 package com.tiromansev.filedialog;
 
 import android.content.Context;
+import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.tiromansev.filedialog.utils.ColorUtils;
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import static com.tiromansev.filedialog.BreadCrumbs.UNDEFINED_VALUE;
 
+/**
+ * список файлов на AsyncListDiffer: изменения списка считаются не в главном потоке,
+ * id строк стабильны и строятся по uri документа. порции читаемой папки добавляются
+ * в список адаптера напрямую, без расчета разницы
+ */
 public class FilesAdapter extends RecyclerView.Adapter<FilesViewHolder> {
 
-    private List<RowItem> rowItems;
+    /**
+     * списки до MAX_DIFF_ROWS строк (в сумме) всегда сравниваются через DiffUtil
+     */
+    public static final int MAX_DIFF_ROWS = 2000;
+    /**
+     * DiffUtil растет как (N + M) * D от числа изменений D: у больших списков разница считается,
+     * только если изменилось не больше MAX_DIFF_CHANGES строк. перестановка (смена сортировки)
+     * и массовое добавление или удаление (снятие фильтра) заменяют список целиком
+     */
+    public static final int MAX_DIFF_CHANGES = 200;
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final Object PAYLOAD_SELECTION = new Object();
+    public static final DiffUtil.ItemCallback<RowItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<RowItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RowItem oldItem, @NonNull RowItem newItem) {
+            return oldItem.isSameDocument(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RowItem oldItem, @NonNull RowItem newItem) {
+            return oldItem.getImageId() == newItem.getImageId() &&
+                    oldItem.getSize() == newItem.getSize() &&
+                    oldItem.getLastModified() == newItem.getLastModified() &&
+                    oldItem.isShowData() == newItem.isShowData() &&
+                    oldItem.hasThumbnail() == newItem.hasThumbnail() &&
+                    oldItem.hasSameTitle(newItem);
+        }
+    };
+
     private Context context;
-    private int selectedPosition = -1;
+    private final ItemPalette palette;
+    private ThumbnailLoader thumbnailLoader;
+    private int thumbnailSize;
+    private Uri selectedUri;
+    private boolean multiSelect = false;
+    // выбранные файлы по стабильному id строки, в порядке выбора
+    private final LinkedHashMap<Long, RowItem> selectedItems = new LinkedHashMap<>();
+    private int anchorPosition = RecyclerView.NO_POSITION;
     private ItemSelectListener itemSelectListener;
+    private final MutableUpdateCallback updateCallback = new MutableUpdateCallback(this);
+    private final AsyncListDiffer<RowItem> differ = new AsyncListDiffer<>(updateCallback,
+            new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).build());
+    // rows shown while a folder is read in batches, the differ holds no list meanwhile
+    private ArrayList<RowItem> appendedItems;
+    private RecyclerView recyclerView;
 
     public FilesAdapter(Context context,
-                        List<RowItem> rowItems,
                         ItemSelectListener itemSelectListener) {
-        this.rowItems = rowItems;
         this.context = context;
         this.itemSelectListener = itemSelectListener;
+        this.palette = new ItemPalette(context);
+        setHasStableIds(true);
+    }
+
+    public FilesAdapter(Context context,
+                        List<RowItem> rowItems,
+                        ItemSelectListener itemSelectListener) {
+        this(context, itemSelectListener);
+        setItems(rowItems);
+    }
+
+    /**
+     * @param thumbnailLoader null - только иконки строк
+     */
+    public void setThumbnailLoader(ThumbnailLoader thumbnailLoader) {
+        this.thumbnailLoader = thumbnailLoader;
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+    }
+
+    /**
+     * режим выбора нескольких файлов: нажатие на файл добавляет/убирает его из выбора,
+     * долгое нажатие выбирает все файлы от предыдущего нажатого до текущего
+     */
+    public void setMultiSelect(boolean multiSelect) {
+        this.multiSelect = multiSelect;
     }
 
     public Context getContext() {
         return context;
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
     @NonNull
     @Override
     public FilesViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View itemView = LayoutInflater.from(parent.getContext()).
                 inflate(R.layout.view_file_dialog_item, parent, false);
-        return new FilesViewHolder(itemView);
+        FilesViewHolder holder = new FilesViewHolder(itemView);
+        holder.imageView.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
+        holder.rlDirItem.setOnClickListener(v -> {
+            int adapterPosition = holder.getAdapterPosition();
+            if (adapterPosition != RecyclerView.NO_POSITION) {
+                selectItem(adapterPosition);
+            }
+        });
+        holder.rlDirItem.setOnLongClickListener(v -> {
+            int adapterPosition = holder.getAdapterPosition();
+            if (!multiSelect || adapterPosition == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            selectRange(adapterPosition);
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull FilesViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && allSelectionPayloads(payloads)) {
+            bindSelection(holder, getItem(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
     }
 
     @Override
     public void onBindViewHolder(@NonNull FilesViewHolder holder, int position) {
-        RowItem rowItem = rowItems.get(position);
+        RowItem rowItem = getItem(position);
 
         holder.txtTitle.setText(rowItem.getTitle());
-        holder.txtData.setText(rowItem.getData());
-        holder.txtData.setVisibility(rowItem.getData() != null ? View.VISIBLE : View.GONE);
-        holder.imageView.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
-        holder.rlDirItem.setOnClickListener(v -> {
-            selectedPosition = position;
-            if (itemSelectListener != null) {
-                itemSelectListener.onItemSelected(rowItem);
-            }
-            notifyDataSetChanged();
-        });
+        String data = rowItem.getData();
+        holder.txtData.setText(data);
+        holder.txtData.setVisibility(data != null ? View.VISIBLE : View.GONE);
 
-        if (rowItem.getImageId() != UNDEFINED_VALUE) {
-            holder.imageView.setImageResource(rowItem.getImageId());
+        if (thumbnailLoader != null && rowItem.hasThumbnail()) {
+            thumbnailLoader.load(holder.imageView, rowItem, thumbnailSize);
         } else {
-            holder.imageView.setImageBitmap(null);
+            if (thumbnailLoader != null) {
+                thumbnailLoader.cancel(holder.imageView);
+            }
+            if (rowItem.getImageId() != UNDEFINED_VALUE) {
+                holder.imageView.setImageResource(rowItem.getImageId());
+            } else {
+                holder.imageView.setImageBitmap(null);
+            }
         }
 
-        if (selectedPosition == position) {
-            holder.rlDirItem.setBackgroundColor(ColorUtils.getAttrColor(R.attr.file_dialog_selected_item_background, getContext()));
-            holder.txtTitle.setTextColor(ColorUtils.getAttrColor(R.attr.file_dialog_selected_dir_item_color, getContext()));
-            holder.txtData.setTextColor(ColorUtils.getAttrColor(R.attr.file_dialog_selected_dir_item_color, getContext()));
-        } else {
-            holder.rlDirItem.setBackgroundColor(ColorUtils.getAttrColor(R.attr.file_dialog_item_background, getContext()));
-            holder.txtTitle.setTextColor(ColorUtils.getAttrColor(R.attr.file_dialog_dir_item_color, getContext()));
-            holder.txtData.setTextColor(ColorUtils.getAttrColor(R.attr.file_dialog_dir_item_color, getContext()));
+        bindSelection(holder, rowItem);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull FilesViewHolder holder) {
+        if (thumbnailLoader != null) {
+            thumbnailLoader.cancel(holder.imageView);
+        }
+    }
+
+    private void bindSelection(FilesViewHolder holder, RowItem rowItem) {
+        boolean selected = isSelected(rowItem);
+        int textColor = palette.getTextColor(selected);
+        holder.rlDirItem.setBackgroundColor(palette.getBackground(selected));
+        holder.txtTitle.setTextColor(textColor);
+        holder.txtData.setTextColor(textColor);
+    }
+
+    private boolean isSelected(RowItem rowItem) {
+        if (multiSelect) {
+            return selectedItems.containsKey(rowItem.getStableId());
+        }
+        return selectedUri != null && selectedUri.equals(rowItem.getUri());
+    }
+
+    private static boolean allSelectionPayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * выделяет строку, перерисовываются только ранее выделенная и новая строки
+     */
+    private void selectItem(int position) {
+        RowItem rowItem = getItem(position);
+        if (multiSelect && !rowItem.isDirectory()) {
+            toggleItem(position, rowItem);
+            return;
+        }
+        int oldPosition = indexOf(selectedUri);
+        selectedUri = rowItem.getUri();
+        if (oldPosition != -1) {
+            notifyItemChanged(oldPosition, PAYLOAD_SELECTION);
+        }
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+        if (itemSelectListener != null) {
+            itemSelectListener.onItemSelected(rowItem);
+        }
+    }
+
+    private void toggleItem(int position, RowItem rowItem) {
+        long id = rowItem.getStableId();
+        if (selectedItems.remove(id) == null) {
+            selectedItems.put(id, rowItem);
+        }
+        anchorPosition = position;
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    /**
+     * выбирает файлы от последней нажатой строки до position включительно
+     */
+    private void selectRange(int position) {
+        int from = anchorPosition != RecyclerView.NO_POSITION && anchorPosition < getItemCount()
+                ? anchorPosition : position;
+        int start = Math.min(from, position);
+        int end = Math.max(from, position);
+        for (int i = start; i <= end; i++) {
+            RowItem rowItem = getItem(i);
+            if (!rowItem.isDirectory()) {
+                selectedItems.put(rowItem.getStableId(), rowItem);
+            }
+        }
+        anchorPosition = position;
+        notifyItemRangeChanged(start, end - start + 1, PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    /**
+     * выбирает все файлы текущего списка (то есть прошедшие фильтры)
+     */
+    public void selectAll() {
+        List<RowItem> items = items();
+        for (int i = 0; i < items.size(); i++) {
+            RowItem rowItem = items.get(i);
+            if (!rowItem.isDirectory()) {
+                selectedItems.put(rowItem.getStableId(), rowItem);
+            }
+        }
+        notifyItemRangeChanged(0, items.size(), PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    public List<RowItem> getSelectedItems() {
+        return new ArrayList<>(selectedItems.values());
+    }
+
+    /**
+     * восстанавливает выбор (например после поворота экрана), строки сопоставляются по uri
+     */
+    public void setSelectedItems(List<RowItem> items) {
+        selectedItems.clear();
+        for (RowItem rowItem : items) {
+            selectedItems.put(rowItem.getStableId(), rowItem);
         }
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    public void clearSelectedItems() {
+        selectedItems.clear();
+        anchorPosition = RecyclerView.NO_POSITION;
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    private void notifySelectionChanged() {
+        if (itemSelectListener != null) {
+            itemSelectListener.onSelectionChanged(selectedItems.size());
+        }
+    }
+
+    private int indexOf(Uri uri) {
+        return indexOf(items(), uri);
+    }
+
+    /**
+     * позиция строки документа uri. строки сравниваются по стабильному id (строки RowStore -
+     * без создания RowItem и uri), uri строится только для совпавшей строки
+     */
+    public static int indexOf(List<RowItem> items, Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        long id = getStableId(uri);
+        RowStore store = items instanceof RowStore ? (RowStore) items : null;
+        for (int i = 0; i < items.size(); i++) {
+            long itemId = store != null ? store.getStableId(i) : items.get(i).getStableId();
+            if (itemId == id && uri.equals(items.get(i).getUri())) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
     public int getItemCount() {
-        return rowItems.size();
+        return items().size();
+    }
+
+    protected RowItem getItem(int position) {
+        return items().get(position);
+    }
+
+    /**
+     * текущий список адаптера, во время чтения папки порциями растет вместе с ним
+     */
+    public List<RowItem> getCurrentList() {
+        return appendedItems != null ? Collections.unmodifiableList(appendedItems) : differ.getCurrentList();
+    }
+
+    private List<RowItem> items() {
+        return appendedItems != null ? appendedItems : differ.getCurrentList();
+    }
+
+    /**
+     * для RowStore id считается по колонкам, без создания строки и uri
+     */
+    @Override
+    public long getItemId(int position) {
+        List<RowItem> items = items();
+        if (items instanceof RowStore) {
+            return ((RowStore) items).getStableId(position);
+        }
+        return items.get(position).getStableId();
+    }
+
+    /**
+     * 64-битный FNV-1a хэш uri документа
+     */
+    public static long getStableId(Uri uri) {
+        if (uri == null) {
+            return RecyclerView.NO_ID;
+        }
+        return hash(FNV_OFFSET_BASIS, uri.toString());
+    }
+
+    static long hash(long hash, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = hash(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    static long hash(long hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    /**
+     * добавляет порцию строк (читаемой папки или результатов поиска) без расчета разницы, адаптер
+     * уведомляется только о вставленных строках
+     * @param comparator сортировка списка: строки порции встают на свои места, так что итоговый
+     *                   отсортированный список папки совпадает с уже показанным; null - в конец списка
+     */
+    public void appendItems(List<RowItem> items, @Nullable Comparator<RowItem> comparator) {
+        if (items.isEmpty()) {
+            return;
+        }
+        if (appendedItems == null) {
+            appendedItems = new ArrayList<>(differ.getCurrentList());
+            // the rows stay on screen as appendedItems, the differ drops its list (and a running diff) silently
+            updateCallback.muted = true;
+            differ.submitList(null);
+            updateCallback.muted = false;
+        }
+        if (comparator == null) {
+            int start = appendedItems.size();
+            appendedItems.addAll(items);
+            notifyItemRangeInserted(start, items.size());
+            return;
+        }
+        List<RowItem> batch = new ArrayList<>(items);
+        Collections.sort(batch, comparator);
+        int[] positions = merge(appendedItems, batch, comparator);
+        int start = 0;
+        for (int i = 1; i <= positions.length; i++) {
+            if (i == positions.length || positions[i] != positions[i - 1] + 1) {
+                notifyItemRangeInserted(positions[start], i - start);
+                start = i;
+            }
+        }
+    }
+
+    /**
+     * вливает отсортированную порцию в отсортированный список на месте, с конца списка
+     * @return позиции строк порции в итоговом списке, по возрастанию
+     */
+    static int[] merge(ArrayList<RowItem> items, List<RowItem> batch, Comparator<RowItem> comparator) {
+        int read = items.size() - 1;
+        for (int i = 0; i < batch.size(); i++) {
+            items.add(null);
+        }
+        int write = items.size() - 1;
+        int[] positions = new int[batch.size()];
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            RowItem item = batch.get(i);
+            // rows read earlier stay before equal ones, as in the stable sort of the complete listing
+            while (read >= 0 && comparator.compare(items.get(read), item) > 0) {
+                items.set(write--, items.get(read--));
+            }
+            positions[i] = write;
+            items.set(write--, item);
+        }
+        return positions;
+    }
+
+    /**
+     * передает добавленные порциями строки AsyncListDiffer, дальше список меняется через него
+     */
+    public void finishAppending() {
+        if (appendedItems == null) {
+            return;
+        }
+        List<RowItem> items = appendedItems;
+        appendedItems = null;
+        // the differ has no list, so the submit is synchronous; the rows are already on screen
+        updateCallback.muted = true;
+        differ.submitList(items);
+        updateCallback.muted = false;
+    }
+
+    /**
+     * заменяет список новым содержимым папки, разница со старым списком считается в фоне
+     */
+    public void setItems(List<RowItem> items) {
+        submitItems(copyOf(items));
+    }
+
+    /**
+     * новое представление той же папки (сортировка, фильтр, обновление по уведомлению провайдера).
+     * небольшие изменения применяются рассчитанной разницей, так что сохраняются выделение и анимации;
+     * перестановка, массовое изменение или список, сменившийся за время расчета, заменяются целиком,
+     * первая видимая строка при этом остается на своем месте
+     */
+    public void showItems(ListUpdate update) {
+        finishAppending();
+        if (update.diff == null || update.base != differ.getCurrentList()) {
+            replaceItems(update.items);
+            return;
+        }
+        // the differ takes the new list silently, the adapter is updated by the precomputed diff
+        updateCallback.muted = true;
+        differ.submitList(null);
+        differ.submitList(copyOf(update.items));
+        updateCallback.muted = false;
+        update.diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * разница между списком адаптера и новым представлением папки, вызывать не в главном потоке.
+     * строки сравниваются по стабильным id, без создания строк RowStore
+     * @param base список адаптера (getCurrentList) на момент запуска расчета, null - без расчета разницы
+     */
+    public static ListUpdate calculateUpdate(List<RowItem> base, List<RowItem> items) {
+        if (base == null) {
+            return new ListUpdate(null, items, null);
+        }
+        long[] oldIds = getStableIds(base);
+        long[] newIds = getStableIds(items);
+        if (base.size() + items.size() > MAX_DIFF_ROWS && countChanges(oldIds, newIds) > MAX_DIFF_CHANGES) {
+            return new ListUpdate(base, items, null);
+        }
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldIds.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newIds.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldIds[oldItemPosition] != RecyclerView.NO_ID
+                        && oldIds[oldItemPosition] == newIds[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return DIFF_CALLBACK.areContentsTheSame(base.get(oldItemPosition), items.get(newItemPosition));
+            }
+        });
+        return new ListUpdate(base, items, diff);
+    }
+
+    /**
+     * оценка числа изменений за линейное время: удаленные и добавленные строки плюс разрывы
+     * порядка оставшихся (перестановка дает разрыв почти на каждой строке)
+     */
+    static int countChanges(long[] oldIds, long[] newIds) {
+        if (Math.abs(oldIds.length - newIds.length) > MAX_DIFF_CHANGES) {
+            return Math.abs(oldIds.length - newIds.length);
+        }
+        HashMap<Long, Integer> positions = new HashMap<>(oldIds.length * 2);
+        for (int i = 0; i < oldIds.length; i++) {
+            positions.put(oldIds[i], i);
+        }
+        int matched = 0;
+        int breaks = 0;
+        int previous = -1;
+        for (long id : newIds) {
+            Integer position = positions.get(id);
+            if (position == null) {
+                continue;
+            }
+            if (matched > 0 && position != previous + 1) {
+                breaks++;
+            }
+            previous = position;
+            matched++;
+        }
+        return oldIds.length - matched + newIds.length - matched + breaks;
+    }
+
+    private static long[] getStableIds(List<RowItem> items) {
+        long[] ids = new long[items.size()];
+        RowStore store = items instanceof RowStore ? (RowStore) items : null;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store != null ? store.getStableId(i) : items.get(i).getStableId();
+        }
+        return ids;
+    }
+
+    /**
+     * заменяет список без расчета разницы, первая видимая строка остается на своем месте экрана
+     */
+    private void replaceItems(List<RowItem> items) {
+        LinearLayoutManager layoutManager = recyclerView != null
+                && recyclerView.getLayoutManager() instanceof LinearLayoutManager
+                ? (LinearLayoutManager) recyclerView.getLayoutManager() : null;
+        long anchorId = RecyclerView.NO_ID;
+        int offset = 0;
+        if (layoutManager != null) {
+            int first = layoutManager.findFirstVisibleItemPosition();
+            View view = first != RecyclerView.NO_POSITION ? layoutManager.findViewByPosition(first) : null;
+            if (view != null && first < getItemCount()) {
+                anchorId = getItemId(first);
+                offset = layoutManager.getDecoratedTop(view) - layoutManager.getPaddingTop();
+            }
+        }
+        resetItems(items);
+        int position = indexOfId(items(), anchorId);
+        if (layoutManager != null && position != -1) {
+            layoutManager.scrollToPositionWithOffset(position, offset);
+        }
+    }
+
+    private static int indexOfId(List<RowItem> items, long id) {
+        if (id == RecyclerView.NO_ID) {
+            return -1;
+        }
+        RowStore store = items instanceof RowStore ? (RowStore) items : null;
+        for (int i = 0; i < items.size(); i++) {
+            if ((store != null ? store.getStableId(i) : items.get(i).getStableId()) == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * показывает другой список без расчета разницы со старым (переход в другую папку),
+     * список прокручивается в начало
+     */
+    public void resetItems(List<RowItem> items) {
+        finishAppending();
+        differ.submitList(null);
+        differ.submitList(copyOf(items));
+    }
+
+    /**
+     * снимает выделение одиночного выбора, набор выбранных файлов в режиме множественного выбора
+     * сохраняется при переходе по папкам
+     */
+    public void clearSelection() {
+        anchorPosition = RecyclerView.NO_POSITION;
+        int oldPosition = indexOf(selectedUri);
+        selectedUri = null;
+        if (oldPosition != -1) {
+            notifyItemChanged(oldPosition, PAYLOAD_SELECTION);
+        }
+    }
+
+    /**
+     * RowStore неизменяемый и передается как есть, копия в ArrayList создала бы объект на каждую строку
+     */
+    private static List<RowItem> copyOf(List<RowItem> items) {
+        return items instanceof RowStore ? items : new ArrayList<>(items);
+    }
+
+    private void submitItems(List<RowItem> items) {
+        finishAppending();
+        differ.submitList(items);
+    }
+
+    /**
+     * новый список для showItems с разницей от списка, который был в адаптере при расчете
+     */
+    public static class ListUpdate {
+        private final List<RowItem> base;
+        private final List<RowItem> items;
+        private final DiffUtil.DiffResult diff;
+
+        private ListUpdate(List<RowItem> base, List<RowItem> items, DiffUtil.DiffResult diff) {
+            this.base = base;
+            this.items = items;
+            this.diff = diff;
+        }
+
+        public List<RowItem> getItems() {
+            return items;
+        }
+
+        /**
+         * false - список будет заменен целиком
+         */
+        boolean hasDiff() {
+            return diff != null;
+        }
+    }
+
+    /**
+     * уведомления AsyncListDiffer адаптеру, отключаются пока список передается между differ и appendedItems
+     */
+    private static class MutableUpdateCallback implements ListUpdateCallback {
+        private final AdapterListUpdateCallback adapterCallback;
+        private boolean muted;
+
+        MutableUpdateCallback(RecyclerView.Adapter<?> adapter) {
+            adapterCallback = new AdapterListUpdateCallback(adapter);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            if (!muted) {
+                adapterCallback.onInserted(position, count);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (!muted) {
+                adapterCallback.onRemoved(position, count);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            if (!muted) {
+                adapterCallback.onMoved(fromPosition, toPosition);
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            if (!muted) {
+                adapterCallback.onChanged(position, count, payload);
+            }
+        }
     }
 
     public interface ItemSelectListener {
         void onItemSelected(RowItem rowItem);
+
+        /**
+         * изменилось количество выбранных файлов в режиме множественного выбора
+         */
+        default void onSelectionChanged(int count) {
+        }
     }
 }
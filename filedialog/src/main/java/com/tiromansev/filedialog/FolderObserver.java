@@ -0,0 +1,134 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * следит за изменением содержимого открытой папки через уведомления провайдера.
+ * пока идет слежение, курсор дочерних документов папки остается открытым: провайдеры
+ * на основе FileSystemProvider следят за каталогом только пока открыт его курсор и уведомляют
+ * по uri уведомлений курсора, поэтому наблюдатель регистрируется на самом курсоре.
+ * серия изменений (например запись сотен файлов) схлопывается в одно событие:
+ * после DEBOUNCE_MS тишины, но не реже чем раз в MAX_DELAY_MS.
+ * провайдеры, которые не присылают уведомлений, просто не вызывают слушатель
+ */
+public class FolderObserver {
+
+    public static final long DEBOUNCE_MS = 500;
+    public static final long MAX_DELAY_MS = 2000;
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable dispatch = this::dispatchChange;
+    private final ContentObserver observer = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            scheduleChange();
+        }
+    };
+    private Uri folderUri;
+    private Cursor cursor;
+    private Disposable openDisposable;
+    private int generation = 0;
+    private long firstChangeTime = 0;
+
+    public FolderObserver(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * начинает слежение за папкой, слежение за предыдущей папкой прекращается.
+     * курсор открывается в io потоке
+     */
+    public void observe(Uri folderUri) {
+        stop();
+        this.folderUri = folderUri;
+        int observeGeneration;
+        synchronized (this) {
+            observeGeneration = generation;
+        }
+        openDisposable = Schedulers.io().scheduleDirect(() -> openCursor(folderUri, observeGeneration));
+    }
+
+    public void stop() {
+        if (openDisposable != null) {
+            openDisposable.dispose();
+            openDisposable = null;
+        }
+        synchronized (this) {
+            // an openCursor still running sees the new generation and closes its own cursor
+            generation++;
+            closeCursor();
+        }
+        folderUri = null;
+        handler.removeCallbacks(dispatch);
+        firstChangeTime = 0;
+    }
+
+    private void openCursor(Uri folderUri, int observeGeneration) {
+        Cursor childrenCursor;
+        try {
+            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(folderUri,
+                    DocumentUtils.getDocumentId(context, folderUri));
+            childrenCursor = context.getContentResolver().query(childrenUri,
+                    new String[]{DocumentsContract.Document.COLUMN_DOCUMENT_ID}, null, null, null);
+        } catch (Exception e) {
+            // provider does not allow observing, the list is refreshed on reopen only
+            e.printStackTrace();
+            return;
+        }
+        if (childrenCursor == null) {
+            return;
+        }
+        synchronized (this) {
+            if (observeGeneration != generation) {
+                childrenCursor.close();
+                return;
+            }
+            cursor = childrenCursor;
+            cursor.registerContentObserver(observer);
+        }
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            cursor.unregisterContentObserver(observer);
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    private void scheduleChange() {
+        long now = SystemClock.uptimeMillis();
+        if (firstChangeTime == 0) {
+            firstChangeTime = now;
+        }
+        handler.removeCallbacks(dispatch);
+        long delay = Math.min(DEBOUNCE_MS, firstChangeTime + MAX_DELAY_MS - now);
+        handler.postDelayed(dispatch, Math.max(0, delay));
+    }
+
+    private void dispatchChange() {
+        firstChangeTime = 0;
+        if (folderUri != null) {
+            listener.onFolderChanged(folderUri);
+        }
+    }
+
+    public interface Listener {
+        void onFolderChanged(Uri folderUri);
+    }
+}
@@ -0,0 +1,76 @@
+package com.tiromansev.filedialog;
+
+/**
+ * ход подсчета контрольных сумм файла, последняя порция (isComplete) содержит SHA-256 и CRC32
+ */
+public class HashProgress {
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long elapsedMillis;
+    private final byte[] sha256;
+    private final long crc32;
+
+    public HashProgress(long bytesRead, long totalBytes, long elapsedMillis) {
+        this(bytesRead, totalBytes, elapsedMillis, null, 0);
+    }
+
+    public HashProgress(long bytesRead, long totalBytes, long elapsedMillis, byte[] sha256, long crc32) {
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.elapsedMillis = elapsedMillis;
+        this.sha256 = sha256;
+        this.crc32 = crc32;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * размер файла, -1 если провайдер его не сообщает (например, отдает данные через pipe)
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedMillis > 0 ? bytesRead * 1000d / elapsedMillis : 0;
+    }
+
+    /**
+     * процент прочитанного, -1 если размер файла неизвестен
+     */
+    public int getPercent() {
+        if (totalBytes <= 0) {
+            return isComplete() ? 100 : -1;
+        }
+        return (int) Math.min(100, bytesRead * 100 / totalBytes);
+    }
+
+    public boolean isComplete() {
+        return sha256 != null;
+    }
+
+    public byte[] getSha256() {
+        return sha256 != null ? sha256.clone() : null;
+    }
+
+    public String getSha256Hex() {
+        if (sha256 == null) {
+            return null;
+        }
+        StringBuilder hex = new StringBuilder(sha256.length * 2);
+        for (byte b : sha256) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public long getCrc32() {
+        return crc32;
+    }
+}
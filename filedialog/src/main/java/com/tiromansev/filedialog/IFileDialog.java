@@ -13,6 +13,14 @@ public interface IFileDialog {
     public static final int FILE_SAVE = 1;
     public static final int FOLDER_CHOOSE = 2;
 
+    /**
+     * режимы сортировки, папки при любом режиме отображаются первыми
+     */
+    public static final int SORT_BY_NAME = 0;
+    public static final int SORT_NATURAL = 1;
+    public static final int SORT_BY_DATE = 2;
+    public static final int SORT_BY_SIZE = 3;
+
     void setSelectType(int selectType);
 
     void setFilterFileExt(String[] filterFileExt);
@@ -0,0 +1,30 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+
+import com.tiromansev.filedialog.utils.ColorUtils;
+
+/**
+ * цвета строки списка файлов из темы, читаются один раз на адаптер
+ */
+public class ItemPalette {
+    private final int background;
+    private final int textColor;
+    private final int selectedBackground;
+    private final int selectedTextColor;
+
+    public ItemPalette(Context context) {
+        background = ColorUtils.getAttrColor(R.attr.file_dialog_item_background, context);
+        textColor = ColorUtils.getAttrColor(R.attr.file_dialog_dir_item_color, context);
+        selectedBackground = ColorUtils.getAttrColor(R.attr.file_dialog_selected_item_background, context);
+        selectedTextColor = ColorUtils.getAttrColor(R.attr.file_dialog_selected_dir_item_color, context);
+    }
+
+    public int getBackground(boolean selected) {
+        return selected ? selectedBackground : background;
+    }
+
+    public int getTextColor(boolean selected) {
+        return selected ? selectedTextColor : textColor;
+    }
+}
@@ -0,0 +1,248 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * дисковый кэш содержимого папок в cache dir приложения: один двоичный файл на папку,
+ * ключ - uri папки, вытеснение давно не открывавшихся папок при превышении лимита в байтах.
+ * сохраненное содержимое может быть устаревшим (дата модификации папки не меняется, когда
+ * меняются размер или дата файла внутри нее), поэтому оно только показывается сразу,
+ * а папка все равно перечитывается
+ */
+public class ListingDiskCache {
+
+    /**
+     * запись одного файла занимает около 100 байт, лимита хватает на папки в десятки тысяч файлов
+     */
+    public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final String DIR_NAME = "file_dialog_listings";
+    private static final int MAGIC = 0x46444c43;
+    private static final int VERSION = 2;
+
+    private final File dir;
+    private final long maxBytes;
+
+    public ListingDiskCache(Context context, long maxBytes) {
+        this.dir = new File(context.getCacheDir(), DIR_NAME);
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return сохраненное содержимое папки или null если его нет или файл кэша поврежден
+     */
+    public synchronized Listing read(Uri folderUri) {
+        String key = folderUri.toString();
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            long lastModified = in.readLong();
+            int count = in.readInt();
+            List<DocumentEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String documentId = readString(in);
+                String name = readString(in);
+                String mimeType = readString(in);
+                long size = in.readLong();
+                long entryLastModified = in.readLong();
+                int flags = in.readInt();
+                if (documentId == null) {
+                    continue;
+                }
+                entries.add(new DocumentEntry(documentId, name, mimeType, size, entryLastModified, flags,
+                        DocumentsContract.buildDocumentUriUsingTree(folderUri, documentId)));
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new Listing(lastModified, entries);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    public synchronized void write(Uri folderUri, Listing listing) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        String key = folderUri.toString();
+        File file = getFile(key);
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeLong(listing.getLastModified());
+            out.writeInt(listing.getEntries().size());
+            for (DocumentEntry entry : listing.getEntries()) {
+                writeString(out, entry.getDocumentId());
+                writeString(out, entry.getName());
+                writeString(out, entry.getMimeType());
+                out.writeLong(entry.getSize());
+                out.writeLong(entry.getLastModified());
+                out.writeInt(entry.getFlags());
+            }
+        } catch (IOException | RuntimeException e) {
+            // the cache is an optimization, a failed write must not fail the listing
+            e.printStackTrace();
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            return;
+        }
+        trimToSize(file);
+    }
+
+    public synchronized void remove(Uri folderUri) {
+        getFile(folderUri.toString()).delete();
+    }
+
+    public synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * вытесняет давно не открывавшиеся папки, только что записанная папка вытесняется последней
+     * (только если она одна больше лимита)
+     */
+    private void trimToSize(File written) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (left, right) -> Long.compare(left.lastModified(), right.lastModified()));
+        for (File file : files) {
+            if (size <= maxBytes) {
+                return;
+            }
+            if (file.equals(written)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+        if (size > maxBytes) {
+            written.delete();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(dir, hash(key));
+    }
+
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * содержимое папки и дата модификации самой папки на момент чтения
+     */
+    public static class Listing {
+        private final long lastModified;
+        private final List<DocumentEntry> entries;
+
+        public Listing(long lastModified, List<DocumentEntry> entries) {
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getChildCount() {
+            return entries.size();
+        }
+
+        /**
+         * свежее содержимое папки совпадает с сохраненным (количество файлов, id, имена,
+         * размеры, даты и флаги в том же порядке)
+         */
+        public boolean matches(List<DocumentEntry> freshEntries) {
+            if (freshEntries.size() != getChildCount()) {
+                return false;
+            }
+            for (int i = 0; i < freshEntries.size(); i++) {
+                DocumentEntry cached = entries.get(i);
+                DocumentEntry fresh = freshEntries.get(i);
+                if (!Objects.equals(cached.getDocumentId(), fresh.getDocumentId())
+                        || !Objects.equals(cached.getName(), fresh.getName())
+                        || !Objects.equals(cached.getMimeType(), fresh.getMimeType())
+                        || cached.getSize() != fresh.getSize()
+                        || cached.getLastModified() != fresh.getLastModified()
+                        || cached.getFlags() != fresh.getFlags()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public List<DocumentEntry> getEntries() {
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.webkit.MimeTypeMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.tiromansev.filedialog.SafDialog.BACKUP_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.BACKUP_FILE_EXT2;
+import static com.tiromansev.filedialog.SafDialog.BINARY_MIME;
+import static com.tiromansev.filedialog.SafDialog.CSV_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.CSV_MIME;
+import static com.tiromansev.filedialog.SafDialog.EXCELX_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.EXCELX_MIME;
+import static com.tiromansev.filedialog.SafDialog.EXCEL_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.EXCEL_MIME;
+import static com.tiromansev.filedialog.SafDialog.PDF_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.PDF_MIME;
+import static com.tiromansev.filedialog.SafDialog.PRINT_FORM_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.SQLITE_MIME;
+import static com.tiromansev.filedialog.SafDialog.ZIP_FILE_EXT;
+import static com.tiromansev.filedialog.SafDialog.ZIP_MIME;
+
+/**
+ * соответствие mime типов допустимым расширениям файлов
+ */
+public class MimeTypeRegistry {
+
+    public static final String CSV_PICKER_MIME = "text/comma-separated-values";
+    public static final String TEXT_CSV_MIME = "text/csv";
+
+    private final HashMap<String, Set<String>> extensions = new HashMap<>();
+    private boolean useSystemMimeMap = false;
+
+    /**
+     * реестр с расширениями для mime типов SafDialog
+     */
+    public static MimeTypeRegistry createDefault() {
+        MimeTypeRegistry registry = new MimeTypeRegistry();
+        // CSV_MIME and TEXT_MIME are the same string, SafDialog replaces both with CSV_PICKER_MIME
+        registry.register(CSV_MIME, CSV_FILE_EXT);
+        registry.register(CSV_PICKER_MIME, CSV_FILE_EXT);
+        registry.register(TEXT_CSV_MIME, CSV_FILE_EXT);
+        registry.register(EXCEL_MIME, EXCEL_FILE_EXT, EXCELX_FILE_EXT);
+        registry.register(EXCELX_MIME, EXCELX_FILE_EXT);
+        registry.register(ZIP_MIME, ZIP_FILE_EXT);
+        registry.register(SQLITE_MIME, BACKUP_FILE_EXT);
+        registry.register(BINARY_MIME, BACKUP_FILE_EXT, BACKUP_FILE_EXT2, PRINT_FORM_FILE_EXT);
+        registry.register(PDF_MIME, PDF_FILE_EXT);
+        return registry;
+    }
+
+    /**
+     * добавляет расширения (с точкой, например ".csv") для mime типа
+     */
+    public MimeTypeRegistry register(String mimeType, String... fileExts) {
+        Set<String> mimeExtensions = extensions.get(mimeType);
+        if (mimeExtensions == null) {
+            mimeExtensions = new LinkedHashSet<>();
+            extensions.put(mimeType, mimeExtensions);
+        }
+        for (String fileExt : fileExts) {
+            mimeExtensions.add(normalize(fileExt));
+        }
+        return this;
+    }
+
+    /**
+     * дополнять расширения системной таблицей MimeTypeMap для незарегистрированных mime типов
+     */
+    public void setUseSystemMimeMap(boolean useSystemMimeMap) {
+        this.useSystemMimeMap = useSystemMimeMap;
+    }
+
+    public Set<String> getExtensions(String mimeType) {
+        Set<String> result = new LinkedHashSet<>();
+        if (TextUtils.isEmpty(mimeType)) {
+            return result;
+        }
+        Set<String> mimeExtensions = extensions.get(mimeType);
+        if (mimeExtensions != null) {
+            result.addAll(mimeExtensions);
+        } else if (useSystemMimeMap) {
+            String fileExt = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+            if (!TextUtils.isEmpty(fileExt)) {
+                result.add(normalize("." + fileExt));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * таблица допустимых расширений для набора mime типов диалога
+     */
+    public MimeTypeFilter compile(String... mimeTypes) {
+        Set<String> fileExts = new HashSet<>();
+        Set<String> acceptedMimeTypes = new HashSet<>();
+        if (mimeTypes != null) {
+            for (String mimeType : mimeTypes) {
+                fileExts.addAll(getExtensions(mimeType));
+                if (!TextUtils.isEmpty(mimeType) && !BINARY_MIME.equals(mimeType)) {
+                    acceptedMimeTypes.add(mimeType);
+                }
+            }
+        }
+        return new MimeTypeFilter(fileExts, acceptedMimeTypes);
+    }
+
+    private static String normalize(String fileExt) {
+        return fileExt.toLowerCase(Locale.ROOT);
+    }
+
+    public static class MimeTypeFilter {
+        private final Set<String> fileExts;
+        private final Set<String> mimeTypes;
+
+        private MimeTypeFilter(Set<String> fileExts, Set<String> mimeTypes) {
+            this.fileExts = fileExts;
+            this.mimeTypes = mimeTypes;
+        }
+
+        public Set<String> getFileExts() {
+            return Collections.unmodifiableSet(fileExts);
+        }
+
+        public boolean accepts(String fileName) {
+            if (TextUtils.isEmpty(fileName)) {
+                return false;
+            }
+            int i = fileName.lastIndexOf('.');
+            return i >= 0 && fileExts.contains(normalize(fileName.substring(i)));
+        }
+
+        /**
+         * документ подходит по расширению имени или по mime типу, который сообщил провайдер
+         * (у документов облачных провайдеров имя может быть без расширения)
+         */
+        public boolean accepts(DocumentEntry entry) {
+            if (entry == null) {
+                return false;
+            }
+            return accepts(entry.getName()) || (entry.getMimeType() != null && mimeTypes.contains(entry.getMimeType()));
+        }
+
+        /**
+         * проверка нескольких выбранных файлов (uri отдельных документов из ACTION_OPEN_DOCUMENT
+         * или документов дерева), свойства запрашиваются у провайдера - вызывать не из главного потока
+         * @return uri файлов не прошедших проверку
+         */
+        public List<Uri> getRejected(Context context, List<Uri> uris) {
+            List<Uri> rejected = new ArrayList<>();
+            for (Uri uri : uris) {
+                DocumentEntry entry;
+                try {
+                    entry = DocumentMetadataCache.getInstance().get(context, uri);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    entry = null;
+                }
+                if (!accepts(entry)) {
+                    rejected.add(uri);
+                }
+            }
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+
+import java.util.List;
+
+public interface MultiFileDialogListener {
+
+    /**
+     * @param uris      выбранные файлы в порядке выбора
+     * @param fileNames имена файлов в том же порядке
+     */
+    void onFilesResult(List<Uri> uris, List<String> fileNames);
+
+}
@@ -0,0 +1,194 @@
+package com.tiromansev.filedialog;
+
+import java.util.Comparator;
+
+/**
+ * встроенные сортировщики строк диалога. сравнение имен идет по ключу RowItem.getSortKey,
+ * который вычисляется один раз на строку, а не по compareToIgnoreCase в каждом сравнении.
+ * RowStore узнает встроенные сортировщики (getSortMode) и сортирует позиции строк прямо по колонкам
+ */
+public class RowComparators {
+
+    /**
+     * сортировщик не встроенный, RowStore сортирует через RowItem
+     */
+    static final int CUSTOM = -1;
+
+    private static final Comparator<RowItem> BY_NAME =
+            (leftItem, rightItem) -> leftItem.getSortKey().compareTo(rightItem.getSortKey());
+
+    private static final Comparator<RowItem> NATURAL =
+            (leftItem, rightItem) -> compareNatural(leftItem.getSortKey(), rightItem.getSortKey());
+
+    private static final Comparator<RowItem> BY_DATE = (leftItem, rightItem) -> {
+        int result = Long.compare(rightItem.getLastModified(), leftItem.getLastModified());
+        return result != 0 ? result : BY_NAME.compare(leftItem, rightItem);
+    };
+
+    private static final Comparator<RowItem> BY_SIZE = (leftItem, rightItem) -> {
+        int result = Long.compare(rightItem.getSize(), leftItem.getSize());
+        return result != 0 ? result : BY_NAME.compare(leftItem, rightItem);
+    };
+
+    /**
+     * @param sortMode IFileDialog.SORT_BY_NAME, SORT_NATURAL, SORT_BY_DATE (новые первыми)
+     *                 или SORT_BY_SIZE (большие первыми)
+     */
+    public static Comparator<RowItem> get(int sortMode) {
+        switch (sortMode) {
+            case IFileDialog.SORT_NATURAL:
+                return NATURAL;
+            case IFileDialog.SORT_BY_DATE:
+                return BY_DATE;
+            case IFileDialog.SORT_BY_SIZE:
+                return BY_SIZE;
+            default:
+                return BY_NAME;
+        }
+    }
+
+    /**
+     * папки всегда первыми, внутри групп - fileComparator
+     */
+    public static Comparator<RowItem> foldersFirst(Comparator<RowItem> fileComparator) {
+        return new FoldersFirst(fileComparator);
+    }
+
+    /**
+     * режим встроенного сортировщика (IFileDialog.SORT_...) или CUSTOM
+     */
+    static int getSortMode(Comparator<RowItem> comparator) {
+        if (comparator instanceof FoldersFirst) {
+            comparator = ((FoldersFirst) comparator).fileComparator;
+        }
+        if (comparator == BY_NAME) {
+            return IFileDialog.SORT_BY_NAME;
+        }
+        if (comparator == NATURAL) {
+            return IFileDialog.SORT_NATURAL;
+        }
+        if (comparator == BY_DATE) {
+            return IFileDialog.SORT_BY_DATE;
+        }
+        if (comparator == BY_SIZE) {
+            return IFileDialog.SORT_BY_SIZE;
+        }
+        return CUSTOM;
+    }
+
+    static boolean isFoldersFirst(Comparator<RowItem> comparator) {
+        return comparator instanceof FoldersFirst;
+    }
+
+    /**
+     * ключ, сравнение которого через compareTo дает тот же порядок, что compareToIgnoreCase
+     */
+    public static String foldCase(String title) {
+        if (title == null) {
+            return "";
+        }
+        char[] chars = null;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            char folded = fold(c);
+            if (folded != c) {
+                if (chars == null) {
+                    chars = title.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars != null ? new String(chars) : title;
+    }
+
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * сравнение с учетом чисел в имени: "file2" < "file10", ведущие нули не учитываются
+     */
+    public static int compareNatural(CharSequence left, CharSequence right) {
+        int leftIndex = 0;
+        int rightIndex = 0;
+        while (leftIndex < left.length() && rightIndex < right.length()) {
+            char leftChar = left.charAt(leftIndex);
+            char rightChar = right.charAt(rightIndex);
+            if (!isDigit(leftChar) || !isDigit(rightChar)) {
+                if (leftChar != rightChar) {
+                    return leftChar - rightChar;
+                }
+                leftIndex++;
+                rightIndex++;
+                continue;
+            }
+
+            int leftStart = skipZeros(left, leftIndex);
+            int rightStart = skipZeros(right, rightIndex);
+            int leftEnd = skipDigits(left, leftStart);
+            int rightEnd = skipDigits(right, rightStart);
+            // longer run of significant digits is the bigger number
+            int result = (leftEnd - leftStart) - (rightEnd - rightStart);
+            for (int i = 0; result == 0 && i < leftEnd - leftStart; i++) {
+                result = left.charAt(leftStart + i) - right.charAt(rightStart + i);
+            }
+            if (result != 0) {
+                return result;
+            }
+            leftIndex = leftEnd;
+            rightIndex = rightEnd;
+        }
+        int result = (left.length() - leftIndex) - (right.length() - rightIndex);
+        // "01" and "1" are equal numbers, keep a stable order between them
+        return result != 0 ? result : compareChars(left, right);
+    }
+
+    /**
+     * посимвольное сравнение, как String.compareTo
+     */
+    static int compareChars(CharSequence left, CharSequence right) {
+        int length = Math.min(left.length(), right.length());
+        for (int i = 0; i < length; i++) {
+            char leftChar = left.charAt(i);
+            char rightChar = right.charAt(i);
+            if (leftChar != rightChar) {
+                return leftChar - rightChar;
+            }
+        }
+        return left.length() - right.length();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipZeros(CharSequence text, int index) {
+        while (index < text.length() - 1 && text.charAt(index) == '0' && isDigit(text.charAt(index + 1))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipDigits(CharSequence text, int index) {
+        while (index < text.length() && isDigit(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static class FoldersFirst implements Comparator<RowItem> {
+        private final Comparator<RowItem> fileComparator;
+
+        private FoldersFirst(Comparator<RowItem> fileComparator) {
+            this.fileComparator = fileComparator;
+        }
+
+        @Override
+        public int compare(RowItem leftItem, RowItem rightItem) {
+            if (leftItem.isDirectory() != rightItem.isDirectory()) {
+                return leftItem.isDirectory() ? -1 : 1;
+            }
+            return fileComparator.compare(leftItem, rightItem);
+        }
+    }
+}
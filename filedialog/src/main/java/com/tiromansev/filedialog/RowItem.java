@@ -1,13 +1,30 @@
 package com.tiromansev.filedialog;
 
 import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import com.tiromansev.filedialog.utils.RowDataFormatter;
+
+import java.util.Objects;
 
 public class RowItem {
     private final int imageId;
-    private final String title;
-    private final String data;
+    private String title;
+    private final long size;
     private final long lastModified;
-    private final Uri uri;
+    private Uri uri;
+    private final Uri treeUri;
+    private String documentId;
+    // строка RowStore: имя и id документа читаются из колонок при первом обращении
+    private final RowStore.Columns columns;
+    private final int storePosition;
+    private final boolean showData;
+    private final boolean directory;
+    private final boolean thumbnail;
+    private String data;
+    private String sortKey;
+    private long stableId;
+    private boolean hasStableId;
 
     public RowItem(int imageId,
                    String title,
@@ -17,8 +34,106 @@ public class RowItem {
         this.imageId = imageId;
         this.title = title;
         this.data = data;
+        this.size = 0;
         this.lastModified = lastModified;
         this.uri = uri;
+        this.treeUri = null;
+        this.documentId = null;
+        this.columns = null;
+        this.storePosition = -1;
+        this.showData = data != null;
+        this.directory = false;
+        this.thumbnail = false;
+    }
+
+    /**
+     * строка размера и даты модификации формируется при первом обращении к getData (при отображении строки)
+     * @param showData показывать ли размер и дату модификации
+     */
+    public RowItem(int imageId,
+                   String title,
+                   long size,
+                   long lastModified,
+                   Uri uri,
+                   boolean showData) {
+        this(imageId, title, size, lastModified, uri, showData, false);
+    }
+
+    /**
+     * @param directory строка папки, по нажатию диалог переходит в нее
+     */
+    public RowItem(int imageId,
+                   String title,
+                   long size,
+                   long lastModified,
+                   Uri uri,
+                   boolean showData,
+                   boolean directory) {
+        this(imageId, title, size, lastModified, uri, showData, directory, false);
+    }
+
+    /**
+     * @param thumbnail провайдер умеет отдавать миниатюру документа (FLAG_SUPPORTS_THUMBNAIL)
+     */
+    public RowItem(int imageId,
+                   String title,
+                   long size,
+                   long lastModified,
+                   Uri uri,
+                   boolean showData,
+                   boolean directory,
+                   boolean thumbnail) {
+        this.imageId = imageId;
+        this.title = title;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.uri = uri;
+        this.treeUri = null;
+        this.documentId = null;
+        this.columns = null;
+        this.storePosition = -1;
+        this.showData = showData;
+        this.directory = directory;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * строка содержимого папки дерева с известным id документа (id нужен для сравнения строк
+     * без построения uri)
+     */
+    RowItem(int imageId,
+            String title,
+            long size,
+            long lastModified,
+            Uri uri,
+            String documentId,
+            boolean showData,
+            boolean directory,
+            boolean thumbnail) {
+        this(imageId, title, size, lastModified, uri, showData, directory, thumbnail);
+        this.documentId = documentId;
+    }
+
+    /**
+     * строка из RowStore: название, id и uri документа строятся по колонкам при первом обращении
+     */
+    RowItem(RowStore.Columns columns,
+            int storePosition,
+            int imageId,
+            long size,
+            long lastModified,
+            boolean showData,
+            boolean directory,
+            boolean thumbnail) {
+        this.imageId = imageId;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.treeUri = columns.getTreeUri();
+        this.columns = columns;
+        this.storePosition = storePosition;
+        this.showData = showData;
+        this.directory = directory;
+        this.thumbnail = thumbnail;
     }
 
     public int getImageId() {
@@ -26,23 +141,106 @@ public class RowItem {
     }
 
     public String getTitle() {
+        if (title == null && columns != null) {
+            title = columns.readName(storePosition);
+        }
         return title;
     }
 
     public String getData() {
+        if (data == null && showData) {
+            data = RowDataFormatter.get().formatData(size, lastModified);
+        }
         return data;
     }
 
+    /**
+     * название в нижнем регистре для сортировки, вычисляется один раз
+     */
+    public String getSortKey() {
+        if (sortKey == null) {
+            sortKey = RowComparators.foldCase(getTitle());
+        }
+        return sortKey;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean hasThumbnail() {
+        return thumbnail;
+    }
+
+    public boolean isShowData() {
+        return showData;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
     public long getLastModified() {
         return lastModified;
     }
 
     public Uri getUri() {
+        if (uri == null && treeUri != null && getDocumentId() != null) {
+            uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+        }
         return uri;
     }
 
+    String getDocumentId() {
+        if (documentId == null && columns != null) {
+            documentId = columns.readDocumentId(storePosition);
+        }
+        return documentId;
+    }
+
+    /**
+     * стабильный id строки для адаптера - хэш строки uri документа (FilesAdapter.getStableId),
+     * для строк RowStore считается по колонкам без построения uri
+     */
+    public long getStableId() {
+        if (!hasStableId) {
+            stableId = columns != null ? columns.getStableId(storePosition) : FilesAdapter.getStableId(getUri());
+            hasStableId = true;
+        }
+        return stableId;
+    }
+
+    /**
+     * та же строка документа: строки RowStore и строки с известным id документа сравниваются
+     * по id, остальные по uri
+     */
+    boolean isSameDocument(RowItem other) {
+        if (columns != null && other.columns != null) {
+            return columns.sameDocument(storePosition, other.columns, other.storePosition);
+        }
+        if (getDocumentId() != null && other.getDocumentId() != null) {
+            return documentId.equals(other.documentId);
+        }
+        return Objects.equals(getUri(), other.getUri());
+    }
+
+    boolean hasSameTitle(RowItem other) {
+        if (columns != null && other.columns != null) {
+            return columns.sameName(storePosition, other.columns, other.storePosition);
+        }
+        return Objects.equals(getTitle(), other.getTitle());
+    }
+
+    RowStore.Columns getColumns() {
+        return columns;
+    }
+
+    int getStorePosition() {
+        return storePosition;
+    }
+
     @Override
     public String toString() {
-        return title;
+        return getTitle();
     }
 }
@@ -0,0 +1,554 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.RandomAccess;
+
+/**
+ * содержимое папки в колонках: размер, дата и иконка в примитивных массивах, имена и id документов
+ * в общем пуле символов, uri строится по id документа только при обращении.
+ * для списка в 100k строк вместо сотен тысяч объектов в памяти остается десяток массивов,
+ * RowItem создается на время обращения к строке (get), а его название, id и uri - только
+ * при обращении к ним (для отображаемых строк).
+ * список только для чтения, сортировка и фильтр возвращают новый список позиций поверх тех же колонок,
+ * встроенные сортировщики и фильтр работают прямо по колонкам без создания RowItem
+ */
+public class RowStore extends AbstractList<RowItem> implements RandomAccess {
+
+    private static final int ARRAY_HEADER = 16;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final Columns columns;
+    // null - строки в порядке добавления
+    private final int[] positions;
+
+    private RowStore(Columns columns, int[] positions) {
+        this.columns = columns;
+        this.positions = positions;
+    }
+
+    @Override
+    public RowItem get(int index) {
+        return columns.read(getPosition(index));
+    }
+
+    @Override
+    public int size() {
+        return positions != null ? positions.length : columns.count;
+    }
+
+    /**
+     * стабильный id строки (тот же, что RowItem.getStableId) без создания RowItem
+     */
+    public long getStableId(int index) {
+        return columns.getStableId(getPosition(index));
+    }
+
+    private int getPosition(int index) {
+        int position = positions != null ? positions[index] : index;
+        if (position < 0 || position >= columns.count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return position;
+    }
+
+    /**
+     * строки в порядке comparator, колонки не копируются. встроенные сортировщики RowComparators
+     * сравнивают колонки, для остальных на время сортировки создаются RowItem всех строк
+     */
+    public RowStore sortedBy(Comparator<RowItem> comparator) {
+        int sortMode = RowComparators.getSortMode(comparator);
+        if (sortMode == RowComparators.CUSTOM) {
+            RowItem[] items = new RowItem[size()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = get(i);
+            }
+            Arrays.sort(items, comparator);
+            int[] sorted = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                sorted[i] = items[i].getStorePosition();
+            }
+            return new RowStore(columns, sorted);
+        }
+
+        int[] sorted = new int[size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = positions != null ? positions[i] : i;
+        }
+        PositionComparator positionComparator = columns.comparator(sortMode, RowComparators.isFoldersFirst(comparator));
+        sort(sorted, new int[sorted.length], 0, sorted.length, positionComparator);
+        return new RowStore(columns, sorted);
+    }
+
+    /**
+     * строки, прошедшие фильтр, в текущем порядке. фильтр получает имя строки как CharSequence
+     * поверх пула символов, сохранять его нельзя
+     */
+    public RowStore filteredBy(RowView.RowFilter filter) {
+        int[] selected = new int[size()];
+        int count = 0;
+        Name name = new Name(columns, false);
+        for (int i = 0; i < selected.length; i++) {
+            int position = positions != null ? positions[i] : i;
+            if (filter.accepts(name.at(position), columns.directories.get(position))) {
+                selected[count++] = position;
+            }
+        }
+        return new RowStore(columns, Arrays.copyOf(selected, count));
+    }
+
+    /**
+     * приблизительный объем памяти колонок (и списка позиций этого представления) в байтах
+     */
+    public long getMemoryBytes() {
+        long bytes = columns.getMemoryBytes();
+        if (positions != null) {
+            bytes += ARRAY_HEADER + positions.length * 4L;
+        }
+        return bytes;
+    }
+
+    private interface PositionComparator {
+        int compare(int left, int right);
+    }
+
+    /**
+     * устойчивая сортировка слиянием массива позиций. уже упорядоченные половины не сливаются,
+     * так что отсортированный список (обычный случай для содержимого папки) проходится за линейное время
+     */
+    private static void sort(int[] items, int[] buffer, int from, int to, PositionComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int item = items[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(items[j], item) > 0) {
+                    items[j + 1] = items[j];
+                    j--;
+                }
+                items[j + 1] = item;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(items, buffer, from, middle, comparator);
+        sort(items, buffer, middle, to, comparator);
+        if (comparator.compare(items[middle - 1], items[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(items, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+                items[i] = buffer[left++];
+            } else {
+                items[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * имя строки поверх пула символов (при folded - пула ключей сортировки RowComparators.foldCase),
+     * один экземпляр переиспользуется для разных строк
+     */
+    private static class Name implements CharSequence {
+        private final Columns columns;
+        private final char[] chars;
+        private int start;
+        private int end;
+
+        private Name(Columns columns, boolean folded) {
+            this.columns = columns;
+            this.chars = folded ? columns.getSortKeys() : columns.names;
+        }
+
+        private Name at(int position) {
+            start = columns.nameStart(position);
+            end = columns.nameEnds[position];
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, end - start);
+        }
+    }
+
+    /**
+     * колонки одного прочитанного содержимого папки, общие для всех его представлений
+     */
+    static final class Columns {
+        private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+        private final Uri treeUri;
+        private final String idPrefix;
+        private final int count;
+        private final int[] imageIds;
+        private final long[] sizes;
+        private final long[] lastModified;
+        private final BitSet directories;
+        private final BitSet showData;
+        private final BitSet thumbnails;
+        // id = idPrefix + name, отдельная строка id не хранится
+        private final BitSet prefixedIds;
+        // id документа не передан, строка без uri
+        private final BitSet missingIds;
+        private final char[] names;
+        private final int[] nameEnds;
+        private final char[] documentIds;
+        private final int[] documentIdEnds;
+        // имена в регистре RowComparators.foldCase с теми же границами, строятся при первой сортировке
+        private char[] sortKeys;
+        private long uriPrefixHash;
+        private boolean hasUriPrefixHash;
+
+        private Columns(Builder builder) {
+            treeUri = builder.treeUri;
+            idPrefix = builder.idPrefix;
+            count = builder.count;
+            imageIds = Arrays.copyOf(builder.imageIds, count);
+            sizes = Arrays.copyOf(builder.sizes, count);
+            lastModified = Arrays.copyOf(builder.lastModified, count);
+            directories = builder.directories;
+            showData = builder.showData;
+            thumbnails = builder.thumbnails;
+            prefixedIds = builder.prefixedIds;
+            missingIds = builder.missingIds;
+            names = Arrays.copyOf(builder.names, builder.namesLength);
+            nameEnds = Arrays.copyOf(builder.nameEnds, count);
+            documentIds = Arrays.copyOf(builder.documentIds, builder.documentIdsLength);
+            documentIdEnds = Arrays.copyOf(builder.documentIdEnds, count);
+        }
+
+        Uri getTreeUri() {
+            return treeUri;
+        }
+
+        private RowItem read(int position) {
+            return new RowItem(this, position, imageIds[position], sizes[position], lastModified[position],
+                    showData.get(position), directories.get(position), thumbnails.get(position));
+        }
+
+        String readName(int position) {
+            int start = nameStart(position);
+            return new String(names, start, nameEnds[position] - start);
+        }
+
+        String readDocumentId(int position) {
+            if (missingIds.get(position)) {
+                return null;
+            }
+            if (prefixedIds.get(position)) {
+                return idPrefix + readName(position);
+            }
+            int start = idStart(position);
+            return new String(documentIds, start, documentIdEnds[position] - start);
+        }
+
+        private synchronized char[] getSortKeys() {
+            if (sortKeys == null) {
+                char[] keys = names;
+                for (int i = 0; i < names.length; i++) {
+                    char folded = RowComparators.fold(names[i]);
+                    if (folded != names[i]) {
+                        if (keys == names) {
+                            keys = names.clone();
+                        }
+                        keys[i] = folded;
+                    }
+                }
+                sortKeys = keys;
+            }
+            return sortKeys;
+        }
+
+        private int nameStart(int position) {
+            return position > 0 ? nameEnds[position - 1] : 0;
+        }
+
+        private int idStart(int position) {
+            return position > 0 ? documentIdEnds[position - 1] : 0;
+        }
+
+        private int idLength(int position) {
+            if (prefixedIds.get(position)) {
+                return idPrefix.length() + nameEnds[position] - nameStart(position);
+            }
+            return documentIdEnds[position] - idStart(position);
+        }
+
+        private char idCharAt(int position, int index) {
+            if (prefixedIds.get(position)) {
+                return index < idPrefix.length() ? idPrefix.charAt(index)
+                        : names[nameStart(position) + index - idPrefix.length()];
+            }
+            return documentIds[idStart(position) + index];
+        }
+
+        boolean sameDocument(int position, Columns other, int otherPosition) {
+            if (this == other && position == otherPosition) {
+                return true;
+            }
+            if (missingIds.get(position) || other.missingIds.get(otherPosition)) {
+                return false;
+            }
+            int length = idLength(position);
+            if (length != other.idLength(otherPosition)) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (idCharAt(position, i) != other.idCharAt(otherPosition, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean sameName(int position, Columns other, int otherPosition) {
+            int start = nameStart(position);
+            int otherStart = other.nameStart(otherPosition);
+            int length = nameEnds[position] - start;
+            if (length != other.nameEnds[otherPosition] - otherStart) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (names[start + i] != other.names[otherStart + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * FilesAdapter.getStableId(uri) для uri документа строки: хэш общего начала uri считается
+         * один раз, дальше хэшируется id документа в кодировке Uri.encode, как его добавляет
+         * buildDocumentUriUsingTree
+         */
+        long getStableId(int position) {
+            if (missingIds.get(position)) {
+                return FilesAdapter.getStableId((Uri) null);
+            }
+            long hash = getUriPrefixHash();
+            int length = idLength(position);
+            for (int i = 0; i < length; i++) {
+                char c = idCharAt(position, i);
+                if (isUnreserved(c)) {
+                    hash = FilesAdapter.hash(hash, c);
+                    continue;
+                }
+                int end = i + 1;
+                while (end < length && !isUnreserved(idCharAt(position, end))) {
+                    end++;
+                }
+                StringBuilder encoded = new StringBuilder(end - i);
+                for (int j = i; j < end; j++) {
+                    encoded.append(idCharAt(position, j));
+                }
+                for (byte b : encoded.toString().getBytes(StandardCharsets.UTF_8)) {
+                    hash = FilesAdapter.hash(hash, '%');
+                    hash = FilesAdapter.hash(hash, HEX_DIGITS[(b >> 4) & 0xF]);
+                    hash = FilesAdapter.hash(hash, HEX_DIGITS[b & 0xF]);
+                }
+                i = end - 1;
+            }
+            return hash;
+        }
+
+        private synchronized long getUriPrefixHash() {
+            if (!hasUriPrefixHash) {
+                // "x" is not encoded, the rest of the uri is the part shared by all rows
+                String uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, "x").toString();
+                uriPrefixHash = FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, uri.substring(0, uri.length() - 1));
+                hasUriPrefixHash = true;
+            }
+            return uriPrefixHash;
+        }
+
+        private static boolean isUnreserved(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "_-!.~'()*".indexOf(c) >= 0;
+        }
+
+        /**
+         * сравнение позиций в том же порядке, что встроенный сортировщик sortMode над RowItem
+         */
+        private PositionComparator comparator(int sortMode, boolean foldersFirst) {
+            PositionComparator byName;
+            if (sortMode == IFileDialog.SORT_NATURAL) {
+                Name leftName = new Name(this, true);
+                Name rightName = new Name(this, true);
+                byName = (left, right) -> RowComparators.compareNatural(leftName.at(left), rightName.at(right));
+            } else {
+                byName = this::compareSortKeys;
+            }
+            PositionComparator byMode;
+            switch (sortMode) {
+                case IFileDialog.SORT_BY_DATE:
+                    byMode = (left, right) -> {
+                        int result = Long.compare(lastModified[right], lastModified[left]);
+                        return result != 0 ? result : byName.compare(left, right);
+                    };
+                    break;
+                case IFileDialog.SORT_BY_SIZE:
+                    byMode = (left, right) -> {
+                        int result = Long.compare(sizes[right], sizes[left]);
+                        return result != 0 ? result : byName.compare(left, right);
+                    };
+                    break;
+                default:
+                    byMode = byName;
+            }
+            if (!foldersFirst) {
+                return byMode;
+            }
+            return (left, right) -> {
+                boolean leftDirectory = directories.get(left);
+                if (leftDirectory != directories.get(right)) {
+                    return leftDirectory ? -1 : 1;
+                }
+                return byMode.compare(left, right);
+            };
+        }
+
+        /**
+         * то же, что foldCase(left).compareTo(foldCase(right))
+         */
+        private int compareSortKeys(int left, int right) {
+            char[] keys = getSortKeys();
+            int leftStart = nameStart(left);
+            int rightStart = nameStart(right);
+            int leftLength = nameEnds[left] - leftStart;
+            int rightLength = nameEnds[right] - rightStart;
+            int length = Math.min(leftLength, rightLength);
+            for (int i = 0; i < length; i++) {
+                char leftChar = keys[leftStart + i];
+                char rightChar = keys[rightStart + i];
+                if (leftChar != rightChar) {
+                    return leftChar - rightChar;
+                }
+            }
+            return leftLength - rightLength;
+        }
+
+        private long getMemoryBytes() {
+            return 6L * ARRAY_HEADER
+                    + count * (4L + 8L + 8L + 4L + 4L)
+                    + names.length * 2L
+                    + documentIds.length * 2L
+                    + (sortKeys != null && sortKeys != names ? names.length * 2L : 0)
+                    + 5L * (count / 8 + ARRAY_HEADER);
+        }
+    }
+
+    /**
+     * строки добавляются по одной, build() обрезает массивы до фактического размера
+     */
+    public static class Builder {
+        private final Uri treeUri;
+        private final String idPrefix;
+        private int count = 0;
+        private int[] imageIds = new int[16];
+        private long[] sizes = new long[16];
+        private long[] lastModified = new long[16];
+        private final BitSet directories = new BitSet();
+        private final BitSet showData = new BitSet();
+        private final BitSet thumbnails = new BitSet();
+        private final BitSet prefixedIds = new BitSet();
+        private final BitSet missingIds = new BitSet();
+        private char[] names = new char[256];
+        private int namesLength = 0;
+        private int[] nameEnds = new int[16];
+        private char[] documentIds = new char[64];
+        private int documentIdsLength = 0;
+        private int[] documentIdEnds = new int[16];
+
+        /**
+         * @param treeUri  uri, от которого строятся uri документов (uri папки в дереве)
+         * @param idPrefix общее начало id дочерних документов (например "primary:Backup/"),
+         *                 null если провайдер строит id иначе
+         */
+        public Builder(Uri treeUri, String idPrefix) {
+            this.treeUri = treeUri;
+            this.idPrefix = idPrefix;
+        }
+
+        public Builder add(int imageId,
+                           String name,
+                           long size,
+                           long modified,
+                           String documentId,
+                           boolean showData,
+                           boolean directory,
+                           boolean thumbnail) {
+            if (count == imageIds.length) {
+                int capacity = count * 2;
+                imageIds = Arrays.copyOf(imageIds, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                lastModified = Arrays.copyOf(lastModified, capacity);
+                nameEnds = Arrays.copyOf(nameEnds, capacity);
+                documentIdEnds = Arrays.copyOf(documentIdEnds, capacity);
+            }
+            if (name == null) {
+                name = "";
+            }
+            imageIds[count] = imageId;
+            sizes[count] = size;
+            lastModified[count] = modified;
+            directories.set(count, directory);
+            this.showData.set(count, showData);
+            thumbnails.set(count, thumbnail);
+            namesLength = append(name);
+            nameEnds[count] = namesLength;
+
+            if (documentId == null) {
+                missingIds.set(count);
+            } else if (idPrefix != null && documentId.length() == idPrefix.length() + name.length()
+                    && documentId.startsWith(idPrefix) && documentId.endsWith(name)) {
+                prefixedIds.set(count);
+            } else {
+                if (documentIdsLength + documentId.length() > documentIds.length) {
+                    documentIds = Arrays.copyOf(documentIds,
+                            Math.max(documentIds.length * 2, documentIdsLength + documentId.length()));
+                }
+                documentId.getChars(0, documentId.length(), documentIds, documentIdsLength);
+                documentIdsLength += documentId.length();
+            }
+            documentIdEnds[count] = documentIdsLength;
+            count++;
+            return this;
+        }
+
+        private int append(String name) {
+            if (namesLength + name.length() > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length()));
+            }
+            name.getChars(0, name.length(), names, namesLength);
+            return namesLength + name.length();
+        }
+
+        public RowStore build() {
+            return new RowStore(new Columns(this), null);
+        }
+    }
+}
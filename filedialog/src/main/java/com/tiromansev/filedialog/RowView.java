@@ -0,0 +1,129 @@
+package com.tiromansev.filedialog;
+
+import com.tiromansev.filedialog.utils.NameMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * представление прочитанного содержимого папки: сортировка, фильтр расширений и текстовый фильтр
+ * применяются к списку в памяти без повторного запроса к провайдеру.
+ * экземпляр неизменяемый, отсортированный список считается один раз и переиспользуется,
+ * пока не поменялись строки или сортировщик (смена фильтра - один линейный проход)
+ */
+public class RowView {
+
+    private final List<RowItem> rows;
+    private final Comparator<RowItem> comparator;
+    private final RowFilter extFilter;
+    private final NameMatcher textFilter;
+    private final SortedRows sortedRows;
+
+    public RowView(Comparator<RowItem> comparator, RowFilter extFilter) {
+        this(new ArrayList<>(), comparator, extFilter, null, new SortedRows());
+    }
+
+    private RowView(List<RowItem> rows,
+                    Comparator<RowItem> comparator,
+                    RowFilter extFilter,
+                    NameMatcher textFilter,
+                    SortedRows sortedRows) {
+        this.rows = rows;
+        this.comparator = comparator;
+        this.extFilter = extFilter;
+        this.textFilter = textFilter;
+        this.sortedRows = sortedRows;
+    }
+
+    public RowView withRows(List<RowItem> rows) {
+        return new RowView(rows, comparator, extFilter, textFilter, new SortedRows());
+    }
+
+    public RowView withComparator(Comparator<RowItem> comparator) {
+        return new RowView(rows, comparator, extFilter, textFilter, new SortedRows());
+    }
+
+    /**
+     * фильтр расширений читается при каждом пересчете, новый экземпляр нужен только чтобы пересчитать список
+     */
+    public RowView withExtFilter(RowFilter extFilter) {
+        return new RowView(rows, comparator, extFilter, textFilter, sortedRows);
+    }
+
+    /**
+     * @param textFilter null - без текстового фильтра
+     */
+    public RowView withTextFilter(NameMatcher textFilter) {
+        return new RowView(rows, comparator, extFilter, textFilter, sortedRows);
+    }
+
+    public List<RowItem> getRows() {
+        return rows;
+    }
+
+    public Comparator<RowItem> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * отсортированные и отфильтрованные строки, сортировка может занять время - вызывать не в главном потоке
+     */
+    public List<RowItem> getItems() {
+        return filter(sortedRows.get(rows, comparator));
+    }
+
+    /**
+     * только фильтрация без сортировки (для порций, приходящих во время чтения папки)
+     */
+    public List<RowItem> filter(List<RowItem> items) {
+        if (extFilter == null && textFilter == null) {
+            return items;
+        }
+        if (items instanceof RowStore) {
+            return ((RowStore) items).filteredBy(this::accepts);
+        }
+        List<RowItem> result = new ArrayList<>(items.size());
+        for (RowItem item : items) {
+            if (accepts(item.getTitle(), item.isDirectory())) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private boolean accepts(CharSequence name, boolean directory) {
+        return (extFilter == null || extFilter.accepts(name, directory))
+                && (textFilter == null || textFilter.matches(name));
+    }
+
+    /**
+     * фильтр по имени строки: для RowStore имя передается поверх колонок, без создания строк
+     */
+    public interface RowFilter {
+        boolean accepts(CharSequence name, boolean directory);
+    }
+
+    /**
+     * отсортированная копия строк, общая для представлений с одинаковыми строками и сортировщиком
+     */
+    private static class SortedRows {
+        private List<RowItem> sorted;
+
+        private synchronized List<RowItem> get(List<RowItem> rows, Comparator<RowItem> comparator) {
+            if (sorted == null && rows instanceof RowStore) {
+                sorted = comparator != null ? ((RowStore) rows).sortedBy(comparator) : rows;
+            }
+            if (sorted == null) {
+                // the only sort of a listing, FileManager hands the rows over in provider order
+                List<RowItem> copy = new ArrayList<>(rows);
+                if (comparator != null) {
+                    Collections.sort(copy, comparator);
+                }
+                sorted = copy;
+            }
+            return sorted;
+        }
+    }
+}
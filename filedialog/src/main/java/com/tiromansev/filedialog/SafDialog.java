@@ -11,9 +11,13 @@ import androidx.documentfile.provider.DocumentFile;
 import com.anggrayudi.storage.SimpleStorageHelper;
 import com.tiromansev.filedialog.utils.FileUtils;
 import com.tiromansev.filedialog.utils.GuiUtils;
+import com.tiromansev.filedialog.utils.RxUtils;
 
 import java.lang.ref.WeakReference;
 
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+
 public class SafDialog implements IFileDialog {
 
     public static final String TEXT_MIME = "text/plain";
@@ -41,8 +45,11 @@ public class SafDialog implements IFileDialog {
     private int selectType = FILE_OPEN;
     private String mimeType;
     private String[] mimeTypes = new String[]{};
+    private final MimeTypeRegistry mimeTypeRegistry = MimeTypeRegistry.createDefault();
+    private MimeTypeRegistry.MimeTypeFilter mimeTypeFilter;
     private String fileName;
     private final SimpleStorageHelper storageHelper;
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
     public SafDialog(AppCompatActivity context, SimpleStorageHelper storageHelper) {
         this.context = new WeakReference<>(context);
@@ -78,6 +85,7 @@ public class SafDialog implements IFileDialog {
     }
 
     public void setMimeTypes(String[] mimeTypes) {
+        mimeTypeFilter = null;
         if (mimeTypes == null || mimeTypes.length == 0) {
             this.mimeTypes = new String[]{};
             return;
@@ -88,8 +96,8 @@ public class SafDialog implements IFileDialog {
         for (int i = 0; i < mimeTypes.length; i++) {
             String mimeType = mimeTypes[i];
 
-            if (mimeType.equals("text/plain") || mimeType.equals("text/csv")) {
-                mimeType = "text/comma-separated-values";
+            if (mimeType.equals(TEXT_MIME) || mimeType.equals(MimeTypeRegistry.TEXT_CSV_MIME)) {
+                mimeType = MimeTypeRegistry.CSV_PICKER_MIME;
             }
 
             this.mimeTypes[i] = mimeType;
@@ -120,9 +128,10 @@ public class SafDialog implements IFileDialog {
     }
 
     public void setMimeType(String mimeType) {
+        mimeTypeFilter = null;
         //workaround - with text/plain and text/csv csv files in document picker are grayed out
-        if (mimeType.equals("text/plain") || mimeType.equals("text/csv")) {
-            this.mimeType = "text/comma-separated-values";
+        if (mimeType.equals(TEXT_MIME) || mimeType.equals(MimeTypeRegistry.TEXT_CSV_MIME)) {
+            this.mimeType = MimeTypeRegistry.CSV_PICKER_MIME;
             return;
         }
 
@@ -151,26 +160,49 @@ public class SafDialog implements IFileDialog {
         // For FOLDER_CHOOSE, check if we should offer to reuse last folder
         if (selectType == FOLDER_CHOOSE) {
             Uri lastFolder = getLastFolderUri();
-            if (lastFolder != null && isUriValid(lastFolder)) {
-                showReuseLastFolderDialog(lastFolder);
+            if (lastFolder != null) {
+                // folder check and name query go to the provider, keep them off the main thread
+                addSubscription(RxUtils.io(() -> getValidFolderName(lastFolder))
+                        .subscribe(folderName -> showReuseLastFolderDialog(lastFolder, folderName),
+                                throwable -> launchSaf(),
+                                this::launchSaf));
                 return;
             }
         }
         launchSaf();
     }
 
+    /**
+     * отменяет незавершенные запросы к провайдеру, результат в слушатель не будет передан
+     */
+    public void cancel() {
+        disposables.clear();
+    }
+
+    private void addSubscription(Disposable disposable) {
+        disposables.add(disposable);
+    }
+
+    private String getValidFolderName(Uri uri) {
+        if (!isUriValid(uri)) {
+            return null;
+        }
+        String folderName = new SafFile(getContext(), uri).getName();
+        return folderName != null ? folderName : "";
+    }
+
     private boolean isUriValid(Uri uri) {
         try {
-            SafFile safFile = new SafFile(getContext(), uri);
-            return safFile.getFile() != null && safFile.getFile().exists();
+            return new SafFile(getContext(), uri).exists();
         } catch (Exception e) {
             return false;
         }
     }
 
-    private void showReuseLastFolderDialog(Uri lastFolder) {
-        SafFile safFile = new SafFile(getContext(), lastFolder);
-        String folderName = safFile.getName();
+    private void showReuseLastFolderDialog(Uri lastFolder, String folderName) {
+        if (getContext() == null) {
+            return;
+        }
 
         new androidx.appcompat.app.AlertDialog.Builder(getContext())
             .setTitle(R.string.caption_choose_folder)
@@ -189,6 +221,7 @@ public class SafDialog implements IFileDialog {
                 launchSaf();
             })
             .setCancelable(true)
+            .setOnDismissListener(dialog -> cancel())
             .show();
     }
 
@@ -229,39 +262,39 @@ public class SafDialog implements IFileDialog {
             return;
         }
 
-        // Save the folder URI for future use
-        saveFolderUri(uri);
-
-        SafFile safFile = new SafFile(getContext(), uri);
-
-        if (selectType == FILE_OPEN)
-            openFile(safFile);
-        else
-            saveFile(safFile);
+        // parent folder and file name are provider queries, resolve them off the main thread
+        addSubscription(RxUtils.io(() -> resolveUri(uri))
+                .subscribe(resolvedUri -> {
+                    if (getContext() == null) {
+                        return;
+                    }
+                    // Save the folder URI for future use
+                    saveFolderUri(resolvedUri.folderUri);
+
+                    SafFile safFile = new SafFile(getContext(), uri);
+
+                    if (selectType == FILE_OPEN)
+                        openFile(safFile, resolvedUri.fileName);
+                    else
+                        saveFile(safFile, resolvedUri.fileName);
+                }, throwable -> {
+                    throwable.printStackTrace();
+                    GuiUtils.showMessage(getContext(), R.string.message_file_must_be_selected);
+                }));
     }
 
-    private void saveFolderUri(Uri uri) {
-        if (uri == null) {
-            return;
-        }
-
+    private ResolvedUri resolveUri(Uri uri) {
         // For FOLDER_CHOOSE, save the folder URI directly
         if (selectType == FOLDER_CHOOSE) {
-            AppPrefs.lastSafFolderUri().setValue(uri.toString());
-        }
-        // For FILE_SAVE, extract parent folder from file URI
-        else if (selectType == FILE_SAVE) {
-            Uri folderUri = extractParentFolderUri(uri);
-            if (folderUri != null) {
-                AppPrefs.lastSafFolderUri().setValue(folderUri.toString());
-            }
+            return new ResolvedUri(uri, null);
         }
-        // For FILE_OPEN, optionally save the parent folder
-        else if (selectType == FILE_OPEN) {
-            Uri folderUri = extractParentFolderUri(uri);
-            if (folderUri != null) {
-                AppPrefs.lastSafFolderUri().setValue(folderUri.toString());
-            }
+        // For FILE_SAVE and FILE_OPEN, extract parent folder from file URI
+        return new ResolvedUri(extractParentFolderUri(uri), FileUtils.getFileName(getContext(), uri));
+    }
+
+    private void saveFolderUri(Uri folderUri) {
+        if (folderUri != null) {
+            AppPrefs.lastSafFolderUri().setValue(folderUri.toString());
         }
     }
 
@@ -294,14 +327,13 @@ public class SafDialog implements IFileDialog {
         return null;
     }
 
-    private void saveFile(SafFile safFile) {
+    private void saveFile(SafFile safFile, String fileName) {
         if (selectType == FOLDER_CHOOSE) {
             if (fileDialogListener != null)
                 fileDialogListener.onFileResult(safFile.getUri());
             if (fileNameDialogListener != null)
                 fileNameDialogListener.onFileResult(safFile.getUri(), null);
         } else {
-            String fileName = FileUtils.getFileName(getContext(), safFile.getUri());
             if (TextUtils.isEmpty(fileName)) {
                 GuiUtils.showMessage(getContext(), R.string.message_file_name_is_empty);
                 return;
@@ -313,30 +345,16 @@ public class SafDialog implements IFileDialog {
         }
     }
 
-    private void openFile(SafFile safFile) {
+    private void openFile(SafFile safFile, String fileName) {
         if (fileDialogListener != null) {
             fileDialogListener.onFileResult(safFile.getUri());
         }
         if (fileNameDialogListener != null) {
-            String fileName = FileUtils.getFileName(getContext(), safFile.getUri());
             if (TextUtils.isEmpty(fileName)) {
                 GuiUtils.showMessage(getContext(), R.string.message_file_name_is_empty);
                 return;
             }
-            String fileExt = getFileExt(fileName);
-            if (mimeTypes.length > 0) {
-                boolean isValid = false;
-                for (String mimeType : mimeTypes) {
-                    if (isValidMimeType(mimeType, fileExt)) {
-                        isValid = true;
-                        break;
-                    }
-                }
-                if (!isValid) {
-                    GuiUtils.showMessage(getContext(), R.string.message_wrong_file_ext);
-                    return;
-                }
-            } else if (!isValidMimeType(mimeType, fileExt)) {
+            if (!getMimeTypeFilter().accepts(fileName)) {
                 GuiUtils.showMessage(getContext(), R.string.message_wrong_file_ext);
                 return;
             }
@@ -344,56 +362,35 @@ public class SafDialog implements IFileDialog {
         }
     }
 
-    private String getFileExt(String fileName) {
-        String fileExt;
+    /**
+     * таблица допустимых расширений для выбранных mime типов, строится один раз
+     */
+    public MimeTypeRegistry.MimeTypeFilter getMimeTypeFilter() {
+        if (mimeTypeFilter == null) {
+            mimeTypeFilter = mimeTypes.length > 0 ?
+                    mimeTypeRegistry.compile(mimeTypes) : mimeTypeRegistry.compile(mimeType);
+        }
+        return mimeTypeFilter;
+    }
 
-        int i = fileName.lastIndexOf('.');
-        fileExt = fileName.substring(i + 1);
+    public void registerMimeType(String mimeType, String... fileExts) {
+        mimeTypeRegistry.register(mimeType, fileExts);
+        mimeTypeFilter = null;
+    }
 
-        return "." + fileExt;
+    public void setUseSystemMimeMap(boolean useSystemMimeMap) {
+        mimeTypeRegistry.setUseSystemMimeMap(useSystemMimeMap);
+        mimeTypeFilter = null;
     }
 
-    private boolean isValidMimeType(String mimeType, String fileExt) {
-        if (TextUtils.isEmpty(mimeType)) {
-            return false;
-        }
-        switch (mimeType) {
-            case CSV_MIME:
-                if (fileExt.equals(CSV_FILE_EXT)) {
-                    return true;
-                }
-                break;
-            case EXCEL_MIME:
-                if (fileExt.equals(EXCEL_FILE_EXT) ||
-                        fileExt.equals(EXCELX_FILE_EXT)) {
-                    return true;
-                }
-                break;
-            case ZIP_MIME:
-                if (fileExt.equals(ZIP_FILE_EXT)) {
-                    return true;
-                }
-                break;
-            case SQLITE_MIME:
-                if (fileExt.equals(BACKUP_FILE_EXT)) {
-                    return true;
-                }
-                break;
-            case BINARY_MIME:
-                if (fileExt.equals(BACKUP_FILE_EXT) ||
-                        fileExt.equals(BACKUP_FILE_EXT2) ||
-                        fileExt.equals(PRINT_FORM_FILE_EXT)) {
-                    return true;
-                }
-                break;
-            case PDF_MIME:
-                if (fileExt.equals(PDF_FILE_EXT)) {
-                    return true;
-                }
-                break;
-        }
+    private static class ResolvedUri {
+        private final Uri folderUri;
+        private final String fileName;
 
-        return false;
+        private ResolvedUri(Uri folderUri, String fileName) {
+            this.folderUri = folderUri;
+            this.fileName = fileName;
+        }
     }
 
     public static Builder create(AppCompatActivity context, SimpleStorageHelper storageHelper) {
@@ -457,6 +454,22 @@ public class SafDialog implements IFileDialog {
             return this;
         }
 
+        /**
+         * добавляет допустимые расширения файлов (с точкой) для mime типа
+         */
+        public Builder registerMimeType(String mimeType, String... fileExts) {
+            SafDialog.this.registerMimeType(mimeType, fileExts);
+            return this;
+        }
+
+        /**
+         * для незарегистрированных mime типов брать расширение из системной таблицы MimeTypeMap
+         */
+        public Builder setUseSystemMimeMap(boolean useSystemMimeMap) {
+            SafDialog.this.setUseSystemMimeMap(useSystemMimeMap);
+            return this;
+        }
+
         public IFileDialog build() {
             return SafDialog.this;
         }
@@ -11,38 +11,67 @@ public class SafFile {
 
     private Uri uri;
     private final WeakReference<Context> context;
+    private DocumentFile file;
 
     public SafFile(Context context, Uri uri) {
         this.context = new WeakReference<>(context);
         this.uri = uri;
     }
 
+    public Context getContext() {
+        return context.get();
+    }
+
     public Uri getUri() {
         return uri;
     }
 
     public void setUri(Uri uri) {
         this.uri = uri;
+        this.file = null;
     }
 
     public DocumentFile getFile() {
         Context context = this.context.get();
-        if (uri != null && context != null) {
-            return DocumentFile.fromTreeUri(context, uri);
+        if (file == null && uri != null && context != null) {
+            file = DocumentFile.fromTreeUri(context, uri);
         }
 
-        return null;
+        return file;
     }
 
-    public String getName() {
+    /**
+     * свойства документа из DocumentMetadataCache
+     * @return null если документ не существует или недоступен
+     */
+    public DocumentEntry getMetadata() {
         Context context = this.context.get();
         if (uri != null && context != null) {
-            DocumentFile documentFile = DocumentFile.fromTreeUri(context, uri);
-            if (documentFile != null)
-                return documentFile.getName();
+            try {
+                return DocumentMetadataCache.getInstance().get(context, uri);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
 
         return null;
     }
 
+    public String getName() {
+        DocumentEntry metadata = getMetadata();
+        if (metadata != null)
+            return metadata.getName();
+
+        return null;
+    }
+
+    public boolean exists() {
+        return getMetadata() != null;
+    }
+
+    public boolean isDirectory() {
+        DocumentEntry metadata = getMetadata();
+        return metadata != null && metadata.isDirectory();
+    }
+
 }
@@ -0,0 +1,71 @@
+package com.tiromansev.filedialog;
+
+import java.util.List;
+
+/**
+ * очередная порция результатов рекурсивного поиска и статистика обхода
+ */
+public class SearchProgress {
+    private final List<RowItem> matches;
+    private final int scannedFolders;
+    private final int failedFolders;
+    private final long elapsedMillis;
+    private final boolean complete;
+    private final boolean fromIndex;
+
+    public SearchProgress(List<RowItem> matches,
+                          int scannedFolders,
+                          int failedFolders,
+                          long elapsedMillis,
+                          boolean complete) {
+        this(matches, scannedFolders, failedFolders, elapsedMillis, complete, false);
+    }
+
+    public SearchProgress(List<RowItem> matches,
+                          int scannedFolders,
+                          int failedFolders,
+                          long elapsedMillis,
+                          boolean complete,
+                          boolean fromIndex) {
+        this.matches = matches;
+        this.scannedFolders = scannedFolders;
+        this.failedFolders = failedFolders;
+        this.elapsedMillis = elapsedMillis;
+        this.complete = complete;
+        this.fromIndex = fromIndex;
+    }
+
+    public List<RowItem> getMatches() {
+        return matches;
+    }
+
+    public int getScannedFolders() {
+        return scannedFolders;
+    }
+
+    /**
+     * папки, содержимое которых не удалось получить (обход при этом продолжается)
+     */
+    public int getFailedFolders() {
+        return failedFolders;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getFoldersPerSecond() {
+        return elapsedMillis > 0 ? scannedFolders * 1000d / elapsedMillis : 0;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * результаты взяты из FileIndex и могут быть устаревшими
+     */
+    public boolean isFromIndex() {
+        return fromIndex;
+    }
+}
@@ -0,0 +1,118 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * дисковый кэш миниатюр в cache dir приложения: один jpeg на документ,
+ * вытеснение давно не показывавшихся миниатюр при превышении лимита в байтах
+ */
+public class ThumbnailDiskCache {
+
+    public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+    private static final String DIR_NAME = "file_dialog_thumbnails";
+    private static final int JPEG_QUALITY = 85;
+
+    private final File dir;
+    private final long maxBytes;
+    // размер каталога считается один раз, дальше только увеличивается при записи
+    private long currentBytes = -1;
+
+    public ThumbnailDiskCache(Context context, long maxBytes) {
+        this.dir = new File(context.getCacheDir(), DIR_NAME);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return миниатюра или null если ее нет в кэше
+     */
+    public synchronized Bitmap read(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        // recently shown thumbnails are evicted last
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    public synchronized void write(String key, Bitmap bitmap) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File file = getFile(key);
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+            return;
+        }
+        long oldLength = file.length();
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            return;
+        }
+        if (currentBytes >= 0) {
+            currentBytes += file.length() - oldLength;
+        }
+        if (currentBytes < 0 || currentBytes > maxBytes) {
+            trimToSize();
+        }
+    }
+
+    public synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        currentBytes = 0;
+    }
+
+    private void trimToSize() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        currentBytes = size;
+        if (size <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (left, right) -> Long.compare(left.lastModified(), right.lastModified()));
+        for (File file : files) {
+            if (size <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+        currentBytes = size;
+    }
+
+    private File getFile(String key) {
+        return new File(dir, ListingDiskCache.hash(key));
+    }
+}
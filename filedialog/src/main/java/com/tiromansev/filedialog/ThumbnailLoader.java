@@ -0,0 +1,143 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.os.CancellationSignal;
+import android.provider.DocumentsContract;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.concurrent.Executors;
+
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * миниатюры документов, для которых провайдер выставляет FLAG_SUPPORTS_THUMBNAIL:
+ * кэш в памяти с ограничением в байтах, дисковый кэш, чтение и декодирование на небольшом
+ * фиксированном пуле потоков. запрос строки отменяется при переиспользовании view holder
+ */
+public class ThumbnailLoader {
+
+    private static final int THREAD_COUNT = 2;
+    private static final int MEMORY_CACHE_DIVIDER = 8;
+
+    private static volatile ThumbnailLoader instance;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ThumbnailDiskCache diskCache;
+    private final Scheduler scheduler = Schedulers.from(Executors.newFixedThreadPool(THREAD_COUNT));
+
+    private ThumbnailLoader(Context context) {
+        this.context = context.getApplicationContext();
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVIDER);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        diskCache = new ThumbnailDiskCache(this.context, ThumbnailDiskCache.DEFAULT_MAX_BYTES);
+    }
+
+    public static ThumbnailLoader get(Context context) {
+        if (instance == null) {
+            synchronized (ThumbnailLoader.class) {
+                if (instance == null) {
+                    instance = new ThumbnailLoader(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * показывает миниатюру строки в imageView, пока она грузится - иконку строки.
+     * предыдущий незавершенный запрос для этого imageView отменяется
+     * @param size сторона миниатюры в пикселях
+     */
+    public void load(ImageView imageView, RowItem rowItem, int size) {
+        cancel(imageView);
+        String key = getKey(rowItem, size);
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageResource(rowItem.getImageId());
+
+        Disposable request = Maybe.<Bitmap>create(emitter -> {
+            Bitmap bitmap = diskCache.read(key);
+            if (bitmap == null) {
+                CancellationSignal signal = new CancellationSignal();
+                emitter.setCancellable(signal::cancel);
+                try {
+                    bitmap = DocumentsContract.getDocumentThumbnail(context.getContentResolver(),
+                            rowItem.getUri(), new Point(size, size), signal);
+                } catch (Exception e) {
+                    // cancellation surfaces as an exception once the holder is recycled
+                    emitter.tryOnError(e);
+                    return;
+                }
+                if (bitmap == null) {
+                    emitter.onComplete();
+                    return;
+                }
+                bitmap = fit(bitmap, size);
+                diskCache.write(key, bitmap);
+            }
+            memoryCache.put(key, bitmap);
+            emitter.onSuccess(bitmap);
+        })
+                .subscribeOn(scheduler)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(imageView::setImageBitmap, throwable -> {
+                    // provider failed or the request was cancelled, the row keeps its icon
+                });
+        imageView.setTag(R.id.file_dialog_thumbnail_request, request);
+    }
+
+    /**
+     * отменяет незавершенный запрос миниатюры для imageView
+     */
+    public void cancel(ImageView imageView) {
+        Object request = imageView.getTag(R.id.file_dialog_thumbnail_request);
+        if (request instanceof Disposable) {
+            ((Disposable) request).dispose();
+        }
+        imageView.setTag(R.id.file_dialog_thumbnail_request, null);
+    }
+
+    public void clear() {
+        memoryCache.evictAll();
+        diskCache.clear();
+    }
+
+    static String getKey(RowItem rowItem, int size) {
+        // a changed document gets a new key, the old thumbnail ages out of the caches
+        return rowItem.getUri() + "|" + rowItem.getLastModified() + "|" + rowItem.getSize() + "|" + size;
+    }
+
+    /**
+     * провайдер может вернуть миниатюру больше запрошенной
+     */
+    private static Bitmap fit(Bitmap bitmap, int size) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width <= size && height <= size) {
+            return bitmap;
+        }
+        float scale = Math.min((float) size / width, (float) size / height);
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
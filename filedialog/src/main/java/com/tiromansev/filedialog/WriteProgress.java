@@ -0,0 +1,42 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+
+/**
+ * ход записи файла через DocumentWriter, последняя порция (isComplete) содержит uri записанного документа
+ */
+public class WriteProgress {
+    private final long bytesWritten;
+    private final long elapsedMillis;
+    private final Uri uri;
+
+    public WriteProgress(long bytesWritten, long elapsedMillis) {
+        this(bytesWritten, elapsedMillis, null);
+    }
+
+    public WriteProgress(long bytesWritten, long elapsedMillis, Uri uri) {
+        this.bytesWritten = bytesWritten;
+        this.elapsedMillis = elapsedMillis;
+        this.uri = uri;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedMillis > 0 ? bytesWritten * 1000d / elapsedMillis : 0;
+    }
+
+    public boolean isComplete() {
+        return uri != null;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+}
@@ -0,0 +1,556 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.LruCache;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static com.tiromansev.filedialog.SafDialog.ZIP_FILE_EXT;
+
+/**
+ * просмотр zip архива без распаковки: читается только центральный каталог в конце файла
+ * (позиционным чтением через FileChannel дескриптора документа). разобранный каталог последних
+ * архивов хранится в памяти по uri архива и дате его изменения, так что переход по папкам архива
+ * не перечитывает каталог. имена записей без флага UTF-8 читаются в кодировке CP437, как их пишут
+ * архиваторы Windows. содержимое записи распаковывается потоком при чтении.
+ * папка внутри архива адресуется uri документа архива с путем папки во fragment
+ * ("content://...zip#dir/sub/"), такие uri не передаются провайдеру
+ */
+public class ZipArchive {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    // holds the end record with a comment of the maximum length
+    private static final int DIRECTORY_BUFFER_SIZE = 128 * 1024;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int FLAG_ENCRYPTED = 1;
+    // general purpose bit 11, the name and comment are UTF-8
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int MAX_CACHED_ENTRIES = 64 * 1024;
+    private static final String CP437_HIGH = "ÇüéâäàåçêëèïîìÄÅÉæÆôöòûùÿÖÜ¢£¥₧ƒáíóúñÑªº¿⌐¬½¼¡«»"
+            + "░▒▓│┤╡╢╖╕╣║╗╝╜╛┐└┴┬├─┼╞╟╚╔╩╦╠═╬╧╨╤╥╙╘╒╓╫╪┘┌█▄▌▐▀"
+            + "αßΓπΣσµτΦΘΩδ∞φε∩≡±≥≤⌠⌡÷≈°∙·√ⁿ²■\u00A0";
+    private static final long MAX_UINT32 = 0xFFFFFFFFL;
+
+    private static final LruCache<String, Directory> directories = new LruCache<String, Directory>(MAX_CACHED_ENTRIES) {
+        @Override
+        protected int sizeOf(String key, Directory directory) {
+            return directory.entries.length + 1;
+        }
+    };
+
+    public static boolean isArchive(String fileName) {
+        return fileName != null && fileName.regionMatches(true, fileName.length() - ZIP_FILE_EXT.length(),
+                ZIP_FILE_EXT, 0, ZIP_FILE_EXT.length());
+    }
+
+    /**
+     * uri папки (или записи) entryPath внутри архива archiveUri, "" - корень архива
+     */
+    public static Uri buildEntryUri(Uri archiveUri, String entryPath) {
+        return archiveUri.buildUpon().fragment(entryPath).build();
+    }
+
+    public static boolean isEntryUri(Uri uri) {
+        return uri != null && uri.getFragment() != null;
+    }
+
+    public static Uri getArchiveUri(Uri entryUri) {
+        return entryUri.buildUpon().fragment(null).build();
+    }
+
+    public static String getEntryPath(Uri entryUri) {
+        String path = entryUri.getFragment();
+        return path != null ? path : "";
+    }
+
+    /**
+     * записи папки folderPath архива (папки архива заканчиваются на "/", "" - корень).
+     * папки, которых нет в каталоге явно, но которые есть в путях файлов, тоже возвращаются
+     */
+    public static List<Entry> list(Context context, Uri archiveUri, String folderPath) throws IOException {
+        List<Entry> children = new ArrayList<>();
+        Set<String> folders = new HashSet<>();
+        for (Entry entry : getEntries(context, archiveUri)) {
+            String name = entry.getName();
+            if (!name.startsWith(folderPath) || name.length() == folderPath.length()) {
+                continue;
+            }
+            int slash = name.indexOf('/', folderPath.length());
+            if (slash < 0) {
+                children.add(entry);
+            } else if (folders.add(name.substring(0, slash + 1))) {
+                children.add(slash == name.length() - 1 ? entry : new Entry(archiveUri, name.substring(0, slash + 1),
+                        METHOD_STORED, 0, 0, 0, 0, -1));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * запись с полным путем entryPath, null если ее нет в архиве
+     */
+    public static Entry find(Context context, Uri archiveUri, String entryPath) throws IOException {
+        for (Entry entry : getEntries(context, archiveUri)) {
+            if (entry.getName().equals(entryPath)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    static void clearCache() {
+        directories.evictAll();
+    }
+
+    /**
+     * разобранный центральный каталог архива и дата изменения и размер архива, для которых он прочитан
+     */
+    private static class Directory {
+        private final long lastModified;
+        private final long size;
+        private final Entry[] entries;
+
+        private Directory(long lastModified, long size, Entry[] entries) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * записи каталога из кэша, если архив не менялся, иначе каталог читается заново.
+     * архив без даты изменения не кэшируется
+     */
+    private static Entry[] getEntries(Context context, Uri archiveUri) throws IOException {
+        String key = archiveUri.toString();
+        DocumentEntry document;
+        try {
+            document = DocumentUtils.queryEntry(context, archiveUri);
+        } catch (RuntimeException e) {
+            document = null;
+        }
+        long lastModified = document != null ? document.getLastModified() : 0;
+        long size = document != null ? document.getSize() : 0;
+        Directory directory = directories.get(key);
+        if (directory != null && lastModified > 0 && directory.lastModified == lastModified && directory.size == size) {
+            return directory.entries;
+        }
+
+        Entry[] entries = scan(context, archiveUri);
+        if (lastModified > 0) {
+            directories.put(key, new Directory(lastModified, size, entries));
+        } else {
+            directories.remove(key);
+        }
+        return entries;
+    }
+
+    private static Entry[] scan(Context context, Uri archiveUri) throws IOException {
+        try (ParcelFileDescriptor descriptor = openDescriptor(context, archiveUri);
+             FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor());
+             FileChannel channel = stream.getChannel()) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(DIRECTORY_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            // end of central directory record, the archive comment may follow it
+            int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_SIZE);
+            buffer.limit(tailSize);
+            readFully(channel, buffer, size - tailSize);
+            int eocd = -1;
+            for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+                if (buffer.getInt(i) == EOCD_SIGNATURE) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                throw new ZipException("Not a zip archive");
+            }
+            long entryCount = buffer.getShort(eocd + 10) & 0xFFFF;
+            long directorySize = buffer.getInt(eocd + 12) & MAX_UINT32;
+            long directoryOffset = buffer.getInt(eocd + 16) & MAX_UINT32;
+            long eocdPosition = size - tailSize + eocd;
+
+            if ((entryCount == 0xFFFF || directoryOffset == MAX_UINT32) && eocdPosition >= ZIP64_LOCATOR_SIZE) {
+                buffer.clear().limit(ZIP64_LOCATOR_SIZE);
+                readFully(channel, buffer, eocdPosition - ZIP64_LOCATOR_SIZE);
+                if (buffer.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                    long zip64Position = buffer.getLong(8);
+                    buffer.clear().limit(56);
+                    readFully(channel, buffer, zip64Position);
+                    if (buffer.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                        throw new ZipException("Broken zip64 end of central directory");
+                    }
+                    entryCount = buffer.getLong(32);
+                    directorySize = buffer.getLong(40);
+                    directoryOffset = buffer.getLong(48);
+                }
+            }
+            // every entry takes at least a header, a broken count must not allocate a huge array
+            if (entryCount > directorySize / CENTRAL_HEADER_SIZE) {
+                throw new ZipException("Broken central directory");
+            }
+
+            DirectoryReader reader = new DirectoryReader(channel, buffer, directoryOffset, directorySize);
+            Entry[] entries = new Entry[(int) entryCount];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = reader.next(archiveUri);
+            }
+            return entries;
+        }
+    }
+
+    private static ParcelFileDescriptor openDescriptor(Context context, Uri archiveUri) throws FileNotFoundException {
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(archiveUri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException(archiveUri.toString());
+        }
+        return descriptor;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * последовательное чтение центрального каталога порциями по DIRECTORY_BUFFER_SIZE
+     */
+    private static class DirectoryReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+        private final long end;
+
+        private DirectoryReader(FileChannel channel, ByteBuffer buffer, long offset, long size) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = offset;
+            this.end = offset + size;
+            buffer.clear().limit(0);
+        }
+
+        private void require(int count) throws IOException {
+            if (buffer.remaining() >= count) {
+                return;
+            }
+            buffer.compact();
+            int wanted = (int) Math.min(buffer.remaining(), end - position);
+            if (buffer.position() + wanted < count) {
+                throw new ZipException("Broken central directory");
+            }
+            buffer.limit(buffer.position() + wanted);
+            int start = buffer.position();
+            readFully(channel, buffer, position);
+            position += buffer.position() - start;
+            buffer.flip();
+        }
+
+        private void skip(int count) throws IOException {
+            while (count > 0) {
+                require(Math.min(count, DIRECTORY_BUFFER_SIZE));
+                int skipped = Math.min(count, buffer.remaining());
+                buffer.position(buffer.position() + skipped);
+                count -= skipped;
+            }
+        }
+
+        private Entry next(Uri archiveUri) throws IOException {
+            require(CENTRAL_HEADER_SIZE);
+            int start = buffer.position();
+            if (buffer.getInt(start) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Broken central directory entry");
+            }
+            int flags = buffer.getShort(start + 8) & 0xFFFF;
+            int method = buffer.getShort(start + 10) & 0xFFFF;
+            long modified = dosToMillis(buffer.getInt(start + 12));
+            long crc = buffer.getInt(start + 16) & MAX_UINT32;
+            long compressedSize = buffer.getInt(start + 20) & MAX_UINT32;
+            long size = buffer.getInt(start + 24) & MAX_UINT32;
+            int nameLength = buffer.getShort(start + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(start + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(start + 32) & 0xFFFF;
+            long localOffset = buffer.getInt(start + 42) & MAX_UINT32;
+            buffer.position(start + CENTRAL_HEADER_SIZE);
+
+            require(nameLength);
+            int nameOffset = buffer.arrayOffset() + buffer.position();
+            String name = (flags & FLAG_UTF8) != 0
+                    ? new String(buffer.array(), nameOffset, nameLength, StandardCharsets.UTF_8)
+                    : decodeCp437(buffer.array(), nameOffset, nameLength);
+            buffer.position(buffer.position() + nameLength);
+
+            require(extraLength);
+            int extraEnd = buffer.position() + extraLength;
+            while (buffer.position() + 4 <= extraEnd) {
+                int id = buffer.getShort() & 0xFFFF;
+                int length = buffer.getShort() & 0xFFFF;
+                int dataEnd = Math.min(buffer.position() + length, extraEnd);
+                if (id == ZIP64_EXTRA_ID) {
+                    // zip64 values follow in this order, only for fields saturated in the header
+                    if (size == MAX_UINT32 && buffer.position() + 8 <= dataEnd) {
+                        size = buffer.getLong();
+                    }
+                    if (compressedSize == MAX_UINT32 && buffer.position() + 8 <= dataEnd) {
+                        compressedSize = buffer.getLong();
+                    }
+                    if (localOffset == MAX_UINT32 && buffer.position() + 8 <= dataEnd) {
+                        localOffset = buffer.getLong();
+                    }
+                }
+                buffer.position(dataEnd);
+            }
+            buffer.position(extraEnd);
+            skip(commentLength);
+
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                method = -1;
+            }
+            return new Entry(archiveUri, name, method, modified, crc, compressedSize, size, localOffset);
+        }
+    }
+
+    /**
+     * имя записи в кодировке CP437 (кодировка zip по умолчанию), ASCII совпадает
+     */
+    static String decodeCp437(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xFF;
+            chars[i] = b < 0x80 ? (char) b : CP437_HIGH.charAt(b - 0x80);
+        }
+        return new String(chars);
+    }
+
+    private static long dosToMillis(int dosTime) {
+        if (dosTime == 0) {
+            return 0;
+        }
+        return new GregorianCalendar(((dosTime >> 25) & 0x7F) + 1980,
+                ((dosTime >> 21) & 0x0F) - 1,
+                (dosTime >> 16) & 0x1F,
+                (dosTime >> 11) & 0x1F,
+                (dosTime >> 5) & 0x3F,
+                (dosTime << 1) & 0x3E).getTimeInMillis();
+    }
+
+    /**
+     * запись центрального каталога архива
+     */
+    public static class Entry {
+        private final Uri archiveUri;
+        private final String name;
+        private final int method;
+        private final long lastModified;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localOffset;
+
+        private Entry(Uri archiveUri,
+                      String name,
+                      int method,
+                      long lastModified,
+                      long crc,
+                      long compressedSize,
+                      long size,
+                      long localOffset) {
+            this.archiveUri = archiveUri;
+            this.name = name;
+            this.method = method;
+            this.lastModified = lastModified;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+
+        public Uri getArchiveUri() {
+            return archiveUri;
+        }
+
+        /**
+         * полный путь записи в архиве, у папок заканчивается на "/"
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * имя записи без пути
+         */
+        public String getFileName() {
+            int end = isDirectory() ? name.length() - 1 : name.length();
+            return name.substring(name.lastIndexOf('/', end - 1) + 1, end);
+        }
+
+        public Uri getUri() {
+            return buildEntryUri(archiveUri, name);
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * поток распакованного содержимого записи, читает только данные этой записи.
+         * дескриптор архива закрывается вместе с потоком, вызывать не в главном потоке
+         */
+        public InputStream openStream(Context context) throws IOException {
+            if (isDirectory()) {
+                throw new ZipException(name + " is a directory");
+            }
+            if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+                throw new ZipException("Unsupported compression method or encrypted entry: " + name);
+            }
+            ParcelFileDescriptor descriptor = openDescriptor(context, archiveUri);
+            FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor());
+            try {
+                FileChannel channel = stream.getChannel();
+                ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, header, localOffset);
+                if (header.getInt(0) != LOCAL_SIGNATURE) {
+                    throw new ZipException("Broken local header: " + name);
+                }
+                long dataOffset = localOffset + LOCAL_HEADER_SIZE
+                        + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+                EntryInputStream data = new EntryInputStream(descriptor, stream, channel, dataOffset,
+                        compressedSize, method == METHOD_DEFLATED);
+                if (method == METHOD_STORED) {
+                    return data;
+                }
+                Inflater inflater = new Inflater(true);
+                return new InflaterInputStream(data, inflater, INFLATE_BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            } catch (IOException | RuntimeException e) {
+                stream.close();
+                descriptor.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * сжатые данные одной записи, позиционное чтение канала архива
+     */
+    private static class EntryInputStream extends InputStream {
+        private final ParcelFileDescriptor descriptor;
+        private final FileInputStream stream;
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        // raw inflate may ask for one byte past the data before it reports the end of stream
+        private boolean padding;
+
+        private EntryInputStream(ParcelFileDescriptor descriptor,
+                                 FileInputStream stream,
+                                 FileChannel channel,
+                                 long position,
+                                 long length,
+                                 boolean padding) {
+            this.descriptor = descriptor;
+            this.stream = stream;
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.padding = padding;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == 1 ? single[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (padding) {
+                    padding = false;
+                    bytes[offset] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining)), position);
+            if (read < 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+            descriptor.close();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.tiromansev.filedialog;
+
+public interface ZipEntryListener {
+
+    /**
+     * выбран файл внутри zip архива
+     * @param entry запись архива, содержимое читается через entry.openStream(context) не в главном потоке
+     */
+    void onZipEntryResult(ZipArchive.Entry entry);
+
+}
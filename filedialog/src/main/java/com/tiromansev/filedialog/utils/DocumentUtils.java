@@ -0,0 +1,151 @@
+package com.tiromansev.filedialog.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import com.tiromansev.filedialog.DocumentEntry;
+
+import java.util.List;
+
+public class DocumentUtils {
+
+    public static final String EXTERNAL_STORAGE_AUTHORITY = "com.android.externalstorage.documents";
+
+    public static final String[] PROJECTION = new String[]{
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_FLAGS
+    };
+
+    /**
+     * id документа для tree uri или для uri документа внутри дерева
+     */
+    public static String getDocumentId(Context context, Uri uri) {
+        if (DocumentsContract.isDocumentUri(context, uri)) {
+            return DocumentsContract.getDocumentId(uri);
+        }
+
+        return DocumentsContract.getTreeDocumentId(uri);
+    }
+
+    /**
+     * uri самого документа (а не дерева) для tree uri или для uri документа внутри дерева,
+     * uri отдельного документа (не из дерева) возвращается как есть
+     */
+    public static Uri getDocumentUri(Context context, Uri uri) {
+        if (!isTreeUri(uri)) {
+            return uri;
+        }
+
+        return DocumentsContract.buildDocumentUriUsingTree(uri, getDocumentId(context, uri));
+    }
+
+    /**
+     * id дочернего документа, построенный без запроса к провайдеру, для провайдеров у которых
+     * id документа это путь к файлу (ExternalStorageProvider: "primary:Folder/name")
+     * @return null если провайдер не поддерживает такое построение id
+     */
+    public static String buildChildDocumentId(Context context, Uri folderUri, String name) {
+        if (!EXTERNAL_STORAGE_AUTHORITY.equals(folderUri.getAuthority()) || name.indexOf('/') >= 0) {
+            return null;
+        }
+        String parentId = getDocumentId(context, folderUri);
+        if (parentId.endsWith(":") || parentId.endsWith("/")) {
+            return parentId + name;
+        }
+
+        return parentId + "/" + name;
+    }
+
+    public static boolean isTreeUri(Uri uri) {
+        List<String> paths = uri.getPathSegments();
+        return paths.size() >= 2 && "tree".equals(paths.get(0));
+    }
+
+    /**
+     * свойства одного документа одним запросом
+     * @param uri tree uri или uri документа внутри дерева
+     * @return null если документ не найден
+     */
+    public static DocumentEntry queryEntry(Context context, Uri uri) {
+        Uri documentUri = getDocumentUri(context, uri);
+        try (Cursor cursor = context.getContentResolver().query(documentUri, PROJECTION, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            return new Columns(cursor).read(cursor, documentUri);
+        }
+    }
+
+    /**
+     * индексы колонок PROJECTION в курсоре, провайдер может не вернуть часть колонок
+     */
+    public static class Columns {
+        private final int id;
+        private final int name;
+        private final int mimeType;
+        private final int size;
+        private final int lastModified;
+        private final int flags;
+
+        public Columns(Cursor cursor) {
+            id = cursor.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+            name = cursor.getColumnIndex(Document.COLUMN_DISPLAY_NAME);
+            mimeType = cursor.getColumnIndex(Document.COLUMN_MIME_TYPE);
+            size = cursor.getColumnIndex(Document.COLUMN_SIZE);
+            lastModified = cursor.getColumnIndex(Document.COLUMN_LAST_MODIFIED);
+            flags = cursor.getColumnIndex(Document.COLUMN_FLAGS);
+        }
+
+        /**
+         * @param baseUri tree uri папки (для строк списка детей) или uri запрошенного документа.
+         * uri отдельного документа (ACTION_OPEN_DOCUMENT, ACTION_CREATE_DOCUMENT) не входит в дерево,
+         * и сам является uri строки
+         * @return запись с uri null, если провайдер не вернул id документа дерева
+         */
+        public DocumentEntry read(Cursor cursor, Uri baseUri) {
+            String documentId = getString(cursor, id);
+            return new DocumentEntry(documentId,
+                    getString(cursor, name),
+                    getString(cursor, mimeType),
+                    getLong(cursor, size),
+                    getLong(cursor, lastModified),
+                    (int) getLong(cursor, flags),
+                    buildEntryUri(baseUri, documentId));
+        }
+    }
+
+    private static Uri buildEntryUri(Uri baseUri, String documentId) {
+        if (!isTreeUri(baseUri)) {
+            // single documents carry their own grant, a tree uri can't be built for them
+            return baseUri;
+        }
+        if (documentId == null) {
+            return null;
+        }
+
+        return DocumentsContract.buildDocumentUriUsingTree(baseUri, documentId);
+    }
+
+    private static String getString(Cursor cursor, int column) {
+        if (column < 0 || cursor.isNull(column)) {
+            return null;
+        }
+
+        return cursor.getString(column);
+    }
+
+    private static long getLong(Cursor cursor, int column) {
+        if (column < 0 || cursor.isNull(column)) {
+            return 0;
+        }
+
+        return cursor.getLong(column);
+    }
+}
@@ -0,0 +1,139 @@
+package com.tiromansev.filedialog.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * фильтр расширений и выбор иконки файла за один проход по имени с конца:
+ * суффиксы хранятся в дереве по символам в обратном порядке, побеждает самый длинный совпавший суффикс
+ */
+public class FileExtMatcher {
+
+    public static final int EXCLUDED = Integer.MIN_VALUE;
+
+    private final Node root = new Node();
+    private final boolean ignoreCase;
+    private final boolean hasFilter;
+
+    /**
+     * @param filters суффиксы имен отображаемых файлов, null или пустой массив - без фильтра
+     * @param icons   суффикс имени файла - id ресурса иконки
+     */
+    public FileExtMatcher(String[] filters, Map<String, Integer> icons, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.hasFilter = filters != null && filters.length > 0;
+        if (hasFilter) {
+            for (String filter : filters) {
+                if (filter != null) {
+                    add(filter).filter = true;
+                }
+            }
+        }
+        if (icons != null) {
+            for (Map.Entry<String, Integer> entry : icons.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    Node node = add(entry.getKey());
+                    node.hasIcon = true;
+                    node.icon = entry.getValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return id иконки по самому длинному совпавшему суффиксу, defaultImageId если иконка не найдена,
+     * EXCLUDED если файл не проходит фильтр
+     */
+    public int match(CharSequence name, int defaultImageId) {
+        if (name == null) {
+            return hasFilter ? EXCLUDED : defaultImageId;
+        }
+        Node node = root;
+        boolean passed = !hasFilter || node.filter;
+        int imageId = node.hasIcon ? node.icon : defaultImageId;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            node = node.child(fold(name.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            if (node.filter) {
+                passed = true;
+            }
+            if (node.hasIcon) {
+                imageId = node.icon;
+            }
+        }
+
+        return passed ? imageId : EXCLUDED;
+    }
+
+    /**
+     * id иконки по самому длинному совпавшему суффиксу без учета фильтра
+     * (строки, скрытые фильтром, остаются в содержимом папки)
+     */
+    public int getIcon(CharSequence name, int defaultImageId) {
+        if (name == null) {
+            return defaultImageId;
+        }
+        Node node = root;
+        int imageId = node.hasIcon ? node.icon : defaultImageId;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            node = node.child(fold(name.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            if (node.hasIcon) {
+                imageId = node.icon;
+            }
+        }
+        return imageId;
+    }
+
+    /**
+     * проходит ли файл фильтр
+     */
+    public boolean accepts(CharSequence name) {
+        return match(name, 0) != EXCLUDED;
+    }
+
+    private Node add(String suffix) {
+        Node node = root;
+        for (int i = suffix.length() - 1; i >= 0; i--) {
+            node = node.getOrAddChild(fold(suffix.charAt(i)));
+        }
+        return node;
+    }
+
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean filter;
+        private boolean hasIcon;
+        private int icon;
+
+        private Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
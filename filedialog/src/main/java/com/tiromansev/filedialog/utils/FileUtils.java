@@ -2,10 +2,13 @@ package com.tiromansev.filedialog.utils;
 
 import android.content.Context;
 import android.net.Uri;
+import android.provider.DocumentsContract;
 
 import androidx.documentfile.provider.DocumentFile;
 
-import java.text.DecimalFormat;
+import com.tiromansev.filedialog.ChildNameIndex;
+import com.tiromansev.filedialog.DocumentEntry;
+import com.tiromansev.filedialog.DocumentMetadataCache;
 
 public class FileUtils {
 
@@ -19,28 +22,94 @@ public class FileUtils {
         return result;
     }
 
-    public static String size(long size) {
-        String hrSize = "";
-        double k = size / 1024;
-        double m = size / 1048576;
-        double g = size / 1073741824;
+    /**
+     * находит файл в папке по имени или создает его.
+     * для провайдеров с предсказуемым id документа (внешнее хранилище) наличие файла проверяется
+     * одним запросом по построенному id, для остальных - поиском в ChildNameIndex папки
+     * @param folderUri tree uri папки или uri папки внутри дерева
+     */
+    public static DocumentFile getDocumentFile(Context context, Uri folderUri, String fileName) throws Exception {
+        Uri documentUri = findDocument(context, folderUri, fileName);
+        if (documentUri == null) {
+            documentUri = createDocument(context, folderUri, fileName);
+            if (documentUri == null) {
+                return null;
+            }
+        }
+
+        return DocumentFile.fromTreeUri(context, documentUri);
+    }
+
+    /**
+     * создает пустой файл fileName в папке folderUri и добавляет его в ChildNameIndex папки
+     * @return uri созданного файла или null
+     */
+    public static Uri createDocument(Context context, Uri folderUri, String fileName) throws Exception {
+        Uri documentUri = DocumentsContract.createDocument(context.getContentResolver(),
+                DocumentUtils.getDocumentUri(context, folderUri), "*/*", fileName);
+        if (documentUri == null) {
+            return null;
+        }
+        DocumentEntry created = new DocumentEntry(DocumentsContract.getDocumentId(documentUri),
+                fileName, "*/*", 0, System.currentTimeMillis(), 0, documentUri);
+        ChildNameIndex index = ChildNameIndex.peek(context, folderUri);
+        if (index != null) {
+            index.add(created);
+        }
+        return documentUri;
+    }
 
-        DecimalFormat dec = new DecimalFormat("0.00");
+    /**
+     * uri файла с именем fileName в папке folderUri, null если файла нет.
+     * документ, найденный в ChildNameIndex, проверяется запросом к провайдеру (его могли удалить
+     * или переименовать вне диалога). промах индекса, построенного раньше, проверяется одним запросом
+     * даты изменения папки: папка перечитывается, только если она менялась (иначе можно создать
+     * дубликат файла, появившегося в папке вне диалога)
+     */
+    public static Uri findDocument(Context context, Uri folderUri, String fileName) throws Exception {
+        String childDocumentId = DocumentUtils.buildChildDocumentId(context, folderUri, fileName);
+        if (childDocumentId != null) {
+            Uri childUri = DocumentsContract.buildDocumentUriUsingTree(folderUri, childDocumentId);
+            DocumentEntry entry = DocumentUtils.queryEntry(context, childUri);
+            return entry != null ? entry.getUri() : null;
+        }
 
-        if (k <= 0) {
-            hrSize = dec.format(k).concat(" b ");
+        ChildNameIndex index = ChildNameIndex.peek(context, folderUri);
+        boolean fresh = index == null;
+        if (fresh) {
+            index = ChildNameIndex.get(context, folderUri);
+        }
+        DocumentEntry entry = index.find(fileName);
+        if (entry != null) {
+            if (fresh || exists(context, entry.getUri(), fileName)) {
+                return entry.getUri();
+            }
+            index.remove(fileName);
         }
-        if (k > 0) {
-            hrSize = dec.format(k).concat(" k ");
+        if (fresh) {
+            return null;
         }
-        if (m > 0) {
-            hrSize = dec.format(m).concat(" M ");
+        DocumentEntry folder = DocumentUtils.queryEntry(context, folderUri);
+        if (folder != null && index.isCurrent(folder.getLastModified())) {
+            return null;
         }
-        if (g > 0) {
-            hrSize = dec.format(g).concat(" G ");
+
+        entry = ChildNameIndex.reload(context, folderUri).find(fileName);
+        return entry != null ? entry.getUri() : null;
+    }
+
+    private static boolean exists(Context context, Uri documentUri, String fileName) {
+        try {
+            DocumentEntry entry = DocumentUtils.queryEntry(context, documentUri);
+            return entry != null && fileName.equals(entry.getName());
+        } catch (Exception e) {
+            // providers report a deleted document with an exception instead of an empty cursor
+            return false;
         }
+    }
 
-        return hrSize;
+    public static String size(long size) {
+        return RowDataFormatter.get().formatSize(size);
     }
 
     public static String getFileName(Context context, Uri uri) {
@@ -48,11 +117,15 @@ public class FileUtils {
             return "";
         }
 
-        DocumentFile documentFile = DocumentFile.fromSingleUri(context, uri);
-        if (documentFile == null) {
+        try {
+            DocumentEntry entry = DocumentMetadataCache.getInstance().get(context, uri);
+            if (entry == null) {
+                return "";
+            }
+            return entry.getName();
+        } catch (Exception e) {
+            e.printStackTrace();
             return "";
         }
-
-        return documentFile.getName();
     }
 }
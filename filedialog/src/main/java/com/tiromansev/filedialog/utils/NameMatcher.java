@@ -0,0 +1,79 @@
+package com.tiromansev.filedialog.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * проверка имени файла по строке поиска: подстрока без учета регистра
+ * или маска с * и ? (по всему имени)
+ */
+public class NameMatcher {
+
+    private final String text;
+    private final Pattern pattern;
+
+    private NameMatcher(String text, Pattern pattern) {
+        this.text = text;
+        this.pattern = pattern;
+    }
+
+    public static NameMatcher compile(String query) {
+        String text = query.trim();
+        if (text.indexOf('*') < 0 && text.indexOf('?') < 0) {
+            return new NameMatcher(text, null);
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return new NameMatcher(text, Pattern.compile(regex.toString(),
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL));
+    }
+
+    public boolean matches(CharSequence name) {
+        if (name == null) {
+            return false;
+        }
+        if (pattern != null) {
+            return pattern.matcher(name).matches();
+        }
+        int max = name.length() - text.length();
+        for (int i = 0; i <= max; i++) {
+            if (regionMatches(name, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * String.regionMatches без учета регистра для CharSequence
+     */
+    private boolean regionMatches(CharSequence name, int offset) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = name.charAt(offset + i);
+            char t = text.charAt(i);
+            if (c == t) {
+                continue;
+            }
+            char upper = Character.toUpperCase(c);
+            char textUpper = Character.toUpperCase(t);
+            if (upper != textUpper && Character.toLowerCase(upper) != Character.toLowerCase(textUpper)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+package com.tiromansev.filedialog.utils;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * форматирование размера и даты модификации строки списка без создания
+ * DecimalFormat/SimpleDateFormat/Date на каждый файл. экземпляр свой для каждого потока
+ */
+public class RowDataFormatter {
+
+    private static final ThreadLocal<RowDataFormatter> FORMATTERS = new ThreadLocal<RowDataFormatter>() {
+        @Override
+        protected RowDataFormatter initialValue() {
+            return new RowDataFormatter();
+        }
+    };
+
+    private final StringBuilder builder = new StringBuilder(32);
+    private Calendar calendar;
+    private char zeroDigit;
+    private char decimalSeparator;
+    private char minusSign;
+
+    private RowDataFormatter() {
+        refresh();
+    }
+
+    public static RowDataFormatter get() {
+        return FORMATTERS.get();
+    }
+
+    /**
+     * перечитывает локаль и часовой пояс по умолчанию, вызывается перед чтением очередной папки
+     */
+    public void refresh() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        zeroDigit = symbols.getZeroDigit();
+        decimalSeparator = symbols.getDecimalSeparator();
+        minusSign = symbols.getMinusSign();
+        calendar = Calendar.getInstance(TimeZone.getDefault());
+    }
+
+    /**
+     * @return размер и дата модификации в формате "1,00 M 31.12.24 23:59"
+     */
+    public String formatData(long size, long lastModified) {
+        builder.setLength(0);
+        appendSize(builder, size);
+        appendDate(builder, lastModified);
+        return builder.toString();
+    }
+
+    public String formatSize(long size) {
+        builder.setLength(0);
+        appendSize(builder, size);
+        return builder.toString();
+    }
+
+    /**
+     * то же что DecimalFormat("0.00") от целого числа килобайт/мегабайт/гигабайт
+     */
+    public void appendSize(StringBuilder out, long size) {
+        long k = size / 1024;
+        long m = size / 1048576;
+        long g = size / 1073741824;
+
+        if (g > 0) {
+            appendUnits(out, g, " G ");
+        } else if (m > 0) {
+            appendUnits(out, m, " M ");
+        } else if (k > 0) {
+            appendUnits(out, k, " k ");
+        } else {
+            appendUnits(out, k, " b ");
+        }
+    }
+
+    /**
+     * то же что SimpleDateFormat("dd.MM.yy HH:mm", Locale.ENGLISH)
+     */
+    public void appendDate(StringBuilder out, long time) {
+        calendar.setTimeInMillis(time);
+        appendTwoDigits(out, calendar.get(Calendar.DAY_OF_MONTH));
+        out.append('.');
+        appendTwoDigits(out, calendar.get(Calendar.MONTH) + 1);
+        out.append('.');
+        appendTwoDigits(out, calendar.get(Calendar.YEAR) % 100);
+        out.append(' ');
+        appendTwoDigits(out, calendar.get(Calendar.HOUR_OF_DAY));
+        out.append(':');
+        appendTwoDigits(out, calendar.get(Calendar.MINUTE));
+    }
+
+    private void appendUnits(StringBuilder out, long value, String unit) {
+        if (value < 0) {
+            out.append(minusSign);
+            value = -value;
+        }
+        int start = out.length();
+        do {
+            out.insert(start, (char) (zeroDigit + (int) (value % 10)));
+            value /= 10;
+        } while (value > 0);
+        out.append(decimalSeparator).append(zeroDigit).append(zeroDigit).append(unit);
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10 % 10)).append((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,21 @@
+package com.tiromansev.filedialog.utils;
+
+import java.util.concurrent.Callable;
+
+import io.reactivex.Maybe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
+
+public class RxUtils {
+
+    /**
+     * выполняет запрос к ContentResolver в io потоке и возвращает результат в главный поток,
+     * null результат завершает Maybe без значения
+     */
+    public static <T> Maybe<T> io(Callable<T> callable) {
+        return Maybe.fromCallable(callable)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+import com.tiromansev.filedialog.utils.FileUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * поиск документа по имени через FileUtils.findDocument: промах индекса при неизменной дате папки
+ * стоит одного запроса без перечитывания папки, измененная папка перечитывается.
+ * время поиска сравнивается с DocumentFile.findFile на папке из 5000 файлов
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ChildNameIndexTest {
+
+    private static final String AUTHORITY = "com.tiromansev.filedialog.test.tree";
+    private static final String ROOT_ID = "root";
+    private static final Uri FOLDER_URI = DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID);
+
+    private static final Set<String> children = new LinkedHashSet<>();
+    private static long folderLastModified;
+    private static int childrenQueries;
+    private static int documentQueries;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        Robolectric.setupContentProvider(TestProvider.class, AUTHORITY);
+        registerDocumentsProvider(context, AUTHORITY);
+        children.clear();
+        for (int i = 0; i < 20; i++) {
+            children.add("file" + i + ".csv");
+        }
+        folderLastModified = 1000;
+        childrenQueries = 0;
+        documentQueries = 0;
+        ChildNameIndex.invalidate(context, FOLDER_URI);
+    }
+
+    @Test
+    public void missInUnchangedFolderIsTrusted() throws Exception {
+        assertNull(FileUtils.findDocument(context, FOLDER_URI, "missing.csv"));
+        assertEquals(1, childrenQueries);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(FileUtils.findDocument(context, FOLDER_URI, "missing" + i + ".csv"));
+        }
+
+        assertEquals(1, childrenQueries);
+        // the folder date per miss
+        assertEquals(1 + 10, documentQueries);
+    }
+
+    @Test
+    public void missInChangedFolderReloadsIndex() throws Exception {
+        assertNull(FileUtils.findDocument(context, FOLDER_URI, "new.csv"));
+
+        children.add("new.csv");
+        folderLastModified = 2000;
+
+        assertEquals(childUri("new.csv"), FileUtils.findDocument(context, FOLDER_URI, "new.csv"));
+        assertEquals(2, childrenQueries);
+    }
+
+    @Test
+    public void folderWithoutDateIsReloadedOnMiss() throws Exception {
+        folderLastModified = 0;
+        assertNull(FileUtils.findDocument(context, FOLDER_URI, "missing.csv"));
+
+        assertNull(FileUtils.findDocument(context, FOLDER_URI, "missing.csv"));
+
+        assertEquals(2, childrenQueries);
+    }
+
+    @Test
+    public void indexFromListingKnowsFolderDate() {
+        ChildNameIndex.put(context, FOLDER_URI, new ArrayList<>(), 1000);
+
+        assertTrue(ChildNameIndex.peek(context, FOLDER_URI).isCurrent(1000));
+        assertFalse(ChildNameIndex.peek(context, FOLDER_URI).isCurrent(2000));
+
+        ChildNameIndex.put(context, FOLDER_URI, new ArrayList<>(), 0);
+        assertFalse(ChildNameIndex.peek(context, FOLDER_URI).isCurrent(0));
+    }
+
+    @Test
+    public void benchmarkAgainstFindFile() throws Exception {
+        children.clear();
+        for (int i = 0; i < 5000; i++) {
+            children.add(String.format(Locale.ROOT, "report%04d.csv", i));
+        }
+        String last = "report4999.csv";
+        DocumentFile folder = DocumentFile.fromTreeUri(context, FOLDER_URI);
+        assertNotNull(folder);
+
+        childrenQueries = 0;
+        documentQueries = 0;
+        long start = System.nanoTime();
+        DocumentFile found = folder.findFile(last);
+        long findFileNanos = System.nanoTime() - start;
+        assertNotNull(found);
+        assertEquals(childUri(last), found.getUri());
+        int findFileQueries = childrenQueries + documentQueries;
+
+        childrenQueries = 0;
+        documentQueries = 0;
+        start = System.nanoTime();
+        Uri first = FileUtils.findDocument(context, FOLDER_URI, last);
+        long firstNanos = System.nanoTime() - start;
+        assertEquals(childUri(last), first);
+        int firstQueries = childrenQueries + documentQueries;
+
+        childrenQueries = 0;
+        documentQueries = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(childUri(last), FileUtils.findDocument(context, FOLDER_URI, last));
+            assertNull(FileUtils.findDocument(context, FOLDER_URI, "missing" + i + ".csv"));
+        }
+        long indexedNanos = (System.nanoTime() - start) / 100;
+
+        System.out.printf(Locale.ROOT, "find of 5000 children: findFile %.1f ms (%d queries), "
+                        + "findDocument %.1f ms (%d queries) first, %.3f ms hit and miss with index%n",
+                findFileNanos / 1e6, findFileQueries, firstNanos / 1e6, firstQueries, indexedNanos / 1e6);
+        // the index answers a hit and a miss with one document query each
+        assertEquals(0, childrenQueries);
+        assertEquals(200, documentQueries);
+        assertTrue(firstQueries < findFileQueries);
+    }
+
+    /**
+     * DocumentsContract.isDocumentUri признает uri документа дерева только у провайдера,
+     * объявленного как DocumentsProvider, без этого id дочернего документа читается как id дерева
+     */
+    static void registerDocumentsProvider(Context context, String authority) {
+        ResolveInfo info = new ResolveInfo();
+        info.providerInfo = new ProviderInfo();
+        info.providerInfo.authority = authority;
+        info.providerInfo.packageName = context.getPackageName();
+        shadowOf(context.getPackageManager())
+                .addResolveInfoForIntent(new Intent(DocumentsContract.PROVIDER_INTERFACE), info);
+    }
+
+    private static Uri childUri(String name) {
+        return DocumentsContract.buildDocumentUriUsingTree(FOLDER_URI, ROOT_ID + "/" + name);
+    }
+
+    /**
+     * провайдер одной папки: дочерние документы из children с id "root/имя",
+     * свойства папки с датой folderLastModified и свойства каждого файла
+     */
+    public static class TestProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            if (projection == null) {
+                projection = DocumentUtils.PROJECTION;
+            }
+            MatrixCursor cursor = new MatrixCursor(projection);
+            if ("children".equals(uri.getLastPathSegment())) {
+                childrenQueries++;
+                for (String name : children) {
+                    addRow(cursor, projection, ROOT_ID + "/" + name, name, "text/csv", 100);
+                }
+                return cursor;
+            }
+            documentQueries++;
+            String documentId = DocumentsContract.getDocumentId(uri);
+            if (ROOT_ID.equals(documentId)) {
+                addRow(cursor, projection, ROOT_ID, ROOT_ID, Document.MIME_TYPE_DIR, folderLastModified);
+            } else {
+                String name = documentId.substring(ROOT_ID.length() + 1);
+                if (children.contains(name)) {
+                    addRow(cursor, projection, documentId, name, "text/csv", 100);
+                }
+            }
+            return cursor;
+        }
+
+        private static void addRow(MatrixCursor cursor, String[] projection, String documentId, String name,
+                                   String mimeType, long lastModified) {
+            MatrixCursor.RowBuilder row = cursor.newRow();
+            for (String column : projection) {
+                switch (column) {
+                    case Document.COLUMN_DOCUMENT_ID:
+                        row.add(documentId);
+                        break;
+                    case Document.COLUMN_DISPLAY_NAME:
+                        row.add(name);
+                        break;
+                    case Document.COLUMN_MIME_TYPE:
+                        row.add(mimeType);
+                        break;
+                    case Document.COLUMN_SIZE:
+                        row.add(10L);
+                        break;
+                    case Document.COLUMN_LAST_MODIFIED:
+                        row.add(lastModified);
+                        break;
+                    default:
+                        row.add(0);
+                }
+            }
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.*;
+
+/**
+ * запись документа через DocumentWriter: write пишет во временный .part и переименовывает его,
+ * после ошибки или отписки в папке не остается ни .part, ни .old, а существующий файл сохраняется.
+ * без переименования при ошибке удаляется только документ, созданный записью.
+ * overwrite: падение источника посреди записи не удаляет документ, одноразовый источник
+ * из потока при повторе падает, не трогая документ
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DocumentWriterTest {
+
+    private static final String AUTHORITY = "com.tiromansev.filedialog.test.documents";
+    private static final String ROOT_ID = "root";
+    private static final Uri FOLDER_URI = DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID);
+    private static final Uri DOCUMENT_URI = Uri.parse("content://" + AUTHORITY + "/document/report.csv");
+    private static final String FILE_NAME = "report.csv";
+    private static final String ORIGINAL = "id;name\n1;original\n";
+    // the hidden DocumentsContract call methods and their uri extra
+    private static final String METHOD_CREATE_DOCUMENT = "android:createDocument";
+    private static final String METHOD_RENAME_DOCUMENT = "android:renameDocument";
+    private static final String METHOD_DELETE_DOCUMENT = "android:deleteDocument";
+    private static final String EXTRA_URI = "uri";
+
+    private static File folder;
+    private static File file;
+    private static final List<String> calls = new ArrayList<>();
+    private static boolean renameSupported;
+    private static String failRenameTo;
+    private static long folderVersion;
+
+    private Context context;
+
+    @Before
+    public void setUp() throws IOException {
+        context = RuntimeEnvironment.getApplication();
+        Robolectric.setupContentProvider(TestProvider.class, AUTHORITY);
+        ChildNameIndexTest.registerDocumentsProvider(context, AUTHORITY);
+        folder = new File(context.getCacheDir(), "tree");
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                assertTrue(child.delete());
+            }
+        }
+        assertTrue(folder.isDirectory() || folder.mkdirs());
+        file = new File(folder, FILE_NAME);
+        Files.write(file.toPath(), ORIGINAL.getBytes(StandardCharsets.UTF_8));
+        calls.clear();
+        renameSupported = true;
+        failRenameTo = null;
+        folderVersion = 1000;
+        ChildNameIndex.invalidate(context, FOLDER_URI);
+    }
+
+    @Test
+    public void writeReplacesExistingFile() throws Exception {
+        TestSubscriber<WriteProgress> subscriber = write(DocumentWriter.from(stream("id;name\n2;new\n")));
+
+        subscriber.assertComplete();
+        WriteProgress last = subscriber.values().get(subscriber.valueCount() - 1);
+        assertEquals(childUri(FILE_NAME), last.getUri());
+        assertEquals("id;name\n2;new\n", read());
+        assertEquals(list(FILE_NAME), names());
+    }
+
+    @Test
+    public void writeFailureKeepsExistingFile() throws Exception {
+        TestSubscriber<WriteProgress> subscriber = write(channel -> {
+            channel.write(ByteBuffer.wrap("id;na".getBytes(StandardCharsets.UTF_8)));
+            throw new IOException("crash");
+        });
+
+        subscriber.assertError(IOException.class);
+        assertEquals(ORIGINAL, read());
+        assertEquals(list(FILE_NAME), names());
+        assertFalse(calls.toString(), calls.contains(METHOD_RENAME_DOCUMENT));
+    }
+
+    @Test
+    public void disposedWriteLeavesNoTemporaryFile() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        byte[] chunk = new byte[64 * 1024];
+        TestSubscriber<WriteProgress> subscriber = DocumentWriter.write(context, FOLDER_URI, FILE_NAME, channel -> {
+            started.countDown();
+            while (true) {
+                channel.write(ByteBuffer.wrap(chunk));
+            }
+        }).test();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        subscriber.dispose();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!names().equals(list(FILE_NAME)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(list(FILE_NAME), names());
+        assertEquals(ORIGINAL, read());
+    }
+
+    @Test
+    public void failedRenameRestoresOldFile() throws Exception {
+        failRenameTo = FILE_NAME;
+
+        TestSubscriber<WriteProgress> subscriber = write(DocumentWriter.from(stream("id;name\n2;new\n")));
+
+        // the provider error is rethrown as is or reported as a null rename, depending on the target sdk
+        subscriber.assertError(Exception.class);
+        assertEquals(ORIGINAL, read());
+        assertEquals(list(FILE_NAME), names());
+        // existing to .old, temporary to the target (failed), .old back to the target
+        assertEquals(3, Collections.frequency(calls, METHOD_RENAME_DOCUMENT));
+    }
+
+    @Test
+    public void writeWithoutRenameCreatesFile() throws Exception {
+        renameSupported = false;
+        assertTrue(file.delete());
+
+        write(DocumentWriter.from(stream("id;name\n2;new\n"))).assertComplete();
+
+        assertEquals("id;name\n2;new\n", read());
+        assertEquals(list(FILE_NAME), names());
+    }
+
+    @Test
+    public void failureWithoutRenameDeletesOnlyCreatedFile() throws Exception {
+        renameSupported = false;
+        assertTrue(file.delete());
+
+        write(channel -> {
+            channel.write(ByteBuffer.wrap("id;na".getBytes(StandardCharsets.UTF_8)));
+            throw new IOException("crash");
+        }).assertError(IOException.class);
+
+        assertEquals(Collections.emptyList(), names());
+    }
+
+    @Test
+    public void failureWithoutRenameKeepsExistingFile() throws Exception {
+        renameSupported = false;
+
+        write(channel -> {
+            channel.write(ByteBuffer.wrap("id;na".getBytes(StandardCharsets.UTF_8)));
+            throw new IOException("crash");
+        }).assertError(IOException.class);
+
+        // without a rename the user's file is written in place and may stay partial, but is never deleted
+        assertEquals(list(FILE_NAME), names());
+        assertEquals("id;na", read());
+        // only the probe document is deleted
+        assertEquals(1, Collections.frequency(calls, METHOD_DELETE_DOCUMENT));
+    }
+
+    @Test
+    public void overwriteReplacesContent() throws Exception {
+        TestSubscriber<WriteProgress> subscriber = overwrite(DocumentWriter.from(stream("id;name\n2;new\n")));
+
+        subscriber.assertComplete();
+        WriteProgress last = subscriber.values().get(subscriber.valueCount() - 1);
+        assertTrue(last.isComplete());
+        assertEquals(DOCUMENT_URI, last.getUri());
+        assertEquals("id;name\n2;new\n", read());
+    }
+
+    @Test
+    public void overwriteFailureKeepsDocument() throws Exception {
+        TestSubscriber<WriteProgress> subscriber = overwrite(channel -> {
+            channel.write(ByteBuffer.wrap("id;na".getBytes(StandardCharsets.UTF_8)));
+            throw new IOException("crash");
+        });
+
+        subscriber.assertError(IOException.class);
+        assertTrue(file.exists());
+        assertEquals("id;na", read());
+        assertTrue(calls.toString(), calls.isEmpty());
+    }
+
+    @Test
+    public void failureBeforeFirstByteKeepsContent() throws Exception {
+        TestSubscriber<WriteProgress> subscriber = overwrite(channel -> {
+            throw new IOException("crash");
+        });
+
+        subscriber.assertError(IOException.class);
+        assertEquals(ORIGINAL, read());
+        assertTrue(calls.toString(), calls.isEmpty());
+    }
+
+    @Test
+    public void streamSourceIsSingleUse() throws Exception {
+        DocumentWriter.WriteSource source = DocumentWriter.from(stream("id;name\n3;once\n"));
+        overwrite(source).assertComplete();
+
+        TestSubscriber<WriteProgress> retry = overwrite(source);
+
+        retry.assertError(IllegalStateException.class);
+        assertEquals("id;name\n3;once\n", read());
+    }
+
+    @Test
+    public void emptySourceTruncatesDocument() throws Exception {
+        overwrite(DocumentWriter.from(stream(""))).assertComplete();
+
+        assertEquals(0, file.length());
+    }
+
+    private TestSubscriber<WriteProgress> write(DocumentWriter.WriteSource source) {
+        TestSubscriber<WriteProgress> subscriber = DocumentWriter.write(context, FOLDER_URI, FILE_NAME, source).test();
+        assertTrue(subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        return subscriber;
+    }
+
+    private TestSubscriber<WriteProgress> overwrite(DocumentWriter.WriteSource source) {
+        TestSubscriber<WriteProgress> subscriber = DocumentWriter.overwrite(context, DOCUMENT_URI, source).test();
+        assertTrue(subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        return subscriber;
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> names() {
+        List<String> names = new ArrayList<>();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                names.add(child.getName());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> list(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+
+    private static Uri childUri(String name) {
+        return DocumentsContract.buildDocumentUriUsingTree(FOLDER_URI, ROOT_ID + "/" + name);
+    }
+
+    /**
+     * файл документа: "root" - папка, "root/имя" - файл дерева, id отдельного документа - имя файла
+     */
+    private static File file(String documentId) {
+        if (ROOT_ID.equals(documentId)) {
+            return folder;
+        }
+        return new File(folder, documentId.startsWith(ROOT_ID + "/")
+                ? documentId.substring(ROOT_ID.length() + 1) : documentId);
+    }
+
+    /**
+     * провайдер дерева над папкой кэша: содержимое и свойства документов, создание, переименование
+     * и удаление через call (все вызовы записываются). переименование поддерживается,
+     * пока renameSupported, переименование в failRenameTo один раз падает
+     */
+    public static class TestProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            return ParcelFileDescriptor.open(file(DocumentsContract.getDocumentId(uri)),
+                    ParcelFileDescriptor.parseMode(mode));
+        }
+
+        @Override
+        public Bundle call(String method, String arg, Bundle extras) {
+            calls.add(method);
+            Uri uri = extras.getParcelable(EXTRA_URI);
+            File target = file(DocumentsContract.getDocumentId(uri));
+            Bundle out = new Bundle();
+            switch (method) {
+                case METHOD_CREATE_DOCUMENT: {
+                    String name = extras.getString(Document.COLUMN_DISPLAY_NAME);
+                    try {
+                        if (!new File(target, name).createNewFile()) {
+                            throw new IllegalStateException(name + " already exists");
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    out.putParcelable(EXTRA_URI, childUri(name));
+                    break;
+                }
+                case METHOD_RENAME_DOCUMENT: {
+                    String name = extras.getString(Document.COLUMN_DISPLAY_NAME);
+                    if (name.equals(failRenameTo)) {
+                        failRenameTo = null;
+                        throw new IllegalStateException("Can't rename to " + name);
+                    }
+                    File renamed = new File(folder, name);
+                    if (renamed.exists() || !target.renameTo(renamed)) {
+                        throw new IllegalStateException("Can't rename " + target + " to " + name);
+                    }
+                    out.putParcelable(EXTRA_URI, childUri(name));
+                    break;
+                }
+                case METHOD_DELETE_DOCUMENT:
+                    if (target.exists() && !target.delete()) {
+                        throw new IllegalStateException("Can't delete " + target);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+            folderVersion++;
+            return out;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+            if ("children".equals(uri.getLastPathSegment())) {
+                File[] files = folder.listFiles();
+                if (files != null) {
+                    for (File child : files) {
+                        addRow(cursor, ROOT_ID + "/" + child.getName(), child);
+                    }
+                }
+                return cursor;
+            }
+            String documentId = DocumentsContract.getDocumentId(uri);
+            File document = file(documentId);
+            if (document.exists()) {
+                addRow(cursor, documentId, document);
+            }
+            return cursor;
+        }
+
+        private static void addRow(MatrixCursor cursor, String documentId, File document) {
+            boolean directory = document.isDirectory();
+            int flags = Document.FLAG_SUPPORTS_WRITE | Document.FLAG_SUPPORTS_DELETE
+                    | (renameSupported ? Document.FLAG_SUPPORTS_RENAME : 0);
+            cursor.addRow(new Object[]{documentId, document.getName(),
+                    directory ? Document.MIME_TYPE_DIR : "text/csv", document.length(),
+                    directory ? folderVersion : document.lastModified(), flags});
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return "text/csv";
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * содержимое папки читается одним запросом дочерних документов с проекцией PROJECTION,
+ * колонки курсора переходят в DocumentEntry, строки без id документа пропускаются
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DocumentsContractListerTest {
+
+    private static final String AUTHORITY = "com.tiromansev.filedialog.test.lister";
+    private static final String ROOT_ID = "root";
+    private static final String SUB_ID = "root/sub";
+    private static final Uri TREE_URI = DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID);
+
+    private static final List<Uri> queries = new ArrayList<>();
+    private static final List<String[]> projections = new ArrayList<>();
+
+    private Context context;
+    private DocumentsContractLister lister;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        Robolectric.setupContentProvider(TestProvider.class, AUTHORITY);
+        ChildNameIndexTest.registerDocumentsProvider(context, AUTHORITY);
+        queries.clear();
+        projections.clear();
+        lister = new DocumentsContractLister();
+    }
+
+    @Test
+    public void folderIsListedWithOneQuery() throws Exception {
+        List<DocumentEntry> entries = list(TREE_URI);
+
+        assertEquals(1, queries.size());
+        assertEquals(DocumentsContract.buildChildDocumentsUriUsingTree(TREE_URI, ROOT_ID), queries.get(0));
+        assertArrayEquals(DocumentUtils.PROJECTION, projections.get(0));
+        assertEquals(3, entries.size());
+
+        DocumentEntry report = entries.get(0);
+        assertEquals(ROOT_ID + "/report.csv", report.getDocumentId());
+        assertEquals("report.csv", report.getName());
+        assertEquals("text/csv", report.getMimeType());
+        assertEquals(42L, report.getSize());
+        assertEquals(1000L, report.getLastModified());
+        assertEquals(Document.FLAG_SUPPORTS_WRITE | Document.FLAG_SUPPORTS_RENAME, report.getFlags());
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(TREE_URI, ROOT_ID + "/report.csv"), report.getUri());
+        assertTrue(report.isFile());
+
+        DocumentEntry sub = entries.get(1);
+        assertEquals("sub", sub.getName());
+        assertTrue(sub.isDirectory());
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(TREE_URI, SUB_ID), sub.getUri());
+
+        // a row without a size, date or flags
+        DocumentEntry bare = entries.get(2);
+        assertEquals("notes.txt", bare.getName());
+        assertEquals(0L, bare.getSize());
+        assertEquals(0L, bare.getLastModified());
+        assertEquals(0, bare.getFlags());
+    }
+
+    @Test
+    public void subfolderIsListedByItsDocumentUri() throws Exception {
+        Uri subUri = DocumentsContract.buildDocumentUriUsingTree(TREE_URI, SUB_ID);
+
+        List<DocumentEntry> entries = list(subUri);
+
+        assertEquals(1, queries.size());
+        assertEquals(DocumentsContract.buildChildDocumentsUriUsingTree(TREE_URI, SUB_ID), queries.get(0));
+        assertEquals(1, entries.size());
+        assertEquals("photo.jpg", entries.get(0).getName());
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(TREE_URI, SUB_ID + "/photo.jpg"),
+                entries.get(0).getUri());
+    }
+
+    @Test
+    public void consumerStopsListing() throws Exception {
+        List<DocumentEntry> entries = new ArrayList<>();
+
+        lister.listFiles(context, TREE_URI, entry -> {
+            entries.add(entry);
+            return false;
+        });
+
+        assertEquals(1, entries.size());
+        assertEquals(1, queries.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingFolderIsReported() throws Exception {
+        list(DocumentsContract.buildDocumentUriUsingTree(TREE_URI, ROOT_ID + "/missing"));
+    }
+
+    private List<DocumentEntry> list(Uri folderUri) throws Exception {
+        List<DocumentEntry> entries = new ArrayList<>();
+        lister.listFiles(context, folderUri, entry -> {
+            entries.add(entry);
+            return true;
+        });
+        return entries;
+    }
+
+    /**
+     * провайдер двух папок: в корне файл, папка, файл без части колонок и строка без id,
+     * в подпапке один файл. запросы записываются вместе с проекцией, для неизвестной папки
+     * курсора нет
+     */
+    public static class TestProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            queries.add(uri);
+            projections.add(projection);
+            if (!"children".equals(uri.getLastPathSegment())) {
+                return null;
+            }
+            String folderId = DocumentsContract.getDocumentId(uri);
+            MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+            if (ROOT_ID.equals(folderId)) {
+                cursor.addRow(new Object[]{ROOT_ID + "/report.csv", "report.csv", "text/csv", 42L, 1000L,
+                        Document.FLAG_SUPPORTS_WRITE | Document.FLAG_SUPPORTS_RENAME});
+                cursor.addRow(new Object[]{SUB_ID, "sub", Document.MIME_TYPE_DIR, null, 2000L, 0});
+                cursor.addRow(new Object[]{ROOT_ID + "/notes.txt", "notes.txt", "text/plain", null, null, null});
+                cursor.addRow(new Object[]{null, "lost.txt", "text/plain", 1L, 1L, 0});
+                return cursor;
+            }
+            if (SUB_ID.equals(folderId)) {
+                cursor.addRow(new Object[]{SUB_ID + "/photo.jpg", "photo.jpg", "image/jpeg", 10L, 3000L, 0});
+                return cursor;
+            }
+            return null;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
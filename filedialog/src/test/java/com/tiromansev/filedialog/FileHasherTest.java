@@ -0,0 +1,214 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.*;
+
+/**
+ * контрольные суммы FileHasher на известных значениях и на файле больше буфера чтения,
+ * CRC32 через копирование порциями до API 26, отписка до начала чтения
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FileHasherTest {
+
+    private static final String AUTHORITY = "com.tiromansev.filedialog.test.hashes";
+
+    private static File folder;
+    private static CountDownLatch opening;
+    private static CountDownLatch opened;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        Robolectric.setupContentProvider(TestProvider.class, AUTHORITY);
+        folder = context.getCacheDir();
+        opening = null;
+        opened = null;
+    }
+
+    @Test
+    public void knownVectors() throws Exception {
+        HashProgress abc = hash(file("abc.txt", "abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", abc.getSha256Hex());
+        assertEquals(0x352441c2L, abc.getCrc32());
+        assertEquals(3, abc.getBytesRead());
+        assertEquals(100, abc.getPercent());
+
+        HashProgress digits = hash(file("digits.txt", "123456789".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0xcbf43926L, digits.getCrc32());
+
+        HashProgress empty = hash(file("empty.txt", new byte[0]));
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", empty.getSha256Hex());
+        assertEquals(0, empty.getCrc32());
+    }
+
+    @Test
+    public void largeFileMatchesDigest() throws Exception {
+        byte[] data = data(FileHasher.BUFFER_SIZE * 3 + 123);
+
+        HashProgress result = hash(file("large.bin", data));
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), result.getSha256());
+        assertEquals(crc(data), result.getCrc32());
+        assertEquals(data.length, result.getBytesRead());
+        assertEquals(data.length, result.getTotalBytes());
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.N_MR1)
+    public void crcIsCopiedBeforeApi26() throws Exception {
+        byte[] data = data(FileHasher.BUFFER_SIZE + 8 * 1024 + 7);
+
+        HashProgress result = hash(file("legacy.bin", data));
+
+        assertEquals(crc(data), result.getCrc32());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), result.getSha256());
+    }
+
+    @Test
+    public void chunkedCrcMatchesBufferCrc() {
+        byte[] data = data(100_000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+
+        CRC32 chunked = new CRC32();
+        FileHasher.update(chunked, buffer, new byte[8 * 1024]);
+
+        assertEquals(crc(data), chunked.getValue());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void disposeStopsHashing() throws Exception {
+        Uri uri = file("cancelled.bin", data(FileHasher.BUFFER_SIZE * 4));
+        opening = new CountDownLatch(1);
+        opened = new CountDownLatch(1);
+        TestSubscriber<HashProgress> subscriber = FileHasher.hash(context, uri).test();
+        assertTrue(opening.await(5, TimeUnit.SECONDS));
+
+        subscriber.dispose();
+        opened.countDown();
+
+        // the channel is closed before the first read, nothing is emitted after the dispose
+        assertFalse(subscriber.awaitTerminalEvent(500, TimeUnit.MILLISECONDS));
+        subscriber.assertNoValues();
+        subscriber.assertNoErrors();
+    }
+
+    @Test
+    public void missingFileFails() {
+        TestSubscriber<HashProgress> subscriber = FileHasher.hash(context,
+                Uri.parse("content://" + AUTHORITY + "/document/missing.bin")).test();
+
+        assertTrue(subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        subscriber.assertError(FileNotFoundException.class);
+    }
+
+    private HashProgress hash(Uri uri) {
+        TestSubscriber<HashProgress> subscriber = FileHasher.hash(context, uri).test();
+        assertTrue(subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        subscriber.assertComplete();
+        HashProgress last = subscriber.values().get(subscriber.valueCount() - 1);
+        assertTrue(last.isComplete());
+        return last;
+    }
+
+    private static Uri file(String name, byte[] data) throws IOException {
+        Files.write(new File(folder, name).toPath(), data);
+        return Uri.parse("content://" + AUTHORITY + "/document/" + name);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * провайдер файлов папки кэша. пока задан opening, открытие файла ждет opened,
+     * чтобы тест успел отписаться до начала чтения
+     */
+    public static class TestProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            if (opening != null) {
+                opening.countDown();
+                try {
+                    opened.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ParcelFileDescriptor.open(new File(folder, uri.getLastPathSegment()),
+                    ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            return null;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * высота списка ограничена долей экрана даже при измерении без ограничения, так что holder
+ * создаются только для видимых строк; prefetch за краем списка только во время прокрутки
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FileListViewTest {
+
+    private static final int ROW_HEIGHT = 40;
+    private static final int WIDTH = 320;
+
+    private Context context;
+    private FileListView listView;
+    private FileListView.PrefetchLayoutManager layoutManager;
+    private RowAdapter adapter;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        listView = new FileListView(context);
+        layoutManager = new FileListView.PrefetchLayoutManager(context);
+        listView.setLayoutManager(layoutManager);
+        adapter = new RowAdapter();
+        listView.setAdapter(adapter);
+    }
+
+    @Test
+    public void unspecifiedHeightIsBounded() {
+        adapter.count = 1000;
+
+        layout(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+
+        int maxHeight = listView.getMaxHeight();
+        assertTrue(maxHeight > 0);
+        assertEquals(maxHeight, listView.getMeasuredHeight());
+        assertTrue(listView.getChildCount() <= maxHeight / ROW_HEIGHT + 2);
+        assertTrue(adapter.created < 100);
+    }
+
+    @Test
+    public void largerLimitIsClamped() {
+        adapter.count = 1000;
+        int maxHeight = listView.getMaxHeight();
+
+        layout(MeasureSpec.makeMeasureSpec(maxHeight * 3, MeasureSpec.AT_MOST));
+        assertEquals(maxHeight, listView.getMeasuredHeight());
+
+        layout(MeasureSpec.makeMeasureSpec(maxHeight * 3, MeasureSpec.EXACTLY));
+        assertEquals(maxHeight, listView.getMeasuredHeight());
+    }
+
+    @Test
+    public void shortListWrapsContent() {
+        adapter.count = 2;
+
+        layout(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+
+        assertEquals(2 * ROW_HEIGHT, listView.getMeasuredHeight());
+        assertEquals(2, listView.getChildCount());
+    }
+
+    @Test
+    public void maxHeightFollowsFraction() {
+        listView.setMaxHeightFraction(0.25f);
+
+        assertEquals((int) (context.getResources().getDisplayMetrics().heightPixels * 0.25f), listView.getMaxHeight());
+    }
+
+    @Test
+    public void prefetchOnlyWhileScrolling() {
+        adapter.count = 1000;
+        layout(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        int[] extra = new int[2];
+
+        layoutManager.calculateExtraLayoutSpace(new RecyclerView.State(), extra);
+        assertEquals(0, extra[0]);
+        assertEquals(0, extra[1]);
+
+        layoutManager.onScrollStateChanged(RecyclerView.SCROLL_STATE_DRAGGING);
+        layoutManager.calculateExtraLayoutSpace(new RecyclerView.State(), extra);
+        assertEquals(ROW_HEIGHT * FileListView.PrefetchLayoutManager.PREFETCH_ROWS, extra[0]);
+        assertEquals(ROW_HEIGHT * FileListView.PrefetchLayoutManager.PREFETCH_ROWS, extra[1]);
+
+        layoutManager.onScrollStateChanged(RecyclerView.SCROLL_STATE_IDLE);
+        extra[0] = 0;
+        extra[1] = 0;
+        layoutManager.calculateExtraLayoutSpace(new RecyclerView.State(), extra);
+        assertEquals(0, extra[0]);
+    }
+
+    private void layout(int heightSpec) {
+        listView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY), heightSpec);
+        listView.layout(0, 0, listView.getMeasuredWidth(), listView.getMeasuredHeight());
+    }
+
+    private static class RowAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private int count;
+        private int created;
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            created++;
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return count;
+        }
+    }
+}
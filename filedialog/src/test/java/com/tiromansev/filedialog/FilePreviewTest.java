@@ -0,0 +1,134 @@
+package com.tiromansev.filedialog;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * разбор строк csv, выбор разделителя, распознавание двоичных файлов и шестнадцатеричный дамп превью
+ */
+public class FilePreviewTest {
+
+    @Test
+    public void splitsPlainCells() {
+        assertEquals(Arrays.asList("a", "b", "c"), FilePreview.splitCsv("a,b,c", ','));
+        assertEquals(Arrays.asList("a", "", "c", ""), FilePreview.splitCsv("a,,c,", ','));
+        assertEquals(Collections.singletonList(""), FilePreview.splitCsv("", ','));
+        assertEquals(Arrays.asList("a,b", "c"), FilePreview.splitCsv("a,b;c", ';'));
+    }
+
+    @Test
+    public void quotedCellsKeepDelimitersAndQuotes() {
+        assertEquals(Arrays.asList("a,b", "c"), FilePreview.splitCsv("\"a,b\",c", ','));
+        assertEquals(Arrays.asList("say \"hi\"", "x"), FilePreview.splitCsv("\"say \"\"hi\"\"\",x", ','));
+        assertEquals(Arrays.asList("", "x"), FilePreview.splitCsv("\"\",x", ','));
+        // an unterminated quote runs to the end of the line
+        assertEquals(Collections.singletonList("a,b"), FilePreview.splitCsv("\"a,b", ','));
+    }
+
+    @Test
+    public void detectsDelimiter() {
+        assertEquals(',', FilePreview.detectDelimiter("id,name,price"));
+        assertEquals(';', FilePreview.detectDelimiter("id;name;price"));
+        assertEquals('\t', FilePreview.detectDelimiter("id\tname\tprice"));
+        assertEquals(';', FilePreview.detectDelimiter("id;\"name, full\";price"));
+        assertEquals(',', FilePreview.detectDelimiter("single"));
+        assertEquals(',', FilePreview.detectDelimiter(""));
+    }
+
+    @Test
+    public void csvPreviewAlignsCells() {
+        FilePreview preview = FilePreview.text(Arrays.asList("id;name", "1;\"a very long product name\""), true);
+
+        assertEquals(FilePreview.TYPE_CSV, preview.getType());
+        assertEquals(2, preview.getColumns());
+        assertEquals("id | name\n1 | a very long p…", preview.getText());
+    }
+
+    @Test
+    public void csvPreviewIsLimitedToMaxRows() {
+        String[] lines = new String[FilePreview.MAX_CSV_ROWS + 5];
+        Arrays.fill(lines, "a,b");
+
+        FilePreview preview = FilePreview.text(Arrays.asList(lines), true);
+
+        assertEquals(FilePreview.MAX_CSV_ROWS, preview.getText().split("\n").length);
+    }
+
+    @Test
+    public void textPreviewJoinsLines() {
+        FilePreview preview = FilePreview.text(Arrays.asList("first", "second"), false);
+
+        assertEquals(FilePreview.TYPE_TEXT, preview.getType());
+        assertEquals("first\nsecond", preview.getText());
+    }
+
+    @Test
+    public void recognizesBinaryData() {
+        byte[] text = "plain text\nwith lines\t\r\n".getBytes(StandardCharsets.UTF_8);
+        assertNull(FilePreview.binary(text, text.length));
+
+        byte[] zip = {'P', 'K', 3, 4, 20, 0, 0, 0};
+        assertEquals(FilePreview.TYPE_ZIP, FilePreview.binary(zip, zip.length).getType());
+
+        byte[] zeros = {'a', 0, 'b'};
+        FilePreview binary = FilePreview.binary(zeros, zeros.length);
+        assertEquals(FilePreview.TYPE_BINARY, binary.getType());
+        assertEquals("0000  61 00 62 " + repeat("   ", 13) + " a.b", binary.getText());
+    }
+
+    @Test
+    public void controlCharactersMarkBinaryData() {
+        byte[] text = "a\u0001bcdefghijklmnopqrs".getBytes(StandardCharsets.US_ASCII);
+        assertNull(FilePreview.binary(text, text.length));
+
+        byte[] control = {'a', 1, 2, 3, 'b'};
+        assertEquals(FilePreview.TYPE_BINARY, FilePreview.binary(control, control.length).getType());
+    }
+
+    @Test
+    public void hexDumpIsLimited() {
+        byte[] data = new byte[FilePreview.HEX_BYTES + 40];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        String[] lines = FilePreview.binary(data, data.length).getText().split("\n");
+
+        assertEquals(FilePreview.HEX_BYTES / 16, lines.length);
+        assertTrue(lines[1].startsWith("0010  10 11 12 "));
+        assertTrue(lines[lines.length - 1].startsWith("0070  70 71 "));
+        assertTrue(lines[7].endsWith(" pqrstuvwxyz{|}~."));
+    }
+
+    @Test
+    public void readsSqliteHeader() {
+        byte[] header = new byte[100];
+        byte[] magic = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 0, magic.length);
+        header[16] = 0x10;
+        header[31] = 7;
+
+        FilePreview preview = FilePreview.binary(header, header.length);
+
+        assertEquals(FilePreview.TYPE_SQLITE, preview.getType());
+        assertEquals(4096, preview.getPageSize());
+        assertEquals(7, preview.getPageCount());
+
+        header[16] = 0;
+        header[17] = 1;
+        assertEquals(65536, FilePreview.binary(header, header.length).getPageSize());
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
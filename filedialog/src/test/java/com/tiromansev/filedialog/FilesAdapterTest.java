@@ -0,0 +1,268 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.net.Uri;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * порции читаемой папки встают на свои места без расчета разницы: адаптер получает только вставки,
+ * а итоговый список совпадает с устойчивой сортировкой всей папки. список, замененный без разницы,
+ * сохраняет первую видимую строку. привязка строк не читает цвета темы и не создает слушателей
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FilesAdapterTest {
+
+    private static final Comparator<RowItem> COMPARATOR =
+            RowComparators.foldersFirst(RowComparators.get(IFileDialog.SORT_BY_NAME));
+
+    private PaletteContext context;
+    private FilesAdapter adapter;
+    private ChangeCounter changes;
+
+    @Before
+    public void setUp() {
+        context = new PaletteContext(RuntimeEnvironment.getApplication());
+        adapter = new FilesAdapter(context, null);
+        changes = new ChangeCounter();
+        adapter.registerAdapterDataObserver(changes);
+    }
+
+    @Test
+    public void mergeKeepsEarlierRowsFirst() {
+        ArrayList<RowItem> items = new ArrayList<>(rows("a", "c", "e", "c"));
+        Collections.sort(items, COMPARATOR);
+        List<RowItem> batch = rows("f", "c", "b");
+        Collections.sort(batch, COMPARATOR);
+
+        int[] positions = FilesAdapter.merge(items, batch, COMPARATOR);
+
+        assertEquals(list("a", "b", "c", "c", "c", "e", "f"), titles(items));
+        assertArrayEquals(new int[]{1, 4, 6}, positions);
+        assertSame(batch.get(1), items.get(4));
+    }
+
+    @Test
+    public void batchesMatchSortedListing() {
+        List<RowItem> listing = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            // duplicate titles check that equal rows keep the provider order
+            listing.add(row("file" + random.nextInt(400) + ".csv", random.nextInt(10) == 0));
+        }
+
+        for (int from = 0; from < listing.size(); from += FileManager.BATCH_SIZE) {
+            adapter.appendItems(listing.subList(from, Math.min(from + FileManager.BATCH_SIZE, listing.size())),
+                    COMPARATOR);
+        }
+
+        List<RowItem> sorted = new ArrayList<>(listing);
+        Collections.sort(sorted, COMPARATOR);
+        assertEquals(sorted.size(), adapter.getItemCount());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertSame(sorted.get(i), adapter.getCurrentList().get(i));
+        }
+        assertEquals(listing.size(), changes.inserted);
+        assertEquals(0, changes.other);
+    }
+
+    @Test
+    public void unsortedBatchesAreAppended() {
+        adapter.appendItems(rows("b", "a"), null);
+        adapter.appendItems(rows("c"), null);
+
+        assertEquals(list("b", "a", "c"), titles(adapter.getCurrentList()));
+        assertEquals(3, changes.inserted);
+    }
+
+    @Test
+    public void listIsHandedToDifferAfterAppending() {
+        adapter.appendItems(rows("b", "a"), COMPARATOR);
+        adapter.finishAppending();
+
+        assertEquals(list("a", "b"), titles(adapter.getCurrentList()));
+        assertEquals(2, adapter.getItemCount());
+        // the rows were already on screen, the hand-over is not an update
+        assertEquals(2, changes.inserted);
+        assertEquals(0, changes.other);
+
+        adapter.resetItems(rows("c"));
+        assertEquals(list("c"), titles(adapter.getCurrentList()));
+    }
+
+    @Test
+    public void replacedListKeepsFirstVisibleRow() {
+        RecyclerView listView = new RecyclerView(context);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(context);
+        listView.setLayoutManager(layoutManager);
+        listView.setAdapter(adapter);
+        List<RowItem> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            items.add(row(String.format("file%04d.csv", i), false));
+        }
+        adapter.resetItems(items);
+        layout(listView);
+        layoutManager.scrollToPositionWithOffset(1500, 0);
+        layout(listView);
+        long anchorId = adapter.getItemId(layoutManager.findFirstVisibleItemPosition());
+
+        List<RowItem> reversed = new ArrayList<>(items);
+        Collections.reverse(reversed);
+        FilesAdapter.ListUpdate update = FilesAdapter.calculateUpdate(adapter.getCurrentList(), reversed);
+        assertFalse(update.hasDiff());
+        adapter.showItems(update);
+        layout(listView);
+
+        assertEquals(1499, layoutManager.findFirstVisibleItemPosition());
+        assertEquals(anchorId, adapter.getItemId(layoutManager.findFirstVisibleItemPosition()));
+    }
+
+    @Test
+    public void bindingThousandRowsReusesPaletteAndListeners() {
+        // the palette reads its four colors once, in the adapter constructor
+        assertEquals(4, context.colorReads);
+        List<RowItem> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(row("file" + i + ".csv", i % 50 == 0));
+        }
+        adapter.resetItems(items);
+        RecyclerView listView = new RecyclerView(context);
+        listView.setLayoutManager(new LinearLayoutManager(context));
+        FilesViewHolder[] holders = new FilesViewHolder[12];
+        View.OnClickListener[] listeners = new View.OnClickListener[holders.length];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = adapter.onCreateViewHolder(listView, 0);
+            listeners[i] = shadowOf(holders[i].rlDirItem).getOnClickListener();
+            assertNotNull(listeners[i]);
+        }
+
+        long start = System.nanoTime();
+        for (int position = 0; position < items.size(); position++) {
+            adapter.onBindViewHolder(holders[position % holders.length], position);
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf(Locale.ROOT, "FilesAdapter bind of 1000 rows: %.1f ms%n", nanos / 1e6);
+        assertEquals(4, context.colorReads);
+        for (int i = 0; i < holders.length; i++) {
+            assertSame(listeners[i], shadowOf(holders[i].rlDirItem).getOnClickListener());
+        }
+        assertEquals(items.get(items.size() - 1).getTitle(),
+                holders[(items.size() - 1) % holders.length].txtTitle.getText().toString());
+    }
+
+    private static void layout(RecyclerView listView) {
+        listView.measure(MeasureSpec.makeMeasureSpec(320, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(480, MeasureSpec.EXACTLY));
+        listView.layout(0, 0, 320, 480);
+    }
+
+    static List<RowItem> rows(String... titles) {
+        List<RowItem> rows = new ArrayList<>();
+        for (String title : titles) {
+            rows.add(row(title, false));
+        }
+        return rows;
+    }
+
+    private static RowItem row(String title, boolean directory) {
+        return new RowItem(0, title, 1, 1, Uri.parse("content://test/document/" + Uri.encode(title)), true,
+                directory);
+    }
+
+    private static List<String> titles(List<RowItem> items) {
+        List<String> titles = new ArrayList<>();
+        for (RowItem item : items) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static class ChangeCounter extends RecyclerView.AdapterDataObserver {
+        private int inserted;
+        private int other;
+
+        @Override
+        public void onChanged() {
+            other++;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            other++;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            other++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            other++;
+        }
+    }
+
+    /**
+     * тема библиотеки атрибуты цветов строк только объявляет, цвета отдаются здесь
+     * с подсчетом чтений
+     */
+    static class PaletteContext extends ContextWrapper {
+        private final Resources resources;
+        int colorReads;
+
+        PaletteContext(Context base) {
+            super(base);
+            Resources baseResources = base.getResources();
+            resources = new Resources(baseResources.getAssets(), baseResources.getDisplayMetrics(),
+                    baseResources.getConfiguration()) {
+                @Override
+                @SuppressWarnings("deprecation")
+                public int getColor(int id) {
+                    colorReads++;
+                    return id == 0 ? Color.GRAY : super.getColor(id);
+                }
+            };
+        }
+
+        @Override
+        public Resources getResources() {
+            return resources;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tiromansev.filedialog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * естественное сравнение имен и ключ сортировки без учета регистра
+ */
+public class RowComparatorsTest {
+
+    @Test
+    public void numbersCompareByValue() {
+        assertTrue(RowComparators.compareNatural("file2", "file10") < 0);
+        assertTrue(RowComparators.compareNatural("file10", "file2") > 0);
+        assertTrue(RowComparators.compareNatural("img9.png", "img10.png") < 0);
+        assertTrue(RowComparators.compareNatural("v1.9", "v1.10") < 0);
+        assertEquals(0, RowComparators.compareNatural("file10", "file10"));
+    }
+
+    @Test
+    public void leadingZerosAreNotSignificant() {
+        assertTrue(RowComparators.compareNatural("file007", "file10") < 0);
+        assertTrue(RowComparators.compareNatural("file0", "file1") < 0);
+        assertTrue(RowComparators.compareNatural("file000", "file1") < 0);
+        // equal numbers are still ordered, so the sort is deterministic
+        assertTrue(RowComparators.compareNatural("file01", "file1") != 0);
+        assertEquals(-Integer.signum(RowComparators.compareNatural("file1", "file01")),
+                Integer.signum(RowComparators.compareNatural("file01", "file1")));
+    }
+
+    @Test
+    public void longNumbersDoNotOverflow() {
+        assertTrue(RowComparators.compareNatural("a99999999999999999999", "a100000000000000000000") < 0);
+        assertTrue(RowComparators.compareNatural("a18446744073709551617", "a18446744073709551616") > 0);
+    }
+
+    @Test
+    public void textAndPrefixes() {
+        assertTrue(RowComparators.compareNatural("abc", "abd") < 0);
+        assertTrue(RowComparators.compareNatural("file", "file1") < 0);
+        assertTrue(RowComparators.compareNatural("file1", "file1a") < 0);
+        assertTrue(RowComparators.compareNatural("", "a") < 0);
+        assertEquals(0, RowComparators.compareNatural("", ""));
+    }
+
+    @Test
+    public void sortsFileNamesNaturally() {
+        List<String> names = new ArrayList<>(Arrays.asList("file10.txt", "file2.txt", "file1.txt",
+                "file01.txt", "file.txt", "file20b.txt", "file20a.txt", "file3.txt"));
+        names.sort(RowComparators::compareNatural);
+
+        assertEquals(Arrays.asList("file.txt", "file01.txt", "file1.txt", "file2.txt", "file3.txt",
+                "file10.txt", "file20a.txt", "file20b.txt"), names);
+    }
+
+    @Test
+    public void orderIsTransitive() {
+        String[] names = {"a", "a0", "a00", "a1", "a01", "a001", "a2", "a10", "a010", "a1b", "a1a", "b", "a-1",
+                "a 1", "10", "9", "09", "009a", ""};
+        for (String a : names) {
+            for (String b : names) {
+                int ab = Integer.signum(RowComparators.compareNatural(a, b));
+                assertEquals(a + " " + b, -ab, Integer.signum(RowComparators.compareNatural(b, a)));
+                for (String c : names) {
+                    if (ab <= 0 && RowComparators.compareNatural(b, c) <= 0) {
+                        assertTrue(a + " " + b + " " + c, RowComparators.compareNatural(a, c) <= 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void foldCaseKeepsCompareToIgnoreCaseOrder() {
+        String[] names = {"Report", "report", "REPORT2", "Äpfel", "apfel", "Zebra", "яблоко", "Яблоко", "ёж",
+                "Ёлка", "ǅ", "ǆ", "Σίσυφος", "σίσυφος", "ß", "ss", "_a", "a_", ""};
+        for (String left : names) {
+            for (String right : names) {
+                assertEquals(left + " " + right, Integer.signum(left.compareToIgnoreCase(right)),
+                        Integer.signum(RowComparators.foldCase(left).compareTo(RowComparators.foldCase(right))));
+            }
+        }
+    }
+
+    @Test
+    public void foldCaseReturnsSameInstanceWhenNothingChanges() {
+        String title = "already lower 123";
+        assertSame(title, RowComparators.foldCase(title));
+        assertEquals("", RowComparators.foldCase(null));
+        assertEquals("mixed case", RowComparators.foldCase("MiXeD CaSe"));
+    }
+}
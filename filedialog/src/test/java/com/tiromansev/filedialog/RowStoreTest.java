@@ -0,0 +1,137 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * сортировка RowStore по колонкам на 10k и 100k строк: порядок совпадает с сортировкой строк
+ * теми же сортировщиками, время сравнивается с прежней сортировкой через compareToIgnoreCase.
+ * память 100k строк в колонках сравнивается со списком готовых RowItem с uri
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class RowStoreTest {
+
+    private static final Uri FOLDER_URI = Uri.parse("content://com.android.externalstorage.documents/tree/"
+            + "primary%3ABackup/document/primary%3ABackup");
+    private static final String ID_PREFIX = "primary:Backup/";
+    private static final int[] SORT_MODES = {IFileDialog.SORT_BY_NAME, IFileDialog.SORT_NATURAL,
+            IFileDialog.SORT_BY_DATE, IFileDialog.SORT_BY_SIZE};
+
+    @Test
+    public void columnSortMatchesRowSort() {
+        RowStore store = store(2000);
+
+        for (int sortMode : SORT_MODES) {
+            Comparator<RowItem> comparator = RowComparators.foldersFirst(RowComparators.get(sortMode));
+            List<RowItem> expected = new ArrayList<>(store);
+            Collections.sort(expected, comparator);
+
+            RowStore sorted = store.sortedBy(comparator);
+
+            assertEquals(expected.size(), sorted.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("sort mode " + sortMode + ", row " + i, expected.get(i).getStableId(),
+                        sorted.getStableId(i));
+            }
+        }
+    }
+
+    @Test
+    public void sortBenchmark() {
+        for (int count : new int[]{10_000, 100_000}) {
+            RowStore store = store(count);
+            List<RowItem> rows = new ArrayList<>(store);
+            for (RowItem row : rows) {
+                row.getTitle();
+            }
+
+            long baselineNanos = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                // the former FileManager sort: case folding in every comparison and a copy of the result
+                List<RowItem> files = new ArrayList<>(rows);
+                Collections.sort(files, (left, right) -> left.getTitle().compareToIgnoreCase(right.getTitle()));
+                files = new ArrayList<>(files);
+                baselineNanos = Math.min(baselineNanos, System.nanoTime() - start);
+                assertEquals(count, files.size());
+            }
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.ROOT, "RowStore sort of %d rows: compareToIgnoreCase %.1f ms",
+                    count, baselineNanos / 1e6));
+            for (int sortMode : SORT_MODES) {
+                Comparator<RowItem> comparator = RowComparators.foldersFirst(RowComparators.get(sortMode));
+                long nanos = Long.MAX_VALUE;
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    RowStore sorted = store.sortedBy(comparator);
+                    nanos = Math.min(nanos, System.nanoTime() - start);
+                    assertEquals(count, sorted.size());
+                }
+                report.append(String.format(Locale.ROOT, ", mode %d %.1f ms", sortMode, nanos / 1e6));
+            }
+            System.out.println(report);
+        }
+    }
+
+    @Test
+    public void memoryPer100kRows() {
+        int count = 100_000;
+        long before = usedMemory();
+        RowStore store = store(count);
+        long storeBytes = usedMemory() - before;
+
+        before = usedMemory();
+        // the former representation: a RowItem with a title and a Uri object per row
+        List<RowItem> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RowItem row = store.get(i);
+            rows.add(new RowItem(row.getImageId(), row.getTitle(), row.getSize(), row.getLastModified(),
+                    row.getUri(), true, row.isDirectory()));
+        }
+        long rowsBytes = usedMemory() - before;
+
+        System.out.printf(Locale.ROOT, "100k rows: RowStore %d KB measured, %d KB estimated; RowItem list %d KB%n",
+                storeBytes / 1024, store.getMemoryBytes() / 1024, rowsBytes / 1024);
+        assertTrue(store.getMemoryBytes() < count * 200L);
+        assertTrue(storeBytes * 2 < rowsBytes);
+        assertEquals(rows.size(), store.size());
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * имена с числами разной длины, регистром и кириллицей; каждая двадцатая строка - папка
+     */
+    static RowStore store(int count) {
+        Random random = new Random(count);
+        String[] prefixes = {"Report ", "report ", "Backup-", "Отчет ", "IMG", "data."};
+        RowStore.Builder builder = new RowStore.Builder(FOLDER_URI, ID_PREFIX);
+        for (int i = 0; i < count; i++) {
+            String name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(count * 10)
+                    + (i % 20 == 0 ? "" : ".bp");
+            builder.add(0, name, random.nextInt(1 << 20), 1_600_000_000_000L + random.nextInt(1 << 30),
+                    ID_PREFIX + name + "#" + i, true, i % 20 == 0, false);
+        }
+        return builder.build();
+    }
+}
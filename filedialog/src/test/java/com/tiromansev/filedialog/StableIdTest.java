@@ -0,0 +1,177 @@
+package com.tiromansev.filedialog;
+
+import android.net.Uri;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * стабильный id строки: FNV-1a хэш uri документа, id строк RowStore по колонкам совпадает
+ * с хэшем построенного uri, в том числе для id документов с кодируемыми символами.
+ * по id же оценивается размер изменения списка: большие перестановки заменяют список без DiffUtil
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class StableIdTest {
+
+    private static final Uri FOLDER_URI = Uri.parse("content://com.android.externalstorage.documents/tree/"
+            + "primary%3ABackup/document/primary%3ABackup");
+    private static final String ID_PREFIX = "primary:Backup/";
+
+    @Test
+    public void hashIsFnv1a() {
+        assertEquals(0xcbf29ce484222325L, FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, ""));
+        assertEquals(0xaf63dc4c8601ec8cL, FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, "a"));
+        assertEquals(0x85944171f73967e8L, FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, "foobar"));
+    }
+
+    @Test
+    public void hashCanBeContinued() {
+        long prefix = FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, "content://a/");
+        assertEquals(FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, "content://a/b.csv"),
+                FilesAdapter.hash(prefix, "b.csv"));
+    }
+
+    @Test
+    public void uriIdIsHashOfUriString() {
+        Uri uri = Uri.parse("content://com.example.documents/document/42");
+
+        assertEquals(FilesAdapter.hash(FilesAdapter.FNV_OFFSET_BASIS, uri.toString()), FilesAdapter.getStableId(uri));
+        assertEquals(RecyclerView.NO_ID, FilesAdapter.getStableId((Uri) null));
+    }
+
+    @Test
+    public void storeIdsMatchRowUris() {
+        RowStore store = new RowStore.Builder(FOLDER_URI, ID_PREFIX)
+                .add(0, "report.csv", 10, 1, ID_PREFIX + "report.csv", true, false, false)
+                .add(0, "Отчет за май (итог).csv", 10, 1, ID_PREFIX + "Отчет за май (итог).csv", true, false, false)
+                .add(0, "a b+c&d=e#f?g%h.txt", 10, 1, ID_PREFIX + "a b+c&d=e#f?g%h.txt", true, false, false)
+                .add(0, "emoji 😀.txt", 10, 1, ID_PREFIX + "emoji 😀.txt", true, false, false)
+                .add(0, "photos", 0, 1, ID_PREFIX + "photos", false, true, false)
+                .add(0, "msf.csv", 10, 1, "msf:1234", true, false, false)
+                .add(0, "~unreserved_-!.'()*", 10, 1, "~unreserved_-!.'()*", true, false, false)
+                .build();
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < store.size(); i++) {
+            RowItem row = store.get(i);
+            long expected = FilesAdapter.getStableId(row.getUri());
+            assertEquals(row.getTitle(), expected, store.getStableId(i));
+            assertEquals(row.getTitle(), expected, row.getStableId());
+            ids.add(expected);
+        }
+        assertEquals(store.size(), ids.size());
+    }
+
+    @Test
+    public void rowWithoutDocumentIdHasNoId() {
+        RowStore store = new RowStore.Builder(FOLDER_URI, ID_PREFIX)
+                .add(0, "lost.csv", 10, 1, null, true, false, false)
+                .build();
+
+        assertEquals(RecyclerView.NO_ID, store.getStableId(0));
+    }
+
+    @Test
+    public void idsFollowRowsAfterSortAndFilter() {
+        RowStore store = new RowStore.Builder(FOLDER_URI, ID_PREFIX)
+                .add(0, "c.csv", 1, 3, ID_PREFIX + "c.csv", true, false, false)
+                .add(0, "a.csv", 3, 1, ID_PREFIX + "a.csv", true, false, false)
+                .add(0, "b.txt", 2, 2, ID_PREFIX + "b.txt", true, false, false)
+                .build();
+
+        RowStore sorted = store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_NAME));
+        RowStore filtered = sorted.filteredBy((name, directory) -> name.toString().endsWith(".csv"));
+
+        for (RowStore view : new RowStore[]{sorted, filtered}) {
+            for (int i = 0; i < view.size(); i++) {
+                assertEquals(FilesAdapter.getStableId(view.get(i).getUri()), view.getStableId(i));
+            }
+        }
+        assertEquals("a.csv", sorted.get(0).getTitle());
+        assertEquals(2, filtered.size());
+    }
+
+    @Test
+    public void indexOfFindsRowByUri() {
+        RowStore store = new RowStore.Builder(FOLDER_URI, ID_PREFIX)
+                .add(0, "a.csv", 1, 1, ID_PREFIX + "a.csv", true, false, false)
+                .add(0, "b.csv", 1, 1, ID_PREFIX + "b.csv", true, false, false)
+                .build();
+        List<RowItem> items = new ArrayList<>(store);
+
+        Uri uri = store.get(1).getUri();
+        assertEquals(1, FilesAdapter.indexOf(store, uri));
+        assertEquals(1, FilesAdapter.indexOf(items, uri));
+        assertEquals(-1, FilesAdapter.indexOf(store, Uri.parse("content://other/document/b.csv")));
+        assertEquals(-1, FilesAdapter.indexOf(store, null));
+    }
+
+    @Test
+    public void changesAreCountedByIds() {
+        long[] ids = {1, 2, 3, 4, 5, 6};
+
+        assertEquals(0, FilesAdapter.countChanges(ids, ids.clone()));
+        assertEquals(1, FilesAdapter.countChanges(ids, new long[]{1, 2, 9, 3, 4, 5, 6}));
+        assertEquals(2, FilesAdapter.countChanges(ids, new long[]{1, 2, 4, 5, 6}));
+        assertEquals(2, FilesAdapter.countChanges(ids, new long[]{2, 3, 4, 1, 5, 6}));
+        assertEquals(5, FilesAdapter.countChanges(ids, new long[]{6, 5, 4, 3, 2, 1}));
+        assertEquals(FilesAdapter.MAX_DIFF_CHANGES + 1,
+                FilesAdapter.countChanges(new long[0], new long[FilesAdapter.MAX_DIFF_CHANGES + 1]));
+    }
+
+    @Test
+    public void smallChangeOfLargeFolderIsDiffed() {
+        RowStore store = largeStore();
+        RowStore sorted = store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_NAME));
+        RowStore narrowed = sorted.filteredBy((name, directory) -> !name.toString().startsWith("file100"));
+
+        assertTrue(FilesAdapter.calculateUpdate(sorted, narrowed).hasDiff());
+        assertTrue(FilesAdapter.calculateUpdate(sorted, sorted).hasDiff());
+    }
+
+    @Test
+    public void permutationAndBulkChangeReplaceList() {
+        RowStore store = largeStore();
+        RowStore byName = store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_NAME));
+        RowStore bySize = store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_SIZE));
+        RowStore narrowed = byName.filteredBy((name, directory) -> name.toString().startsWith("file1"));
+
+        assertFalse(FilesAdapter.calculateUpdate(byName, bySize).hasDiff());
+        assertFalse(FilesAdapter.calculateUpdate(narrowed, byName).hasDiff());
+        assertFalse(FilesAdapter.calculateUpdate(null, byName).hasDiff());
+        assertSame(bySize, FilesAdapter.calculateUpdate(byName, bySize).getItems());
+    }
+
+    @Test
+    public void smallListIsAlwaysDiffed() {
+        RowStore.Builder builder = new RowStore.Builder(FOLDER_URI, ID_PREFIX);
+        for (int i = 0; i < FilesAdapter.MAX_DIFF_ROWS / 2; i++) {
+            builder.add(0, "file" + i + ".csv", i % 7, i, ID_PREFIX + "file" + i + ".csv", true, false, false);
+        }
+        RowStore store = builder.build();
+
+        assertTrue(FilesAdapter.calculateUpdate(store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_NAME)),
+                store.sortedBy(RowComparators.get(IFileDialog.SORT_BY_SIZE))).hasDiff());
+    }
+
+    private static RowStore largeStore() {
+        RowStore.Builder builder = new RowStore.Builder(FOLDER_URI, ID_PREFIX);
+        for (int i = 0; i < 10000; i++) {
+            builder.add(0, "file" + i + ".csv", (i * 7919) % 10000, i, ID_PREFIX + "file" + i + ".csv",
+                    true, false, false);
+        }
+        return builder.build();
+    }
+}
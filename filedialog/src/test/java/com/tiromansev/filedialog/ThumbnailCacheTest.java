@@ -0,0 +1,135 @@
+package com.tiromansev.filedialog;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * дисковый кэш миниатюр вытесняет давно не показывавшиеся файлы, пока размер каталога
+ * больше лимита в байтах. ключ миниатюры меняется вместе с датой изменения и размером документа,
+ * так что миниатюра измененного документа не берется из кэша
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ThumbnailCacheTest {
+
+    private static final Uri DOCUMENT_URI = Uri.parse("content://com.example.documents/document/photo.jpg");
+
+    private Context context;
+    private File dir;
+    private Bitmap bitmap;
+    private long bitmapBytes;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        new ThumbnailDiskCache(context, Long.MAX_VALUE).clear();
+        dir = new File(context.getCacheDir(), "file_dialog_thumbnails");
+        bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+
+        // the size of one compressed thumbnail, every test writes the same bitmap
+        ThumbnailDiskCache probe = new ThumbnailDiskCache(context, Long.MAX_VALUE);
+        probe.write("probe", bitmap);
+        bitmapBytes = file("probe").length();
+        assertTrue(bitmapBytes > 0);
+        probe.clear();
+    }
+
+    @Test
+    public void writtenThumbnailIsRead() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(context, ThumbnailDiskCache.DEFAULT_MAX_BYTES);
+
+        cache.write("a", bitmap);
+
+        assertNotNull(cache.read("a"));
+        assertNull(cache.read("b"));
+        // no temporary file is left next to the thumbnail
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void leastRecentlyShownIsTrimmed() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(context, bitmapBytes * 3 + bitmapBytes / 2);
+        cache.write("a", bitmap);
+        cache.write("b", bitmap);
+        cache.write("c", bitmap);
+        // explicit dates, files written within one millisecond can't be ordered
+        assertTrue(file("a").setLastModified(1_000_000));
+        assertTrue(file("b").setLastModified(2_000_000));
+        assertTrue(file("c").setLastModified(3_000_000));
+        assertNotNull(cache.read("a"));
+
+        cache.write("d", bitmap);
+
+        assertFalse(file("b").exists());
+        assertTrue(file("a").exists());
+        assertTrue(file("c").exists());
+        assertTrue(file("d").exists());
+        assertTrue(directoryBytes() <= bitmapBytes * 3 + bitmapBytes / 2);
+    }
+
+    @Test
+    public void trimKeepsCountedSizeAcrossWrites() {
+        long maxBytes = bitmapBytes * 5 + bitmapBytes / 2;
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(context, maxBytes);
+
+        for (int i = 0; i < 20; i++) {
+            cache.write("key" + i, bitmap);
+            // rewriting a key replaces its file and must not be counted twice
+            cache.write("key" + i, bitmap);
+            assertTrue(directoryBytes() <= maxBytes);
+        }
+
+        assertEquals(5, dir.listFiles().length);
+    }
+
+    @Test
+    public void changedDocumentGetsNewKey() {
+        RowItem row = row(1000, 42);
+        String key = ThumbnailLoader.getKey(row, 96);
+
+        assertEquals(key, ThumbnailLoader.getKey(row(1000, 42), 96));
+        assertNotEquals(key, ThumbnailLoader.getKey(row(2000, 42), 96));
+        assertNotEquals(key, ThumbnailLoader.getKey(row(1000, 43), 96));
+        assertNotEquals(key, ThumbnailLoader.getKey(row, 128));
+    }
+
+    @Test
+    public void changedDocumentMissesDiskCache() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(context, ThumbnailDiskCache.DEFAULT_MAX_BYTES);
+        cache.write(ThumbnailLoader.getKey(row(1000, 42), 96), bitmap);
+
+        assertNotNull(cache.read(ThumbnailLoader.getKey(row(1000, 42), 96)));
+        assertNull(cache.read(ThumbnailLoader.getKey(row(2000, 42), 96)));
+        assertNull(cache.read(ThumbnailLoader.getKey(row(1000, 50), 96)));
+    }
+
+    private File file(String key) {
+        return new File(dir, ListingDiskCache.hash(key));
+    }
+
+    private long directoryBytes() {
+        long size = 0;
+        for (File file : dir.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static RowItem row(long lastModified, long size) {
+        return new RowItem(0, "photo.jpg", size, lastModified, DOCUMENT_URI, true, false);
+    }
+}
@@ -0,0 +1,274 @@
+package com.tiromansev.filedialog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.tiromansev.filedialog.utils.DocumentUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * разбор центрального каталога zip: папки архива, размеры и распаковка записей, имена UTF-8
+ * и CP437, кэш каталога по uri и дате изменения архива
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ZipArchiveTest {
+
+    private static final String AUTHORITY = "com.tiromansev.filedialog.test.archives";
+    private static final Charset CP437 = Charset.forName("IBM437");
+
+    private static File folder;
+    private static long lastModified;
+    private static int opened;
+
+    private byte[] random;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(TestProvider.class, AUTHORITY);
+        folder = RuntimeEnvironment.getApplication().getCacheDir();
+        lastModified = 1000;
+        opened = 0;
+        ZipArchive.clearCache();
+        random = new byte[200 * 1024];
+        new Random(1).nextBytes(random);
+    }
+
+    @Test
+    public void listsFoldersOfArchive() throws IOException {
+        Uri archive = zip("tree.zip", StandardCharsets.UTF_8,
+                "top.txt", "top", "d/text.txt", "text", "d/sub/rand.bin", "bin", "e/", null);
+
+        assertEquals(list("top.txt", "d/", "e/"), names(ZipArchive.list(context(), archive, "")));
+        assertEquals(list("d/text.txt", "d/sub/"), names(ZipArchive.list(context(), archive, "d/")));
+        assertEquals(list("d/sub/rand.bin"), names(ZipArchive.list(context(), archive, "d/sub/")));
+        assertEquals(Collections.emptyList(), names(ZipArchive.list(context(), archive, "e/")));
+
+        ZipArchive.Entry folderEntry = ZipArchive.list(context(), archive, "").get(1);
+        assertTrue(folderEntry.isDirectory());
+        assertEquals("d", folderEntry.getFileName());
+        assertEquals(archive, ZipArchive.getArchiveUri(folderEntry.getUri()));
+        assertEquals("d/", ZipArchive.getEntryPath(folderEntry.getUri()));
+    }
+
+    @Test
+    public void readsEntryHeadersAndContent() throws IOException {
+        Uri archive = zip("content.zip", StandardCharsets.UTF_8, "d/text.txt", "text", "d/sub/rand.bin", "bin");
+
+        ZipArchive.Entry text = ZipArchive.find(context(), archive, "d/text.txt");
+        assertNotNull(text);
+        assertEquals("text.txt", text.getFileName());
+        assertEquals(4, text.getSize());
+        assertEquals(crc("text".getBytes(StandardCharsets.UTF_8)), text.getCrc());
+        assertArrayEquals("text".getBytes(StandardCharsets.UTF_8), read(text));
+
+        ZipArchive.Entry binary = ZipArchive.find(context(), archive, "d/sub/rand.bin");
+        assertNotNull(binary);
+        assertEquals(random.length, binary.getSize());
+        assertTrue(binary.getCompressedSize() > 0);
+        assertEquals(crc(random), binary.getCrc());
+        assertArrayEquals(random, read(binary));
+
+        assertNull(ZipArchive.find(context(), archive, "d/missing.txt"));
+        assertNull(ZipArchive.find(context(), archive, "d"));
+    }
+
+    @Test
+    public void decodesUtf8Names() throws IOException {
+        Uri archive = zip("utf8.zip", StandardCharsets.UTF_8, "Отчеты/май 😀.csv", "a;b");
+
+        assertEquals(list("Отчеты/"), names(ZipArchive.list(context(), archive, "")));
+        assertEquals(list("Отчеты/май 😀.csv"), names(ZipArchive.list(context(), archive, "Отчеты/")));
+    }
+
+    @Test
+    public void decodesNamesWithoutUtf8FlagAsCp437() throws IOException {
+        Uri archive = zip("cp437.zip", CP437, "Ärger/ñandú ½.txt", "text");
+
+        assertEquals(list("Ärger/"), names(ZipArchive.list(context(), archive, "")));
+        ZipArchive.Entry entry = ZipArchive.find(context(), archive, "Ärger/ñandú ½.txt");
+        assertNotNull(entry);
+        assertArrayEquals("text".getBytes(StandardCharsets.UTF_8), read(entry));
+    }
+
+    @Test
+    public void cp437TableMatchesCharset() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        assertEquals(new String(bytes, CP437), ZipArchive.decodeCp437(bytes, 0, bytes.length));
+        assertEquals("ÇüÿÖ", ZipArchive.decodeCp437(new byte[]{'x', (byte) 0x80, (byte) 0x81, (byte) 0x98,
+                (byte) 0x99, 'y'}, 1, 4));
+    }
+
+    @Test
+    public void directoryIsCachedUntilArchiveChanges() throws IOException {
+        Uri archive = zip("cached.zip", StandardCharsets.UTF_8, "d/text.txt", "text", "top.txt", "top");
+
+        ZipArchive.list(context(), archive, "");
+        ZipArchive.list(context(), archive, "d/");
+        assertNotNull(ZipArchive.find(context(), archive, "top.txt"));
+        assertEquals(1, opened);
+
+        zip("cached.zip", StandardCharsets.UTF_8, "d/text.txt", "text", "new.txt", "new");
+        lastModified = 2000;
+        assertEquals(list("d/", "new.txt"), names(ZipArchive.list(context(), archive, "")));
+        assertEquals(2, opened);
+    }
+
+    @Test
+    public void archiveWithoutDateIsNotCached() throws IOException {
+        Uri archive = zip("undated.zip", StandardCharsets.UTF_8, "top.txt", "top");
+        lastModified = 0;
+
+        ZipArchive.list(context(), archive, "");
+        ZipArchive.list(context(), archive, "");
+
+        assertEquals(2, opened);
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsFilesWithoutDirectory() throws IOException {
+        File file = new File(folder, "broken.zip");
+        Files.write(file.toPath(), "not a zip archive at all".getBytes(StandardCharsets.UTF_8));
+
+        ZipArchive.list(context(), uri("broken.zip"), "");
+    }
+
+    /**
+     * @param entries пары путь записи - содержимое ("bin" - случайные байты, null - папка)
+     */
+    private Uri zip(String name, Charset charset, String... entries) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(folder, name)), charset)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                String content = entries[i + 1];
+                if (content != null) {
+                    zip.write("bin".equals(content) ? random : content.getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+            }
+        }
+        return uri(name);
+    }
+
+    private static Uri uri(String name) {
+        return Uri.parse("content://" + AUTHORITY + "/document/" + name);
+    }
+
+    private static Context context() {
+        return RuntimeEnvironment.getApplication();
+    }
+
+    private static byte[] read(ZipArchive.Entry entry) throws IOException {
+        try (InputStream input = entry.openStream(context())) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static List<String> names(List<ZipArchive.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (ZipArchive.Entry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static List<String> list(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+
+    /**
+     * провайдер архивов из папки кэша: свойства документа с датой lastModified и чтение файла
+     */
+    public static class TestProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            opened++;
+            return ParcelFileDescriptor.open(new File(folder, uri.getLastPathSegment()),
+                    ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            File file = new File(folder, uri.getLastPathSegment());
+            MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+            cursor.addRow(new Object[]{file.getName(), file.getName(), "application/zip", file.length(),
+                    lastModified, 0});
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return "application/zip";
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.tiromansev.filedialog.utils;
+
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import com.tiromansev.filedialog.DocumentEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * чтение строки курсора провайдера в DocumentEntry: неполная проекция, null значения,
+ * строки дерева и отдельные документы
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DocumentColumnsTest {
+
+    private static final Uri TREE_URI =
+            Uri.parse("content://com.android.externalstorage.documents/tree/primary%3ABackup");
+    private static final Uri SINGLE_URI =
+            Uri.parse("content://com.android.providers.downloads.documents/document/msf%3A1234");
+
+    @Test
+    public void readsFullProjection() {
+        MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+        cursor.addRow(new Object[]{"primary:Backup/a.csv", "a.csv", "text/csv", 42L, 1000L,
+                Document.FLAG_SUPPORTS_RENAME});
+
+        DocumentEntry entry = readFirst(cursor, TREE_URI);
+
+        assertEquals("primary:Backup/a.csv", entry.getDocumentId());
+        assertEquals("a.csv", entry.getName());
+        assertEquals("text/csv", entry.getMimeType());
+        assertEquals(42L, entry.getSize());
+        assertEquals(1000L, entry.getLastModified());
+        assertEquals(Document.FLAG_SUPPORTS_RENAME, entry.getFlags());
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(TREE_URI, "primary:Backup/a.csv"), entry.getUri());
+        assertTrue(entry.isFile());
+    }
+
+    @Test
+    public void missingColumnsReadAsDefaults() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{Document.COLUMN_DOCUMENT_ID, Document.COLUMN_DISPLAY_NAME});
+        cursor.addRow(new Object[]{"primary:Backup/b", "b"});
+
+        DocumentEntry entry = readFirst(cursor, TREE_URI);
+
+        assertEquals("b", entry.getName());
+        assertNull(entry.getMimeType());
+        assertEquals(0L, entry.getSize());
+        assertEquals(0L, entry.getLastModified());
+        assertEquals(0, entry.getFlags());
+        assertFalse(entry.isDirectory());
+        assertNotNull(entry.getUri());
+    }
+
+    @Test
+    public void nullValuesReadAsDefaults() {
+        MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+        cursor.addRow(new Object[]{"primary:Backup/c", null, null, null, null, null});
+
+        DocumentEntry entry = readFirst(cursor, TREE_URI);
+
+        assertNull(entry.getName());
+        assertNull(entry.getMimeType());
+        assertEquals(0L, entry.getSize());
+        assertEquals(0, entry.getFlags());
+    }
+
+    @Test
+    public void treeRowWithoutIdHasNoUri() {
+        MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+        cursor.addRow(new Object[]{null, "d.txt", "text/plain", 1L, 1L, 0});
+
+        DocumentEntry entry = readFirst(cursor, TREE_URI);
+
+        assertNull(entry.getDocumentId());
+        assertNull(entry.getUri());
+    }
+
+    @Test
+    public void singleDocumentKeepsQueriedUri() {
+        MatrixCursor cursor = new MatrixCursor(DocumentUtils.PROJECTION);
+        cursor.addRow(new Object[]{"msf:1234", "report.csv", "text/csv", 10L, 1L, 0});
+
+        DocumentEntry entry = readFirst(cursor, SINGLE_URI);
+
+        assertEquals(SINGLE_URI, entry.getUri());
+        assertEquals("report.csv", entry.getName());
+    }
+
+    @Test
+    public void singleDocumentWithoutIdKeepsQueriedUri() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{Document.COLUMN_DISPLAY_NAME, Document.COLUMN_SIZE});
+        cursor.addRow(new Object[]{"report.csv", 10L});
+
+        DocumentEntry entry = readFirst(cursor, SINGLE_URI);
+
+        assertNull(entry.getDocumentId());
+        assertEquals(SINGLE_URI, entry.getUri());
+        assertEquals(10L, entry.getSize());
+    }
+
+    private static DocumentEntry readFirst(MatrixCursor cursor, Uri baseUri) {
+        assertTrue(cursor.moveToFirst());
+        return new DocumentUtils.Columns(cursor).read(cursor, baseUri);
+    }
+}
@@ -0,0 +1,192 @@
+package com.tiromansev.filedialog.utils;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * RowDataFormatter дает ту же строку, что прежнее форматирование через DecimalFormat("0.00")
+ * и SimpleDateFormat("dd.MM.yy HH:mm"), в том числе для локали с другим десятичным разделителем,
+ * и выделяет на 10k строк в разы меньше памяти
+ */
+public class RowDataFormatterTest {
+
+    private static final long[] SIZES = {0, 1, 1023, 1024, 1536, 1048575, 1048576, 5L * 1048576 + 7,
+            1073741823, 1073741824, 3L * 1073741824 + 1, 1234L * 1073741824};
+    private static final long[] TIMES = {0, 86399999L, 951782400000L, 1704067140000L, 1719792000000L,
+            4102444799000L};
+
+    private Locale defaultLocale;
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+        TimeZone.setDefault(defaultTimeZone);
+        RowDataFormatter.get().refresh();
+    }
+
+    @Test
+    public void formatsSizeLikeDecimalFormat() {
+        for (Locale locale : new Locale[]{Locale.US, Locale.GERMANY, new Locale("ru", "RU")}) {
+            Locale.setDefault(locale);
+            RowDataFormatter formatter = RowDataFormatter.get();
+            formatter.refresh();
+            for (long size : SIZES) {
+                assertEquals(locale + " " + size, legacySize(size), formatter.formatSize(size));
+            }
+        }
+    }
+
+    @Test
+    public void formatsDataLikeSimpleDateFormat() {
+        Locale.setDefault(Locale.US);
+        for (String zone : new String[]{"UTC", "Europe/Moscow", "America/Los_Angeles"}) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            RowDataFormatter formatter = RowDataFormatter.get();
+            formatter.refresh();
+            SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yy HH:mm", Locale.ENGLISH);
+            for (long time : TIMES) {
+                assertEquals(zone + " " + time, legacySize(2048) + dateFormat.format(new Date(time)),
+                        formatter.formatData(2048, time));
+            }
+        }
+    }
+
+    @Test
+    public void formatterIsReusedPerThread() throws InterruptedException {
+        RowDataFormatter formatter = RowDataFormatter.get();
+        assertSame(formatter, RowDataFormatter.get());
+
+        RowDataFormatter[] other = new RowDataFormatter[1];
+        Thread thread = new Thread(() -> other[0] = RowDataFormatter.get());
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(formatter, other[0]);
+    }
+
+    @Test
+    public void allocationPer10kRows() {
+        AllocationCounter threads = AllocationCounter.create();
+        Assume.assumeTrue(threads != null);
+        RowDataFormatter formatter = RowDataFormatter.get();
+        StringBuilder row = new StringBuilder();
+
+        long legacyBytes = Long.MAX_VALUE;
+        long dataBytes = Long.MAX_VALUE;
+        long appendBytes = Long.MAX_VALUE;
+        int length = 0;
+        // the first rounds warm up the code, the smallest figure of each path is reported
+        for (int round = 0; round < 5; round++) {
+            long start = threads.get();
+            for (int i = 0; i < 10_000; i++) {
+                length += legacyData(i * 7919L, 1704067140000L + i * 60_000L).length();
+            }
+            legacyBytes = Math.min(legacyBytes, threads.get() - start);
+
+            start = threads.get();
+            for (int i = 0; i < 10_000; i++) {
+                length += formatter.formatData(i * 7919L, 1704067140000L + i * 60_000L).length();
+            }
+            dataBytes = Math.min(dataBytes, threads.get() - start);
+
+            start = threads.get();
+            for (int i = 0; i < 10_000; i++) {
+                row.setLength(0);
+                formatter.appendSize(row, i * 7919L);
+                formatter.appendDate(row, 1704067140000L + i * 60_000L);
+                length += row.length();
+            }
+            appendBytes = Math.min(appendBytes, threads.get() - start);
+        }
+
+        System.out.printf(Locale.ROOT, "allocated per 10k rows: legacy %d KB, formatData %d KB, append %d KB (%d)%n",
+                legacyBytes / 1024, dataBytes / 1024, appendBytes / 1024, length);
+        assertTrue(dataBytes * 5 < legacyBytes);
+        assertTrue(appendBytes < 10_000);
+    }
+
+    /**
+     * байты, выделенные текущим потоком, по com.sun.management.ThreadMXBean. классы управления JVM
+     * берутся через рефлексию: тесты компилируются с android.jar, где их нет
+     */
+    private static class AllocationCounter {
+        private final Object threads;
+        private final Method allocatedBytes;
+        private final long thread = Thread.currentThread().getId();
+
+        private AllocationCounter(Object threads, Method allocatedBytes) {
+            this.threads = threads;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * @return null если JVM не считает выделенную память по потокам
+         */
+        static AllocationCounter create() {
+            try {
+                Object threads = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+                if (!type.isInstance(threads)
+                        || !(Boolean) type.getMethod("isThreadAllocatedMemorySupported").invoke(threads)) {
+                    return null;
+                }
+                type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threads, true);
+                return new AllocationCounter(threads, type.getMethod("getThreadAllocatedBytes", long.class));
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        long get() {
+            try {
+                return (Long) allocatedBytes.invoke(threads, thread);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * прежняя строка данных: DecimalFormat, SimpleDateFormat и Date на каждую строку
+     */
+    private static String legacyData(long size, long time) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yy HH:mm", Locale.ENGLISH);
+        return legacySize(size) + dateFormat.format(new Date(time));
+    }
+
+    private static String legacySize(long size) {
+        double k = size / 1024;
+        double m = size / 1048576;
+        double g = size / 1073741824;
+        DecimalFormat dec = new DecimalFormat("0.00");
+        if (g > 0) {
+            return dec.format(g).concat(" G ");
+        }
+        if (m > 0) {
+            return dec.format(m).concat(" M ");
+        }
+        if (k > 0) {
+            return dec.format(k).concat(" k ");
+        }
+        return dec.format(k).concat(" b ");
+    }
+}